@@ -15,3 +15,6 @@
 #-keepclassmembers class fqcn.of.javascript.interface.for.webview {
 #   public *;
 #}
+
+# Glide modules are found through the manifest and created by reflection
+-keep public class * implements com.bumptech.glide.module.GlideModule
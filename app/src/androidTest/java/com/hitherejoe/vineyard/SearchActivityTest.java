@@ -45,6 +45,8 @@ import static android.support.test.espresso.matcher.ViewMatchers.withText;
 import static com.hitherejoe.vineyard.util.CustomMatchers.withItemText;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(AndroidJUnit4.class)
@@ -93,7 +95,7 @@ public class SearchActivityTest {
         keywordSearchResponse.tagSearchAnchor = "c";
         keywordSearchResponse.userSearchAnchor = "c";
 
-        when(component.getMockDataManager().search(eq("c"), anyString(), anyString(), anyString(), anyString()))
+        when(component.getMockDataManager().search(eq("c")))
                 .thenReturn(Observable.just(keywordSearchResponse));
 
         onView(withId(R.id.lb_search_text_editor))
@@ -103,6 +105,34 @@ public class SearchActivityTest {
                 .check(matches(isDisplayed()));
     }
 
+    @Test
+    public void failedQueryCanBeSearchedAgain() {
+        main.launchActivity(null);
+
+        ArrayList<Object> objectList = createMockObjectList();
+        stubTagUserAndPostData(objectList);
+        VineyardService.KeywordSearchResponse keywordSearchResponse =
+                new VineyardService.KeywordSearchResponse();
+        keywordSearchResponse.list = objectList;
+        keywordSearchResponse.tagSearchAnchor = "";
+        keywordSearchResponse.userSearchAnchor = "";
+        when(component.getMockDataManager().search(eq("cat")))
+                .thenReturn(Observable.<VineyardService.KeywordSearchResponse>error(
+                        new RuntimeException()))
+                .thenReturn(Observable.just(keywordSearchResponse));
+
+        onView(withId(R.id.lb_search_text_editor))
+                .perform(replaceText("cat"));
+        verify(component.getMockDataManager()).search(eq("cat"));
+
+        // Submitting the same query again retries it, rather than it being ignored
+        onView(withId(R.id.lb_search_text_editor))
+                .perform(pressImeActionButton());
+
+        verify(component.getMockDataManager(), times(2)).search(eq("cat"));
+        checkItemAtPosition(objectList.get(0));
+    }
+
     @Test
     public void queryShowsTagAndUserResults() {
         main.launchActivity(null);
@@ -187,7 +217,7 @@ public class SearchActivityTest {
         keywordSearchResponse.tagSearchAnchor = "";
         keywordSearchResponse.userSearchAnchor = "";
 
-        when(component.getMockDataManager().search(anyString(), anyString(), anyString(), anyString(), anyString()))
+        when(component.getMockDataManager().search(anyString()))
                 .thenReturn(Observable.just(keywordSearchResponse));
 
         List<Post> mockPostsOne = TestDataFactory.createMockListOfPosts(5);
@@ -313,7 +343,7 @@ public class SearchActivityTest {
         keywordSearchResponse.tagSearchAnchor = "";
         keywordSearchResponse.userSearchAnchor = "";
 
-        when(component.getMockDataManager().search(anyString(), anyString(), anyString(), anyString(), anyString()))
+        when(component.getMockDataManager().search(anyString()))
                 .thenReturn(Observable.just(keywordSearchResponse));
     }
 
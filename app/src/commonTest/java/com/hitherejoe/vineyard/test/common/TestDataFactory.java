@@ -70,7 +70,7 @@ public class TestDataFactory {
     public static Tag createMockTag(String tag) {
         Tag mockTag = new Tag();
         mockTag.tag = tag;
-        mockTag.tagId = new Random().nextInt(2000);
+        mockTag.tagId = new Random().nextLong();
         mockTag.postCount = new Random().nextInt(2000);
         return mockTag;
     }
@@ -78,7 +78,7 @@ public class TestDataFactory {
     public static Tag createMockTag() {
         Tag mockTag = new Tag();
         mockTag.tag = generateRandomString();
-        mockTag.tagId = new Random().nextInt(2000);
+        mockTag.tagId = new Random().nextLong();
         mockTag.postCount = new Random().nextInt(2000);
         return mockTag;
     }
@@ -7,12 +7,16 @@ import com.hitherejoe.vineyard.data.DataManager;
 import com.hitherejoe.vineyard.data.local.PreferencesHelper;
 import com.hitherejoe.vineyard.data.remote.VineyardService;
 import com.hitherejoe.vineyard.injection.ApplicationContext;
+import com.hitherejoe.vineyard.injection.ComputationScheduler;
+import com.squareup.okhttp.OkHttpClient;
 import com.squareup.otto.Bus;
 
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
 
 import static org.mockito.Mockito.mock;
@@ -41,6 +45,16 @@ public class ApplicationTestModule {
         return mApplication;
     }
 
+    /**
+     * Runs timers on the calling thread, which waits out their delay, so that Espresso doesn't
+     * check the screen before a debounced search has been made.
+     */
+    @Provides
+    @ComputationScheduler
+    Scheduler provideComputationScheduler() {
+        return Schedulers.immediate();
+    }
+
     @Provides
     @Singleton
     Bus provideEventBus() {
@@ -52,6 +66,12 @@ public class ApplicationTestModule {
         return new CompositeSubscription();
     }
 
+    @Provides
+    @Singleton
+    OkHttpClient provideOkHttpClient() {
+        return new OkHttpClient();
+    }
+
     /************* MOCKS *************/
 
     @Provides
@@ -3,6 +3,7 @@ package com.hitherejoe.vineyard;
 import android.app.Application;
 import android.content.Context;
 
+import com.hitherejoe.vineyard.data.recommendations.UpdateRecommendationsService;
 import com.hitherejoe.vineyard.injection.component.ApplicationComponent;
 import com.hitherejoe.vineyard.injection.component.DaggerApplicationComponent;
 import com.hitherejoe.vineyard.injection.module.ApplicationModule;
@@ -21,6 +22,15 @@ public class VineyardApplication extends Application {
         mApplicationComponent = DaggerApplicationComponent.builder()
                 .applicationModule(new ApplicationModule(this))
                 .build();
+        // Otherwise recommendations wouldn't be shown until the device has been restarted
+        UpdateRecommendationsService.scheduleIfNeeded(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        getComponent().dataManager().onTrimMemory(level);
+        getComponent().backgroundEngine().onTrimMemory(level);
     }
 
     public static VineyardApplication get(Context context) {
@@ -0,0 +1,47 @@
+package com.hitherejoe.vineyard;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Sizes Glide's caches for the cards and backgrounds shown by the app. The memory cache and
+ * bitmap pool are a share of the app's memory class, so that a row or two of 300x300 card
+ * thumbnails either side of the one in focus stays decoded. Glide 3 already decodes opaque
+ * images such as the thumbnails as RGB_565 by default, so the decode format is left as it is.
+ */
+public class VineyardGlideModule implements GlideModule {
+
+    private static final String THUMBNAIL_CACHE_DIR = "thumbnails";
+    private static final int DISK_CACHE_SIZE_BYTES = 64 * 1024 * 1024;
+    private static final int LOW_RAM_DISK_CACHE_SIZE_BYTES = 16 * 1024 * 1024;
+    // Fractions of the memory class, which is the heap size the app is expected to stay within
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+    private static final int BITMAP_POOL_DIVISOR = 16;
+    private static final int LOW_RAM_DIVISOR_MULTIPLIER = 2;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean isLowRamDevice = activityManager.isLowRamDevice();
+        int memoryClassBytes = activityManager.getMemoryClass() * 1024 * 1024;
+        int multiplier = isLowRamDevice ? LOW_RAM_DIVISOR_MULTIPLIER : 1;
+
+        builder.setMemoryCache(
+                new LruResourceCache(memoryClassBytes / (MEMORY_CACHE_DIVISOR * multiplier)));
+        builder.setBitmapPool(
+                new LruBitmapPool(memoryClassBytes / (BITMAP_POOL_DIVISOR * multiplier)));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, THUMBNAIL_CACHE_DIR,
+                isLowRamDevice ? LOW_RAM_DISK_CACHE_SIZE_BYTES : DISK_CACHE_SIZE_BYTES));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) { }
+}
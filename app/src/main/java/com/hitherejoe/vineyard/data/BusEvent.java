@@ -2,4 +2,12 @@ package com.hitherejoe.vineyard.data;
 
 public class BusEvent {
     public static class AutoLoopUpdated { };
+
+    public static class PlaylistUpdated {
+        public final String handle;
+
+        public PlaylistUpdated(String handle) {
+            this.handle = handle;
+        }
+    }
 }
@@ -1,14 +1,21 @@
 package com.hitherejoe.vineyard.data;
 
+import com.hitherejoe.vineyard.data.local.DatabaseHelper;
+import com.hitherejoe.vineyard.data.local.PageCache;
+import com.hitherejoe.vineyard.data.local.PlaylistRegistry;
 import com.hitherejoe.vineyard.data.local.PreferencesHelper;
+import com.hitherejoe.vineyard.data.local.SearchCache;
 import com.hitherejoe.vineyard.data.model.Authentication;
-import com.hitherejoe.vineyard.data.model.Tag;
+import com.hitherejoe.vineyard.data.model.Feed;
+import com.hitherejoe.vineyard.data.model.Playlist;
+import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.data.model.User;
+import com.hitherejoe.vineyard.data.remote.NetworkMetrics;
+import com.hitherejoe.vineyard.data.remote.PostResponseDecoder;
 import com.hitherejoe.vineyard.data.remote.VineyardService;
+import com.squareup.okhttp.ResponseBody;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -16,25 +23,71 @@ import javax.inject.Singleton;
 
 import retrofit.Call;
 import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
-import rx.functions.Func2;
+import rx.schedulers.Schedulers;
 
 @Singleton
 public class DataManager {
 
     private final VineyardService mVineyardService;
     private final PreferencesHelper mPreferencesHelper;
+    private final DatabaseHelper mDatabaseHelper;
+    private final NetworkMetrics mNetworkMetrics;
+    private final PostResponseDecoder mPostResponseDecoder;
+    private final RequestCoalescer mRequestCoalescer;
+    private final PageCache mPageCache;
+    private final SearchCache mSearchCache;
+    private final PlaylistRegistry mPlaylistRegistry;
+    private final Scheduler mSearchScheduler;
 
     @Inject
-    public DataManager(PreferencesHelper preferencesHelper, VineyardService vineyardService) {
+    public DataManager(PreferencesHelper preferencesHelper,
+                       DatabaseHelper databaseHelper,
+                       VineyardService vineyardService,
+                       NetworkMetrics networkMetrics) {
+        this(preferencesHelper, databaseHelper, vineyardService, networkMetrics,
+                Schedulers.io());
+    }
+
+    /**
+     * Creates a DataManager that requests the tags and users of a search on the given
+     * scheduler, e.g. so that tests can make the requests synchronously.
+     */
+    public DataManager(PreferencesHelper preferencesHelper,
+                       DatabaseHelper databaseHelper,
+                       VineyardService vineyardService,
+                       NetworkMetrics networkMetrics,
+                       Scheduler searchScheduler) {
+        mSearchScheduler = searchScheduler;
         mPreferencesHelper = preferencesHelper;
+        mDatabaseHelper = databaseHelper;
         mVineyardService = vineyardService;
+        mNetworkMetrics = networkMetrics;
+        mPostResponseDecoder = new PostResponseDecoder(VineyardService.Creator.newGson());
+        mRequestCoalescer = new RequestCoalescer();
+        mPageCache = new PageCache();
+        mSearchCache = new SearchCache();
+        mPlaylistRegistry = new PlaylistRegistry();
     }
 
     public PreferencesHelper getPreferencesHelper() {
         return mPreferencesHelper;
     }
 
+    /**
+     * Returns latency, size, cache and error statistics for each API endpoint requested so far.
+     */
+    public List<NetworkMetrics.EndpointStats> getNetworkStats() {
+        return mNetworkMetrics.getStats();
+    }
+
+    public void resetNetworkStats() {
+        mNetworkMetrics.reset();
+    }
+
     public Observable<Authentication> getAccessToken(String username, String password) {
         return mVineyardService.getAccessToken(username, password).map(new Func1<Authentication, Authentication>() {
             @Override
@@ -50,15 +103,42 @@ public class DataManager {
     }
 
     public Observable<User> getSignedInUser() {
-        return mVineyardService.getSignedInUser();
+        return mRequestCoalescer.coalesce(
+                RequestCoalescer.key("users/me", null, null, null),
+                mVineyardService.getSignedInUser());
     }
 
     public Observable<User> getUser(String userId) {
-        return mVineyardService.getUser(userId);
+        return mRequestCoalescer.coalesce(
+                RequestCoalescer.key("users/profiles", userId, null, null),
+                mVineyardService.getUser(userId));
+    }
+
+    /**
+     * Registers a playlist of the given posts, which can then be looked up by its handle.
+     */
+    public Playlist createPlaylist(Feed feed, List<Post> posts, String anchor, int nextPage) {
+        return mPlaylistRegistry.create(feed, posts, anchor, nextPage);
+    }
+
+    /**
+     * Returns the playlist with the given handle, rebuilding it from the given feed and post if
+     * it's no longer in memory (e.g. the process has been restarted since it was created).
+     */
+    public Playlist getPlaylist(String handle, Feed feed, Post post) {
+        return mPlaylistRegistry.restore(handle, feed, post);
+    }
+
+    /**
+     * Releases the pages held in memory as required, see ComponentCallbacks2#onTrimMemory(int).
+     */
+    public void onTrimMemory(int level) {
+        mPageCache.onTrimMemory(level);
     }
 
     public Observable<VineyardService.PostResponse> getPopularPosts(String page, String anchor) {
-        return mVineyardService.getPopularPosts(page, anchor);
+        return getTimeline(Feed.popular(), page, anchor,
+                mVineyardService.getPopularPosts(page, anchor));
     }
 
     public Call<VineyardService.PostResponse> getPopularPostsSynchronous() {
@@ -66,71 +146,188 @@ public class DataManager {
     }
 
     public Observable<VineyardService.PostResponse> getEditorsPicksPosts(String page, String anchor) {
-        return mVineyardService.getEditorsPicksPosts(page, anchor);
+        return getTimeline(Feed.editorsPicks(), page, anchor,
+                mVineyardService.getEditorsPicksPosts(page, anchor));
     }
 
     public Observable<VineyardService.PostResponse> getPostsByTag(String tag, String page, String anchor) {
-        return mVineyardService.getPostsByTag(tag, page, anchor);
+        return getTimeline(Feed.tag(tag), page, anchor,
+                mVineyardService.getPostsByTag(tag, page, anchor));
     }
 
     public Observable<VineyardService.PostResponse> getPostsByUser(String userId, String page, String anchor) {
-        return mVineyardService.getUserTimeline(userId, page, anchor);
+        return getTimeline(Feed.user(userId), page, anchor,
+                mVineyardService.getUserTimeline(userId, page, anchor));
+    }
+
+    /**
+     * Returns the given page of the given feed if it was loaded recently, without making any
+     * requests, so that it can be shown straight away. Returns null if it isn't in memory.
+     */
+    public VineyardService.PostResponse peekPosts(Feed feed, String page, String anchor) {
+        return mPageCache.get(timelineKey(feed, page, anchor));
+    }
+
+    /**
+     * Returns the given page of the given feed, see getTimeline().
+     */
+    public Observable<VineyardService.PostResponse> getPosts(Feed feed, String page, String anchor) {
+        switch (feed.type) {
+            case Feed.TYPE_POPULAR:
+                return getPopularPosts(page, anchor);
+            case Feed.TYPE_EDITORS_PICKS:
+                return getEditorsPicksPosts(page, anchor);
+            case Feed.TYPE_TAG:
+                return getPostsByTag(feed.id, page, anchor);
+            case Feed.TYPE_USER:
+                return getPostsByUser(feed.id, page, anchor);
+            default:
+                return Observable.error(
+                        new IllegalArgumentException("Unknown feed type: " + feed.type));
+        }
+    }
+
+    /**
+     * Emits the stored copy of the requested page straight away (if there is one, marked as
+     * stored) followed by the page retrieved from the API, which then replaces the stored copy
+     * both in the database and wherever it is being shown. The API page is emitted
+     * in partial chunks as it is decoded, see PostResponseDecoder. Requests for a page that is
+     * already being loaded share the same request, see RequestCoalescer. Pages that were loaded
+     * recently are returned from memory instead.
+     */
+    private Observable<VineyardService.PostResponse> getTimeline(
+            final Feed feed, final String page, final String anchor,
+            final Observable<ResponseBody> remote) {
+        final String key = timelineKey(feed, page, anchor);
+        VineyardService.PostResponse cachedPage = mPageCache.get(key);
+        if (cachedPage != null) return Observable.just(cachedPage);
+
+        Observable<VineyardService.PostResponse> remotePage = Observable.defer(
+                new Func0<Observable<VineyardService.PostResponse>>() {
+                    @Override
+                    public Observable<VineyardService.PostResponse> call() {
+                        final List<Post> records = new ArrayList<>();
+                        return remote.concatMap(
+                                new Func1<ResponseBody, Observable<VineyardService.PostResponse>>() {
+                                    @Override
+                                    public Observable<VineyardService.PostResponse> call(
+                                            ResponseBody responseBody) {
+                                        return mPostResponseDecoder.decode(responseBody);
+                                    }
+                                }).doOnNext(new Action1<VineyardService.PostResponse>() {
+                                    @Override
+                                    public void call(VineyardService.PostResponse postResponse) {
+                                        records.addAll(postResponse.data.records);
+                                        if (postResponse.data.partial) return;
+                                        // Only the complete page is stored
+                                        VineyardService.PostResponse fullPage =
+                                                new VineyardService.PostResponse();
+                                        fullPage.code = postResponse.code;
+                                        fullPage.data = new VineyardService.PostResponse.Data();
+                                        fullPage.data.anchorStr = postResponse.data.anchorStr;
+                                        fullPage.data.nextPage = postResponse.data.nextPage;
+                                        fullPage.data.records = records;
+                                        mDatabaseHelper.setTimelinePage(feed, page, anchor, fullPage);
+                                        mPageCache.put(key, fullPage);
+                                    }
+                                });
+                    }
+                });
+        Observable<VineyardService.PostResponse> storedPage =
+                mDatabaseHelper.getTimelinePage(feed, page, anchor)
+                        .doOnNext(new Action1<VineyardService.PostResponse>() {
+                            @Override
+                            public void call(VineyardService.PostResponse postResponse) {
+                                postResponse.data.stored = true;
+                            }
+                        });
+        return mRequestCoalescer.coalesce(key, Observable.concat(storedPage, remotePage));
+    }
+
+    private static String timelineKey(Feed feed, String page, String anchor) {
+        return RequestCoalescer.key("timelines", feed.getKey(), page, anchor);
     }
 
     public Observable<VineyardService.TagResponse> searchByTag(String tag, String page, String anchor) {
-        return mVineyardService.searchByTag(tag, page, anchor);
+        String key = RequestCoalescer.key("search/tags", tag, page, anchor);
+        VineyardService.TagResponse cachedPage = mPageCache.get(key);
+        if (cachedPage != null) return Observable.just(cachedPage);
+        return mRequestCoalescer.coalesce(key, mVineyardService.searchByTag(tag, page, anchor)
+                .doOnNext(this.<VineyardService.TagResponse>putInPageCache(key)));
     }
 
     public Observable<VineyardService.UserResponse> searchByUser(String query, String page, String anchor) {
-        return mVineyardService.searchByUser(query, page, anchor);
+        String key = RequestCoalescer.key("search/users", query, page, anchor);
+        VineyardService.UserResponse cachedPage = mPageCache.get(key);
+        if (cachedPage != null) return Observable.just(cachedPage);
+        return mRequestCoalescer.coalesce(key, mVineyardService.searchByUser(query, page, anchor)
+                .doOnNext(this.<VineyardService.UserResponse>putInPageCache(key)));
     }
 
-    public Observable<VineyardService.KeywordSearchResponse> search(
-            String tag, String pageOne, String anchorOne, String pageTwo, String anchorTwo) {
-        return Observable.zip(searchByTag(tag, pageOne, anchorOne), searchByUser(tag, pageTwo, anchorTwo),
-                new Func2<VineyardService.TagResponse, VineyardService.UserResponse, VineyardService.KeywordSearchResponse>() {
-                    @Override
-                    public VineyardService.KeywordSearchResponse call(VineyardService.TagResponse tagResponse, VineyardService.UserResponse userResponse) {
-                        List<Tag> tags = tagResponse.data.records;
-                        List<User> users = userResponse.data.records;
+    private <T> Action1<T> putInPageCache(final String key) {
+        return new Action1<T>() {
+            @Override
+            public void call(T page) {
+                mPageCache.put(key, page);
+            }
+        };
+    }
 
-                        ArrayList<Object> results = new ArrayList<>();
-                        results.addAll(tags);
-                        results.addAll(users);
+    /**
+     * Searches for tags and users matching the given query. Results of recent queries are
+     * returned from memory, otherwise the results of a shorter query that this one starts with
+     * are filtered and emitted (marked as partial) while the search request is made.
+     */
+    public Observable<VineyardService.KeywordSearchResponse> search(final String query) {
+        VineyardService.KeywordSearchResponse cachedResults = mSearchCache.get(query);
+        if (cachedResults != null) return Observable.just(cachedResults);
 
-                        Collections.sort(results, new Comparator<Object>() {
+        Observable<VineyardService.KeywordSearchResponse> remoteResults =
+                search(query, "1", null, "1", null).doOnNext(
+                        new Action1<VineyardService.KeywordSearchResponse>() {
                             @Override
-                            public int compare(Object lhs, Object rhs) {
-                                if (lhs instanceof Tag) {
-                                    Tag tag = (Tag) lhs;
-                                    if (rhs instanceof Tag) {
-                                        Tag tagTwo = (Tag) rhs;
-                                        return (int) (tag.postCount - tagTwo.postCount);
-                                    } else if (rhs instanceof User) {
-                                        User user = (User) rhs;
-                                        return (int) (tag.postCount - user.followerCount);
-                                    }
-                                } else if (lhs instanceof User) {
-                                    User user = (User) lhs;
-                                    if (rhs instanceof Tag) {
-                                        Tag tagTwo = (Tag) rhs;
-                                        return (int) (user.followerCount - tagTwo.postCount);
-                                    } else if (rhs instanceof User) {
-                                        User userTwo = (User) rhs;
-                                        return user.followerCount - userTwo.followerCount;
-                                    }
-                                }
-                                return 0;
+                            public void call(VineyardService.KeywordSearchResponse response) {
+                                if (!response.partial) mSearchCache.put(query, response);
                             }
                         });
+        VineyardService.KeywordSearchResponse prefixResults = mSearchCache.getPrefixResults(query);
+        return prefixResults != null ? remoteResults.startWith(prefixResults) : remoteResults;
+    }
 
-                        VineyardService.KeywordSearchResponse dualResponse = new VineyardService.KeywordSearchResponse();
-                        dualResponse.tagSearchAnchor = tagResponse.data.anchorStr;
-                        dualResponse.userSearchAnchor = userResponse.data.anchorStr;
-                        dualResponse.list = results;
-
-                        return dualResponse;
-                    }
-                });
+    /**
+     * Searches for tags and users from the given pages, emitting the combined results as soon as
+     * either of them arrives rather than waiting for both. Results are marked as partial until
+     * both have arrived, see SearchResultsMerger. The requests block until they complete, so
+     * each is made on its own thread for them to run at the same time.
+     */
+    public Observable<VineyardService.KeywordSearchResponse> search(
+            String query, String tagPage, String tagAnchor, String userPage, String userAnchor) {
+        final Observable<VineyardService.TagResponse> tags =
+                searchByTag(query, tagPage, tagAnchor).subscribeOn(mSearchScheduler);
+        final Observable<VineyardService.UserResponse> users =
+                searchByUser(query, userPage, userAnchor).subscribeOn(mSearchScheduler);
+        return Observable.defer(new Func0<Observable<VineyardService.KeywordSearchResponse>>() {
+            @Override
+            public Observable<VineyardService.KeywordSearchResponse> call() {
+                final SearchResultsMerger merger = new SearchResultsMerger();
+                return Observable.merge(
+                        tags.map(new Func1<VineyardService.TagResponse,
+                                VineyardService.KeywordSearchResponse>() {
+                            @Override
+                            public VineyardService.KeywordSearchResponse call(
+                                    VineyardService.TagResponse tagResponse) {
+                                return merger.addTags(tagResponse);
+                            }
+                        }),
+                        users.map(new Func1<VineyardService.UserResponse,
+                                VineyardService.KeywordSearchResponse>() {
+                            @Override
+                            public VineyardService.KeywordSearchResponse call(
+                                    VineyardService.UserResponse userResponse) {
+                                return merger.addUsers(userResponse);
+                            }
+                        }));
+            }
+        });
     }
 }
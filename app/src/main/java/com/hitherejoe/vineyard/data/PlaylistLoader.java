@@ -0,0 +1,176 @@
+package com.hitherejoe.vineyard.data;
+
+import com.hitherejoe.vineyard.data.model.Playlist;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Loads the pages of the feed that a playlist came from as it is played, appending their posts
+ * to the playlist. The next page is requested once there are only a few posts left to play, and
+ * skipping past the end of the playlist waits for it to arrive. A feed is treated as having run
+ * out once a page doesn't move its cursor on, or once several pages in a row hold nothing new,
+ * so that waiting can't keep requesting pages forever.
+ */
+public class PlaylistLoader {
+
+    // Returned by skipToNext() when the next post has to wait for the next page
+    public static final int WAITING = -1;
+    // Load the next page of the feed once there are only this many posts left to play
+    public static final int PREFETCH_DISTANCE = 3;
+    // Give up on the feed after this many pages in a row without any new posts
+    public static final int MAX_EMPTY_PAGES = 3;
+
+    public interface Listener {
+
+        /**
+         * Called when posts from the next page have been appended to the playlist, with the
+         * size the playlist had before.
+         */
+        void onPostsAdded(int previousSize);
+
+        /**
+         * Called when waiting for the next page is over, with the position of the post to play:
+         * the first new post, or the first post of the playlist if the feed has run out.
+         */
+        void onNextPostLoaded(int position);
+    }
+
+    private final DataManager mDataManager;
+    private final Playlist mPlaylist;
+    private final Listener mListener;
+    private final Scheduler mSubscribeScheduler;
+    private final Scheduler mObserveScheduler;
+    private Subscriber<VineyardService.PostResponse> mSubscriber;
+    private boolean mIsWaiting;
+    private boolean mHasRunOut;
+    private int mEmptyPages;
+
+    public PlaylistLoader(DataManager dataManager, Playlist playlist, Listener listener) {
+        this(dataManager, playlist, listener, Schedulers.io(), AndroidSchedulers.mainThread());
+    }
+
+    public PlaylistLoader(DataManager dataManager, Playlist playlist, Listener listener,
+                          Scheduler subscribeScheduler, Scheduler observeScheduler) {
+        mDataManager = dataManager;
+        mPlaylist = playlist;
+        mListener = listener;
+        mSubscribeScheduler = subscribeScheduler;
+        mObserveScheduler = observeScheduler;
+    }
+
+    public boolean hasMorePages() {
+        return !mHasRunOut && mPlaylist.getFeed() != null && mPlaylist.getNextPage() > 0;
+    }
+
+    /**
+     * Returns true if skipping past the end of the playlist is waiting for the next page.
+     */
+    public boolean isWaiting() {
+        return mIsWaiting;
+    }
+
+    /**
+     * Requests the next page if there are only a few posts left to play after the given one.
+     */
+    public void loadNextPageIfNeeded(int currentItem) {
+        if (mPlaylist.size() - currentItem <= PREFETCH_DISTANCE) loadNextPage();
+    }
+
+    /**
+     * Returns the position of the post to play after the given one, wrapping around to the
+     * start once the feed has run out. Returns WAITING if that post has yet to be loaded, in
+     * which case the listener is told which post to play once the next page has arrived.
+     */
+    public int skipToNext(int currentItem) {
+        if (currentItem + 1 < mPlaylist.size()) {
+            mIsWaiting = false;
+            return currentItem + 1;
+        }
+        if (!hasMorePages()) {
+            mIsWaiting = false;
+            return 0;
+        }
+        mIsWaiting = true;
+        loadNextPage();
+        return WAITING;
+    }
+
+    public void cancel() {
+        mIsWaiting = false;
+        if (mSubscriber != null) {
+            mSubscriber.unsubscribe();
+            mSubscriber = null;
+        }
+    }
+
+    private void loadNextPage() {
+        if (!hasMorePages() || mSubscriber != null) return;
+        final int page = mPlaylist.getNextPage();
+        final String anchor = mPlaylist.getAnchor();
+        Subscriber<VineyardService.PostResponse> subscriber =
+                new Subscriber<VineyardService.PostResponse>() {
+            private boolean mHasNewPosts;
+
+            @Override
+            public void onCompleted() {
+                mSubscriber = null;
+                boolean hasMovedOn = mPlaylist.getNextPage() != page
+                        || !equals(mPlaylist.getAnchor(), anchor);
+                mEmptyPages = mHasNewPosts ? 0 : mEmptyPages + 1;
+                if (!hasMovedOn || mEmptyPages >= MAX_EMPTY_PAGES) {
+                    Timber.w("The feed has stopped returning new posts, after page %d", page);
+                    mHasRunOut = true;
+                }
+                if (!mIsWaiting) return;
+                if (hasMorePages()) {
+                    // The page held nothing new, so try the one after it
+                    loadNextPage();
+                } else {
+                    mIsWaiting = false;
+                    mListener.onNextPostLoaded(0);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                mSubscriber = null;
+                Timber.e(e, "There was an error loading the next page of the playlist");
+                if (mIsWaiting) {
+                    mIsWaiting = false;
+                    mListener.onNextPostLoaded(0);
+                }
+            }
+
+            @Override
+            public void onNext(VineyardService.PostResponse postResponse) {
+                if (!postResponse.data.partial) {
+                    mPlaylist.setCursor(postResponse.data.anchorStr, postResponse.data.nextPage);
+                }
+                int size = mPlaylist.size();
+                if (mPlaylist.addPosts(postResponse.data.records) > 0) {
+                    mHasNewPosts = true;
+                    mListener.onPostsAdded(size);
+                    if (mIsWaiting) {
+                        mIsWaiting = false;
+                        mListener.onNextPostLoaded(size);
+                    }
+                }
+            }
+
+            private boolean equals(String a, String b) {
+                return a == null ? b == null : a.equals(b);
+            }
+        };
+        // Kept before subscribing, as the page may arrive straight away
+        mSubscriber = subscriber;
+        mDataManager.getPosts(mPlaylist.getFeed(), String.valueOf(page), anchor)
+                .subscribeOn(mSubscribeScheduler)
+                .observeOn(mObserveScheduler)
+                .subscribe(subscriber);
+    }
+}
@@ -0,0 +1,133 @@
+package com.hitherejoe.vineyard.data;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.subjects.ReplaySubject;
+import rx.subscriptions.SerialSubscription;
+
+/**
+ * Shares a single subscription to a request between everyone who asks for it while it is in
+ * flight, keyed by the endpoint and request parameters. Once the request has completed its
+ * values are replayed to anyone else who asks for it within a short window, after which the
+ * next subscriber triggers a new request.
+ */
+public class RequestCoalescer {
+
+    public static final long DEFAULT_REPLAY_WINDOW_MILLIS = 2000;
+
+    private final Map<String, Entry<?>> mEntries;
+    private final long mReplayWindowMillis;
+
+    public RequestCoalescer() {
+        this(DEFAULT_REPLAY_WINDOW_MILLIS);
+    }
+
+    public RequestCoalescer(long replayWindowMillis) {
+        mEntries = new HashMap<>();
+        mReplayWindowMillis = replayWindowMillis;
+    }
+
+    public static String key(String endpoint, String args, String page, String anchor) {
+        return endpoint + "|" + args + "|" + page + "|" + anchor;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> coalesce(final String key, final Observable<T> source) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                final Entry<T> entry;
+                boolean isNewEntry = false;
+                synchronized (mEntries) {
+                    removeExpiredEntries();
+                    Entry<T> existing = (Entry<T>) mEntries.get(key);
+                    if (existing == null) {
+                        existing = new Entry<>();
+                        mEntries.put(key, existing);
+                        isNewEntry = true;
+                    }
+                    entry = existing;
+                    entry.subscriberCount++;
+                }
+                // The request is only ever made once per entry, as the subject replays
+                // everything to whoever subscribes, however late. It is made outside the lock
+                // as it may run on this thread.
+                if (isNewEntry) connect(key, entry, source);
+                return entry.subject.doOnUnsubscribe(new Action0() {
+                    @Override
+                    public void call() {
+                        release(key, entry);
+                    }
+                });
+            }
+        });
+    }
+
+    public void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+    }
+
+    private <T> void connect(final String key, final Entry<T> entry, Observable<T> source) {
+        entry.connection.set(source
+                .doOnCompleted(new Action0() {
+                    @Override
+                    public void call() {
+                        synchronized (mEntries) {
+                            entry.completedAt = System.currentTimeMillis();
+                        }
+                    }
+                })
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        remove(key, entry);
+                    }
+                })
+                .subscribe(entry.subject));
+    }
+
+    private void release(String key, Entry<?> entry) {
+        synchronized (mEntries) {
+            entry.subscriberCount--;
+            if (entry.subscriberCount == 0 && entry.completedAt == 0) {
+                // Everyone unsubscribed before the request finished
+                entry.connection.unsubscribe();
+                remove(key, entry);
+            }
+        }
+    }
+
+    private void remove(String key, Entry<?> entry) {
+        synchronized (mEntries) {
+            if (mEntries.get(key) == entry) mEntries.remove(key);
+        }
+    }
+
+    private void removeExpiredEntries() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<?>> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<?> entry = iterator.next();
+            if (entry.completedAt != 0 && now - entry.completedAt > mReplayWindowMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry<T> {
+        final ReplaySubject<T> subject = ReplaySubject.create();
+        // Unsubscribing before the request has been made stops it from being made at all
+        final SerialSubscription connection = new SerialSubscription();
+        int subscriberCount;
+        // Zero while the request is in flight
+        long completedAt;
+    }
+}
@@ -0,0 +1,124 @@
+package com.hitherejoe.vineyard.data;
+
+import com.hitherejoe.vineyard.data.model.Tag;
+import com.hitherejoe.vineyard.data.model.User;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Combines the tags and users found for a search into a single list ranked by popularity, as
+ * each page of them arrives. Each page is sorted on its own and merged into the results so far,
+ * rather than sorting the whole list again. Tags and users are requested at the same time, so
+ * they may be added from different threads.
+ */
+public class SearchResultsMerger {
+
+    /**
+     * Orders tags and users by their number of posts and followers respectively, most popular
+     * first.
+     */
+    public static final Comparator<Object> POPULARITY_COMPARATOR = new Comparator<Object>() {
+        @Override
+        public int compare(Object lhs, Object rhs) {
+            return Long.compare(popularityOf(rhs), popularityOf(lhs));
+        }
+    };
+
+    private ArrayList<Object> mResults;
+    private VineyardService.TagResponse mTagResponse;
+    private VineyardService.UserResponse mUserResponse;
+
+    public SearchResultsMerger() {
+        mResults = new ArrayList<>();
+    }
+
+    public synchronized VineyardService.KeywordSearchResponse addTags(VineyardService.TagResponse response) {
+        mTagResponse = response;
+        mResults = merge(mResults, response.data.records);
+        VineyardService.KeywordSearchResponse results = getResults();
+        results.addedItems = response.data.records;
+        return results;
+    }
+
+    public synchronized VineyardService.KeywordSearchResponse addUsers(VineyardService.UserResponse response) {
+        mUserResponse = response;
+        mResults = merge(mResults, response.data.records);
+        VineyardService.KeywordSearchResponse results = getResults();
+        results.addedItems = response.data.records;
+        return results;
+    }
+
+    /**
+     * Returns the results so far, which are partial until both tags and users have arrived.
+     */
+    public synchronized VineyardService.KeywordSearchResponse getResults() {
+        VineyardService.KeywordSearchResponse results = new VineyardService.KeywordSearchResponse();
+        results.list = mResults;
+        results.partial = mTagResponse == null || mUserResponse == null;
+        if (mTagResponse != null) {
+            results.tagSearchAnchor = mTagResponse.data.anchorStr;
+            results.tagNextPage = mTagResponse.data.nextPage;
+        }
+        if (mUserResponse != null) {
+            results.userSearchAnchor = mUserResponse.data.anchorStr;
+            results.userNextPage = mUserResponse.data.nextPage;
+        }
+        return results;
+    }
+
+    /**
+     * Returns a new list with the given items merged into the already ranked ones. Items that
+     * are as popular as one already in the list are placed after it, and items that are already
+     * in the list are dropped.
+     */
+    public static ArrayList<Object> merge(List<?> rankedItems, List<?> items) {
+        if (items == null) items = Collections.emptyList();
+        Set<String> keys = new HashSet<>(rankedItems.size() + items.size());
+        for (int i = 0; i < rankedItems.size(); i++) {
+            keys.add(getKey(rankedItems.get(i)));
+        }
+        ArrayList<Object> sortedItems = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Object item = items.get(i);
+            String key = getKey(item);
+            if (key == null || keys.add(key)) sortedItems.add(item);
+        }
+        Collections.sort(sortedItems, POPULARITY_COMPARATOR);
+
+        ArrayList<Object> merged = new ArrayList<>(rankedItems.size() + sortedItems.size());
+        int i = 0;
+        int j = 0;
+        while (i < rankedItems.size() && j < sortedItems.size()) {
+            if (POPULARITY_COMPARATOR.compare(sortedItems.get(j), rankedItems.get(i)) < 0) {
+                merged.add(sortedItems.get(j++));
+            } else {
+                merged.add(rankedItems.get(i++));
+            }
+        }
+        merged.addAll(rankedItems.subList(i, rankedItems.size()));
+        merged.addAll(sortedItems.subList(j, sortedItems.size()));
+        return merged;
+    }
+
+    /**
+     * Returns the key that identifies the given tag or user among the results, or null for
+     * anything else.
+     */
+    public static String getKey(Object item) {
+        if (item instanceof Tag) return "tag/" + ((Tag) item).tagId;
+        if (item instanceof User) return "user/" + ((User) item).userId;
+        return null;
+    }
+
+    public static long popularityOf(Object item) {
+        if (item instanceof Tag) return ((Tag) item).postCount;
+        if (item instanceof User) return ((User) item).followerCount;
+        return 0;
+    }
+}
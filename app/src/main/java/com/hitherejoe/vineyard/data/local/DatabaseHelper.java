@@ -0,0 +1,117 @@
+package com.hitherejoe.vineyard.data.local;
+
+import android.database.Cursor;
+
+import com.hitherejoe.vineyard.data.model.Feed;
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.remote.VineyardService.PostResponse;
+import com.squareup.sqlbrite.BriteDatabase;
+import com.squareup.sqlbrite.SqlBrite;
+
+import java.util.ArrayList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import rx.Observable;
+import rx.functions.Func1;
+import timber.log.Timber;
+
+@Singleton
+public class DatabaseHelper {
+
+    private final BriteDatabase mDb;
+
+    @Inject
+    public DatabaseHelper(DbOpenHelper dbOpenHelper) {
+        mDb = SqlBrite.create().wrapDatabaseHelper(dbOpenHelper);
+    }
+
+    /**
+     * Emits the stored page for the given feed, page and anchor once, or completes without
+     * emitting anything if the page has not been stored.
+     */
+    public Observable<PostResponse> getTimelinePage(Feed feed, String page, String anchor) {
+        return mDb.createQuery(Db.TimelineTable.TABLE_NAME, Db.TimelineTable.SELECT_PAGE,
+                feed.getKey(), toKey(page), toKey(anchor))
+                .first()
+                .map(new Func1<SqlBrite.Query, PostResponse>() {
+                    @Override
+                    public PostResponse call(SqlBrite.Query query) {
+                        Cursor cursor = query.run();
+                        try {
+                            PostResponse response = new PostResponse();
+                            response.data = new PostResponse.Data();
+                            response.data.records = new ArrayList<>(cursor.getCount());
+                            while (cursor.moveToNext()) {
+                                if (cursor.isFirst()) {
+                                    response.data.anchorStr =
+                                            Db.TimelineTable.parseAnchorStr(cursor);
+                                    response.data.nextPage =
+                                            Db.TimelineTable.parseNextPage(cursor);
+                                }
+                                response.data.records.add(Db.TimelineTable.parseCursor(cursor));
+                            }
+                            return response;
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                })
+                .filter(new Func1<PostResponse, Boolean>() {
+                    @Override
+                    public Boolean call(PostResponse response) {
+                        return !response.data.records.isEmpty();
+                    }
+                })
+                .onErrorResumeNext(new Func1<Throwable, Observable<PostResponse>>() {
+                    @Override
+                    public Observable<PostResponse> call(Throwable throwable) {
+                        Timber.e(throwable, "There was an error reading the stored timeline");
+                        return Observable.empty();
+                    }
+                });
+    }
+
+    /**
+     * Replaces the stored page for the given feed, page and anchor. Storing a first page that
+     * was requested without an anchor starts a new timeline, so any previously stored pages for
+     * the feed are removed as their anchor is no longer valid.
+     */
+    public void setTimelinePage(Feed feed, String page, String anchor, PostResponse response) {
+        if (response == null || response.data == null || response.data.records == null) return;
+        String feedKey = feed.getKey();
+        String pageKey = toKey(page);
+        String anchorKey = toKey(anchor);
+        long savedAt = System.currentTimeMillis();
+
+        BriteDatabase.Transaction transaction = mDb.newTransaction();
+        try {
+            if (anchor == null) {
+                mDb.delete(Db.TimelineTable.TABLE_NAME,
+                        Db.TimelineTable.COLUMN_FEED + " = ?", feedKey);
+            } else {
+                mDb.delete(Db.TimelineTable.TABLE_NAME,
+                        Db.TimelineTable.COLUMN_FEED + " = ? AND " +
+                                Db.TimelineTable.COLUMN_PAGE + " = ? AND " +
+                                Db.TimelineTable.COLUMN_ANCHOR + " = ?",
+                        feedKey, pageKey, anchorKey);
+            }
+            for (int i = 0; i < response.data.records.size(); i++) {
+                Post post = response.data.records.get(i);
+                mDb.insert(Db.TimelineTable.TABLE_NAME, Db.TimelineTable.toContentValues(
+                        feedKey, pageKey, anchorKey, i, response.data.anchorStr,
+                        response.data.nextPage, savedAt, post));
+            }
+            transaction.markSuccessful();
+        } catch (RuntimeException e) {
+            Timber.e(e, "There was an error storing the timeline");
+        } finally {
+            transaction.end();
+        }
+    }
+
+    private static String toKey(String value) {
+        return value == null ? "" : value;
+    }
+}
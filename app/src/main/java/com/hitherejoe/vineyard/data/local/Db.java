@@ -0,0 +1,112 @@
+package com.hitherejoe.vineyard.data.local;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.hitherejoe.vineyard.data.model.Post;
+
+public class Db {
+
+    public Db() { }
+
+    /**
+     * Stores pages of posts keyed by the feed they belong to along with the page number and
+     * anchor that were used to request them.
+     */
+    public abstract static class TimelineTable {
+        public static final String TABLE_NAME = "timeline";
+
+        public static final String COLUMN_FEED = "feed";
+        public static final String COLUMN_PAGE = "page";
+        public static final String COLUMN_ANCHOR = "anchor";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_ANCHOR_STR = "anchor_str";
+        public static final String COLUMN_NEXT_PAGE = "next_page";
+        public static final String COLUMN_SAVED_AT = "saved_at";
+        public static final String COLUMN_AVATAR_URL = "avatar_url";
+        public static final String COLUMN_CREATED = "created";
+        public static final String COLUMN_CREATED_MILLIS = "created_millis";
+        public static final String COLUMN_DESCRIPTION = "description";
+        public static final String COLUMN_POST_ID = "post_id";
+        public static final String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+        public static final String COLUMN_USERNAME = "username";
+        public static final String COLUMN_VIDEO_URL = "video_url";
+        public static final String COLUMN_TAG = "tag";
+
+        public static final String CREATE =
+                "CREATE TABLE " + TABLE_NAME + " (" +
+                        COLUMN_FEED + " TEXT NOT NULL," +
+                        COLUMN_PAGE + " TEXT NOT NULL," +
+                        COLUMN_ANCHOR + " TEXT NOT NULL," +
+                        COLUMN_POSITION + " INTEGER NOT NULL," +
+                        COLUMN_ANCHOR_STR + " TEXT," +
+                        COLUMN_NEXT_PAGE + " INTEGER NOT NULL," +
+                        COLUMN_SAVED_AT + " INTEGER NOT NULL," +
+                        COLUMN_AVATAR_URL + " TEXT," +
+                        COLUMN_CREATED + " TEXT," +
+                        COLUMN_CREATED_MILLIS + " INTEGER NOT NULL," +
+                        COLUMN_DESCRIPTION + " TEXT," +
+                        COLUMN_POST_ID + " TEXT," +
+                        COLUMN_THUMBNAIL_URL + " TEXT," +
+                        COLUMN_USERNAME + " TEXT," +
+                        COLUMN_VIDEO_URL + " TEXT," +
+                        COLUMN_TAG + " TEXT" +
+                        " );";
+
+        public static final String CREATE_INDEX =
+                "CREATE INDEX " + TABLE_NAME + "_page_index ON " + TABLE_NAME + " (" +
+                        COLUMN_FEED + ", " + COLUMN_PAGE + ", " + COLUMN_ANCHOR + ");";
+
+        public static final String SELECT_PAGE =
+                "SELECT * FROM " + TABLE_NAME +
+                        " WHERE " + COLUMN_FEED + " = ? AND " + COLUMN_PAGE + " = ? AND " +
+                        COLUMN_ANCHOR + " = ? ORDER BY " + COLUMN_POSITION + " ASC";
+
+        public static ContentValues toContentValues(String feed, String page, String anchor,
+                                                    int position, String anchorStr, int nextPage,
+                                                    long savedAt, Post post) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_FEED, feed);
+            values.put(COLUMN_PAGE, page);
+            values.put(COLUMN_ANCHOR, anchor);
+            values.put(COLUMN_POSITION, position);
+            values.put(COLUMN_ANCHOR_STR, anchorStr);
+            values.put(COLUMN_NEXT_PAGE, nextPage);
+            values.put(COLUMN_SAVED_AT, savedAt);
+            values.put(COLUMN_AVATAR_URL, post.avatarUrl);
+            values.put(COLUMN_CREATED, post.created);
+            values.put(COLUMN_CREATED_MILLIS, post.getCreatedMillis());
+            values.put(COLUMN_DESCRIPTION, post.description);
+            values.put(COLUMN_POST_ID, post.postId);
+            values.put(COLUMN_THUMBNAIL_URL, post.thumbnailUrl);
+            values.put(COLUMN_USERNAME, post.username);
+            values.put(COLUMN_VIDEO_URL, post.videoUrl);
+            values.put(COLUMN_TAG, post.tag);
+            return values;
+        }
+
+        public static Post parseCursor(Cursor cursor) {
+            Post post = new Post();
+            post.avatarUrl = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_AVATAR_URL));
+            post.created = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CREATED));
+            post.createdMillis =
+                    cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_MILLIS));
+            post.description = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION));
+            post.postId = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_POST_ID));
+            post.thumbnailUrl =
+                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_THUMBNAIL_URL));
+            post.username = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USERNAME));
+            post.videoUrl = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VIDEO_URL));
+            post.tag = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TAG));
+            return post;
+        }
+
+        public static String parseAnchorStr(Cursor cursor) {
+            return cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ANCHOR_STR));
+        }
+
+        public static int parseNextPage(Cursor cursor) {
+            return cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_NEXT_PAGE));
+        }
+    }
+}
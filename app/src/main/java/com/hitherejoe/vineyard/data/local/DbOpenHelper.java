@@ -0,0 +1,41 @@
+package com.hitherejoe.vineyard.data.local;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.hitherejoe.vineyard.injection.ApplicationContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+@Singleton
+public class DbOpenHelper extends SQLiteOpenHelper {
+
+    public static final String DATABASE_NAME = "vineyard.db";
+    public static final int DATABASE_VERSION = 2;
+
+    @Inject
+    public DbOpenHelper(@ApplicationContext Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL(Db.TimelineTable.CREATE);
+            db.execSQL(Db.TimelineTable.CREATE_INDEX);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Everything stored here can be fetched again from the API, so simply start over
+        db.execSQL("DROP TABLE IF EXISTS " + Db.TimelineTable.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,168 @@
+package com.hitherejoe.vineyard.data.local;
+
+import android.content.ComponentCallbacks2;
+
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.model.Tag;
+import com.hitherejoe.vineyard.data.model.User;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory cache of decoded pages, so that revisiting a screen doesn't need to decode the same
+ * response again. Entries expire after a fixed time and the least recently used ones are evicted
+ * once the approximate size of the cached pages goes over budget.
+ */
+public class PageCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+    // Rough per object overhead used when estimating the size of a page
+    private static final int OBJECT_OVERHEAD_BYTES = 16;
+
+    private final LinkedHashMap<String, Entry> mEntries;
+    private final long mMaxSizeBytes;
+    private final long mTtlMillis;
+    private long mSizeBytes;
+
+    public PageCache() {
+        // Plenty to hold every page on screen a few times over, leaving the rest for images
+        this(Runtime.getRuntime().maxMemory() / 32, DEFAULT_TTL_MILLIS);
+    }
+
+    public PageCache(long maxSizeBytes, long ttlMillis) {
+        mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        mMaxSizeBytes = maxSizeBytes;
+        mTtlMillis = ttlMillis;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) return null;
+        if (System.currentTimeMillis() - entry.cachedAt > mTtlMillis) {
+            remove(key);
+            return null;
+        }
+        return (T) entry.page;
+    }
+
+    public synchronized void put(String key, Object page) {
+        Entry entry = new Entry(page, sizeOf(page), System.currentTimeMillis());
+        remove(key);
+        mEntries.put(key, entry);
+        mSizeBytes += entry.sizeBytes;
+        trimToSize(mMaxSizeBytes);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mSizeBytes = 0;
+    }
+
+    public synchronized long size() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Releases some or all of the cached pages depending on how much memory the system needs,
+     * see ComponentCallbacks2#onTrimMemory(int).
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(mMaxSizeBytes / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxSizeBytes / 2);
+        }
+    }
+
+    private synchronized void trimToSize(long maxSizeBytes) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > maxSizeBytes && iterator.hasNext()) {
+            mSizeBytes -= iterator.next().getValue().sizeBytes;
+            iterator.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) mSizeBytes -= entry.sizeBytes;
+    }
+
+    static long sizeOf(Object page) {
+        long size = OBJECT_OVERHEAD_BYTES;
+        if (page instanceof VineyardService.PostResponse) {
+            VineyardService.PostResponse response = (VineyardService.PostResponse) page;
+            if (response.data != null) {
+                size += sizeOf(response.data.anchorStr) + sizeOfPosts(response.data.records);
+            }
+        } else if (page instanceof VineyardService.TagResponse) {
+            VineyardService.TagResponse response = (VineyardService.TagResponse) page;
+            if (response.data != null) {
+                size += sizeOf(response.data.anchorStr) + sizeOfTags(response.data.records);
+            }
+        } else if (page instanceof VineyardService.UserResponse) {
+            VineyardService.UserResponse response = (VineyardService.UserResponse) page;
+            if (response.data != null) {
+                size += sizeOf(response.data.anchorStr) + sizeOfUsers(response.data.records);
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOfPosts(List<Post> posts) {
+        if (posts == null) return 0;
+        long size = 0;
+        for (Post post : posts) {
+            size += OBJECT_OVERHEAD_BYTES + 8
+                    + sizeOf(post.avatarUrl) + sizeOf(post.created) + sizeOf(post.description)
+                    + sizeOf(post.postId) + sizeOf(post.thumbnailUrl) + sizeOf(post.username)
+                    + sizeOf(post.videoUrl) + sizeOf(post.tag);
+        }
+        return size;
+    }
+
+    private static long sizeOfTags(List<Tag> tags) {
+        if (tags == null) return 0;
+        long size = 0;
+        for (Tag tag : tags) {
+            size += OBJECT_OVERHEAD_BYTES + 16 + sizeOf(tag.tag);
+        }
+        return size;
+    }
+
+    private static long sizeOfUsers(List<User> users) {
+        if (users == null) return 0;
+        long size = 0;
+        for (User user : users) {
+            size += OBJECT_OVERHEAD_BYTES + 40
+                    + sizeOf(user.username) + sizeOf(user.description)
+                    + sizeOf(user.avatarUrl) + sizeOf(user.userId) + sizeOf(user.location)
+                    + sizeOf(user.phoneNumber) + sizeOf(user.email) + sizeOf(user.error);
+        }
+        return size;
+    }
+
+    private static long sizeOf(String string) {
+        return string == null ? 0 : OBJECT_OVERHEAD_BYTES + 2 * string.length();
+    }
+
+    private static class Entry {
+        final Object page;
+        final long sizeBytes;
+        final long cachedAt;
+
+        Entry(Object page, long sizeBytes, long cachedAt) {
+            this.page = page;
+            this.sizeBytes = sizeBytes;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
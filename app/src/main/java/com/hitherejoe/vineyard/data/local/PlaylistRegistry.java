@@ -0,0 +1,65 @@
+package com.hitherejoe.vineyard.data.local;
+
+import com.hitherejoe.vineyard.data.model.Feed;
+import com.hitherejoe.vineyard.data.model.Playlist;
+import com.hitherejoe.vineyard.data.model.Post;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the most recently started playlists in memory, keyed by a small handle that can be passed
+ * in an Intent instead of the posts themselves. Handles don't survive the process, so anything
+ * resolving one should be ready to rebuild the playlist, see restore().
+ */
+public class PlaylistRegistry {
+
+    public static final int DEFAULT_MAX_PLAYLISTS = 8;
+
+    private final LinkedHashMap<String, Playlist> mPlaylists;
+    private long mNextHandle;
+
+    public PlaylistRegistry() {
+        this(DEFAULT_MAX_PLAYLISTS);
+    }
+
+    public PlaylistRegistry(final int maxPlaylists) {
+        mPlaylists = new LinkedHashMap<String, Playlist>(maxPlaylists, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Playlist> eldest) {
+                return size() > maxPlaylists;
+            }
+        };
+        // Handles from before the process was restarted shouldn't match any new playlist
+        mNextHandle = System.currentTimeMillis();
+    }
+
+    public synchronized Playlist create(Feed feed, List<Post> posts, String anchor, int nextPage) {
+        String handle = String.valueOf(mNextHandle++);
+        Playlist playlist = new Playlist(handle, feed, posts, anchor, nextPage);
+        mPlaylists.put(handle, playlist);
+        return playlist;
+    }
+
+    public synchronized Playlist get(String handle) {
+        return handle == null ? null : mPlaylists.get(handle);
+    }
+
+    /**
+     * Returns the playlist with the given handle. If it is no longer in memory, a playlist that
+     * starts with the given post and carries on from the start of the given feed is registered
+     * in its place.
+     */
+    public synchronized Playlist restore(String handle, Feed feed, Post post) {
+        Playlist playlist = get(handle);
+        if (playlist == null) {
+            if (handle == null) handle = String.valueOf(mNextHandle++);
+            playlist = new Playlist(handle, feed, Collections.singletonList(post), null,
+                    feed == null ? 0 : 1);
+            mPlaylists.put(handle, playlist);
+        }
+        return playlist;
+    }
+}
@@ -19,6 +19,7 @@ public class PreferencesHelper {
     private static final String PREF_KEY_USER_NAME = "PREF_KEY_USER_NAME";
     private static final String PREF_KEY_USER_ID = "PREF_KEY_USER_ID";
     private static final String PREF_KEY_AUTO_LOOP_VIDEOS = "PREF_KEY_AUTO_LOOP_VIDEOS";
+    private static final String PREF_KEY_RECOMMENDATION = "PREF_KEY_RECOMMENDATION_";
 
     @Inject
     public PreferencesHelper(@ApplicationContext Context context) {
@@ -45,6 +46,19 @@ public class PreferencesHelper {
         mPref.edit().putBoolean(PREF_KEY_AUTO_LOOP_VIDEOS, shouldAutoLoop).apply();
     }
 
+    /**
+     * Stores a summary of the recommendation published with the given notification id, or
+     * removes it if the summary is null.
+     */
+    public void putPublishedRecommendation(int notificationId, @Nullable String signature) {
+        String key = PREF_KEY_RECOMMENDATION + notificationId;
+        if (signature == null) {
+            mPref.edit().remove(key).apply();
+        } else {
+            mPref.edit().putString(key, signature).apply();
+        }
+    }
+
     @Nullable
     public String getAccessToken() {
         return mPref.getString(PREF_KEY_ACCESS_TOKEN, null);
@@ -58,4 +72,9 @@ public class PreferencesHelper {
     public boolean getShouldAutoLoop() {
         return mPref.getBoolean(PREF_KEY_AUTO_LOOP_VIDEOS, false);
     }
+
+    @Nullable
+    public String getPublishedRecommendation(int notificationId) {
+        return mPref.getString(PREF_KEY_RECOMMENDATION + notificationId, null);
+    }
 }
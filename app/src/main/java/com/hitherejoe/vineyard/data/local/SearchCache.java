@@ -0,0 +1,87 @@
+package com.hitherejoe.vineyard.data.local;
+
+import com.hitherejoe.vineyard.data.model.Tag;
+import com.hitherejoe.vineyard.data.model.User;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps the results of the most recent search queries. Results for a query that hasn't been
+ * searched for can be approximated by filtering the results of a shorter query that it starts
+ * with, which is useful while the user is still typing.
+ */
+public class SearchCache {
+
+    public static final int DEFAULT_MAX_QUERIES = 20;
+
+    private final LinkedHashMap<String, VineyardService.KeywordSearchResponse> mResults;
+
+    public SearchCache() {
+        this(DEFAULT_MAX_QUERIES);
+    }
+
+    public SearchCache(final int maxQueries) {
+        mResults = new LinkedHashMap<String, VineyardService.KeywordSearchResponse>(
+                maxQueries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, VineyardService.KeywordSearchResponse> eldest) {
+                return size() > maxQueries;
+            }
+        };
+    }
+
+    public synchronized VineyardService.KeywordSearchResponse get(String query) {
+        return mResults.get(normalise(query));
+    }
+
+    public synchronized void put(String query, VineyardService.KeywordSearchResponse response) {
+        mResults.put(normalise(query), response);
+    }
+
+    public synchronized void clear() {
+        mResults.clear();
+    }
+
+    /**
+     * Returns the cached results of the longest shorter query that the given query starts with,
+     * filtered down to the tags and users that match the given query. The response is marked as
+     * partial and approximate as it's only an approximation. Returns null if there is no such query.
+     */
+    public synchronized VineyardService.KeywordSearchResponse getPrefixResults(String query) {
+        String normalisedQuery = normalise(query);
+        for (int length = normalisedQuery.length() - 1; length > 0; length--) {
+            VineyardService.KeywordSearchResponse prefixResults =
+                    mResults.get(normalisedQuery.substring(0, length));
+            if (prefixResults != null) return filter(prefixResults, normalisedQuery);
+        }
+        return null;
+    }
+
+    private static VineyardService.KeywordSearchResponse filter(
+            VineyardService.KeywordSearchResponse response, String query) {
+        VineyardService.KeywordSearchResponse filtered =
+                new VineyardService.KeywordSearchResponse();
+        filtered.list = new ArrayList<>();
+        filtered.partial = true;
+        filtered.approximate = true;
+        for (Object item : response.list) {
+            String name = null;
+            if (item instanceof Tag) {
+                name = ((Tag) item).tag;
+            } else if (item instanceof User) {
+                name = ((User) item).username;
+            }
+            if (name != null && normalise(name).contains(query)) filtered.list.add(item);
+        }
+        return filtered;
+    }
+
+    private static String normalise(String query) {
+        return query.trim().toLowerCase(Locale.getDefault());
+    }
+}
@@ -0,0 +1,242 @@
+package com.hitherejoe.vineyard.data.local;
+
+import android.content.Context;
+
+import com.hitherejoe.vineyard.injection.ApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * On-disk cache of downloaded videos, shared by previews and full playback so that a video is
+ * only downloaded once. Only complete videos are cached: each one is written to a temporary file
+ * that is moved into the cache once it has been downloaded in full. The least recently used
+ * videos are removed once the cache goes over its size budget.
+ *
+ * Lookups are made from the main thread every time a video or preview is played, so they only
+ * use the index kept in memory. The index is read from disk on the given Scheduler when the
+ * cache is created, and files are checked and marked as used on it too.
+ */
+@Singleton
+public class VideoCache {
+
+    // Enough for a hundred or so six second videos
+    public static final long DEFAULT_MAX_SIZE_BYTES = 100 * 1024 * 1024;
+
+    private static final String VIDEO_CACHE_DIR = "videos";
+    private static final String VIDEO_SUFFIX = ".mp4";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File mDirectory;
+    private final long mMaxSizeBytes;
+    private final Scheduler mScheduler;
+    // Sizes of the cached files keyed by their name, least recently used first
+    private final LinkedHashMap<String, Long> mEntries;
+    private final Set<String> mWritingKeys;
+    private long mSizeBytes;
+    private boolean mIsInitialized;
+
+    @Inject
+    public VideoCache(@ApplicationContext Context context) {
+        this(new File(context.getCacheDir(), VIDEO_CACHE_DIR), DEFAULT_MAX_SIZE_BYTES,
+                Schedulers.io());
+    }
+
+    public VideoCache(File directory, long maxSizeBytes) {
+        this(directory, maxSizeBytes, Schedulers.immediate());
+    }
+
+    public VideoCache(File directory, long maxSizeBytes, Scheduler scheduler) {
+        mDirectory = directory;
+        mMaxSizeBytes = maxSizeBytes;
+        mScheduler = scheduler;
+        mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        mWritingKeys = new HashSet<>();
+        schedule(new Action0() {
+            @Override
+            public void call() {
+                synchronized (VideoCache.this) {
+                    initialize();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns whether the given video has been downloaded in full.
+     */
+    public synchronized boolean isCached(String videoUrl) {
+        initialize();
+        return mEntries.containsKey(getFileName(videoUrl));
+    }
+
+    /**
+     * Returns the cached copy of the given video, marking it as recently used, or null if the
+     * video isn't cached. The file is checked afterwards, so one that has been removed from disk
+     * (e.g. by the system clearing the app's cache) may still be returned once.
+     */
+    public synchronized File get(String videoUrl) {
+        initialize();
+        final String fileName = getFileName(videoUrl);
+        if (mEntries.get(fileName) == null) return null;
+        final File file = new File(mDirectory, fileName);
+        schedule(new Action0() {
+            @Override
+            public void call() {
+                if (file.exists()) {
+                    // Keeps the order of use across restarts, see initialize()
+                    file.setLastModified(System.currentTimeMillis());
+                } else {
+                    synchronized (VideoCache.this) {
+                        remove(fileName);
+                    }
+                }
+            }
+        });
+        return mEntries.containsKey(fileName) ? file : null;
+    }
+
+    /**
+     * Returns a temporary file that the given video can be downloaded to before it is committed
+     * to the cache, see commit(). Returns null if the video is already cached or is being
+     * downloaded by somebody else, in which case it shouldn't be downloaded again.
+     */
+    public synchronized File startWriting(String videoUrl) throws IOException {
+        initialize();
+        String fileName = getFileName(videoUrl);
+        if (mEntries.containsKey(fileName) || mWritingKeys.contains(fileName)) return null;
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + mDirectory);
+        }
+        mWritingKeys.add(fileName);
+        return File.createTempFile(fileName, TEMP_SUFFIX, mDirectory);
+    }
+
+    /**
+     * Moves a complete download of the given video into the cache, removing the least recently
+     * used videos as needed to stay within the budget.
+     */
+    public synchronized void commit(String videoUrl, File tempFile) throws IOException {
+        String fileName = getFileName(videoUrl);
+        mWritingKeys.remove(fileName);
+        File file = new File(mDirectory, fileName);
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Couldn't move " + tempFile + " to " + file);
+        }
+        put(fileName, file.length());
+        trimToSize();
+    }
+
+    /**
+     * Discards an incomplete download of the given video, see startWriting().
+     */
+    public synchronized void abort(String videoUrl, File tempFile) {
+        mWritingKeys.remove(getFileName(videoUrl));
+        tempFile.delete();
+    }
+
+    public synchronized long getSizeBytes() {
+        initialize();
+        return mSizeBytes;
+    }
+
+    /**
+     * Reads the files already in the cache, most recently used last. Left over temporary files
+     * from downloads that never finished are removed. This is normally done in the background
+     * as soon as the cache is created, so it only blocks callers that come before it is done.
+     */
+    private void initialize() {
+        if (mIsInitialized) return;
+        mIsInitialized = true;
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        // Each file is only looked at once, rather than on every comparison
+        final Map<File, Long> lastModified = new HashMap<>(files.length);
+        for (File file : files) {
+            lastModified.put(file, file.lastModified());
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.compare(lastModified.get(lhs), lastModified.get(rhs));
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(VIDEO_SUFFIX)) {
+                put(file.getName(), file.length());
+            } else {
+                file.delete();
+            }
+        }
+        trimToSize();
+    }
+
+    private void schedule(final Action0 action) {
+        final Scheduler.Worker worker = mScheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    action.call();
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    private void put(String fileName, long sizeBytes) {
+        Long previous = mEntries.put(fileName, sizeBytes);
+        if (previous != null) mSizeBytes -= previous;
+        mSizeBytes += sizeBytes;
+    }
+
+    private void remove(String fileName) {
+        Long sizeBytes = mEntries.remove(fileName);
+        if (sizeBytes != null) mSizeBytes -= sizeBytes;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > mMaxSizeBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            // Videos being played keep playing from the open file after it has been deleted
+            new File(mDirectory, eldest.getKey()).delete();
+            mSizeBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private static String getFileName(String videoUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(videoUrl.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2 + VIDEO_SUFFIX.length());
+            for (byte b : digest) {
+                builder.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+            return builder.append(VIDEO_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return Integer.toHexString(videoUrl.hashCode()) + VIDEO_SUFFIX;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.hitherejoe.vineyard.data.local;
+
+import com.hitherejoe.vineyard.data.model.Playlist;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+import timber.log.Timber;
+
+/**
+ * Downloads the videos either side of the one being played into the VideoCache, so that
+ * skipping to them can start playing straight away rather than waiting for them to buffer. Videos are
+ * downloaded one at a time, nearest first, and at most a given number of bytes per second so
+ * that they don't compete with the video being played. Rather than holding a thread while it
+ * waits, each download schedules the read of its next chunk for when the rate allows it.
+ */
+@Singleton
+public class VideoPrefetcher {
+
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+    // Vine videos are around 1MB, so this stages the next one well within its neighbour's loop
+    public static final long DEFAULT_MAX_BYTES_PER_SECOND = 256 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final VideoCache mVideoCache;
+    private final OkHttpClient mClient;
+    private final Scheduler mScheduler;
+    private int mPrefetchDepth;
+    private long mMaxBytesPerSecond;
+    private Subscription mSubscription;
+
+    @Inject
+    public VideoPrefetcher(VideoCache videoCache, OkHttpClient client) {
+        this(videoCache, client, Schedulers.io());
+    }
+
+    public VideoPrefetcher(VideoCache videoCache, OkHttpClient client, Scheduler scheduler) {
+        mVideoCache = videoCache;
+        mClient = client;
+        mScheduler = scheduler;
+        mPrefetchDepth = DEFAULT_PREFETCH_DEPTH;
+        mMaxBytesPerSecond = DEFAULT_MAX_BYTES_PER_SECOND;
+    }
+
+    /**
+     * Sets the number of videos to download in each direction from the one being played.
+     */
+    public synchronized void setPrefetchDepth(int prefetchDepth) {
+        mPrefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Sets the rate that videos are downloaded at, or 0 to download them as fast as possible.
+     */
+    public synchronized void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        mMaxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * Downloads the videos around the given position in the playlist that aren't already cached,
+     * cancelling any other downloads.
+     */
+    public synchronized void prefetch(Playlist playlist, int position) {
+        List<String> missingUrls = new ArrayList<>();
+        for (int distance = 1; distance <= mPrefetchDepth; distance++) {
+            addIfMissing(missingUrls, playlist, position + distance);
+            addIfMissing(missingUrls, playlist, position - distance);
+        }
+
+        if (mSubscription != null) mSubscription.unsubscribe();
+        if (missingUrls.isEmpty()) return;
+        mSubscription = Observable.from(missingUrls)
+                .concatMap(new Func1<String, Observable<String>>() {
+                    @Override
+                    public Observable<String> call(String videoUrl) {
+                        return download(videoUrl);
+                    }
+                })
+                .subscribeOn(mScheduler)
+                .subscribe(new Subscriber<String>() {
+                    @Override
+                    public void onCompleted() { }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Timber.e(e, "There was an error prefetching videos");
+                    }
+
+                    @Override
+                    public void onNext(String videoUrl) {
+                        Timber.d("Prefetched " + videoUrl);
+                    }
+                });
+    }
+
+    /**
+     * Cancels any downloads in progress, leaving the videos that have already been downloaded.
+     */
+    public synchronized void cancel() {
+        if (mSubscription != null) {
+            mSubscription.unsubscribe();
+            mSubscription = null;
+        }
+    }
+
+    private void addIfMissing(List<String> videoUrls, Playlist playlist, int position) {
+        if (position < 0 || position >= playlist.size()) return;
+        String videoUrl = playlist.get(position).videoUrl;
+        if (videoUrl != null && !mVideoCache.isCached(videoUrl)) videoUrls.add(videoUrl);
+    }
+
+    private Observable<String> download(final String videoUrl) {
+        return Observable.create(new Observable.OnSubscribe<String>() {
+            @Override
+            public void call(Subscriber<? super String> subscriber) {
+                File tempFile = null;
+                try {
+                    // Videos that are being streamed are added to the cache by the VideoProxy
+                    tempFile = mVideoCache.startWriting(videoUrl);
+                    if (tempFile == null) {
+                        subscriber.onCompleted();
+                        return;
+                    }
+                    Response response = mClient.newCall(
+                            new Request.Builder().url(videoUrl).build()).execute();
+                    if (!response.isSuccessful()) {
+                        response.body().close();
+                        throw new IOException("Unexpected response " + response.code()
+                                + " for " + videoUrl);
+                    }
+                    InputStream input = response.body().byteStream();
+                    OutputStream output;
+                    try {
+                        output = new FileOutputStream(tempFile);
+                    } catch (IOException e) {
+                        input.close();
+                        throw e;
+                    }
+                    new Download(videoUrl, tempFile, input, output, subscriber).start();
+                } catch (IOException | IllegalArgumentException e) {
+                    if (tempFile != null) mVideoCache.abort(videoUrl, tempFile);
+                    // A video that can't be downloaded is simply streamed when it's played
+                    Timber.w("Couldn't prefetch " + videoUrl + ": " + e.getMessage());
+                    subscriber.onCompleted();
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies a video to its temporary file a chunk at a time, scheduling each read for when it
+     * keeps the download under the maximum rate. Unsubscribing stops the download, discarding
+     * what has been written so far.
+     */
+    private class Download implements Action0 {
+
+        private final String mVideoUrl;
+        private final File mTempFile;
+        private final InputStream mInput;
+        private final OutputStream mOutput;
+        private final Subscriber<? super String> mSubscriber;
+        private final Scheduler.Worker mWorker;
+        private final long mMaxRate;
+        private final byte[] mBuffer;
+        private long mStartTime;
+        private long mTotalBytes;
+        private boolean mIsClosed;
+
+        Download(String videoUrl, File tempFile, InputStream input, OutputStream output,
+                 Subscriber<? super String> subscriber) {
+            mVideoUrl = videoUrl;
+            mTempFile = tempFile;
+            mInput = input;
+            mOutput = output;
+            mSubscriber = subscriber;
+            mWorker = mScheduler.createWorker();
+            synchronized (VideoPrefetcher.this) {
+                mMaxRate = mMaxBytesPerSecond;
+            }
+            mBuffer = new byte[BUFFER_SIZE];
+        }
+
+        void start() {
+            mSubscriber.add(mWorker);
+            mSubscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    if (close()) mVideoCache.abort(mVideoUrl, mTempFile);
+                }
+            }));
+            mStartTime = mWorker.now();
+            mWorker.schedule(this);
+        }
+
+        @Override
+        public void call() {
+            try {
+                int read = mInput.read(mBuffer);
+                if (read == -1) {
+                    complete();
+                    return;
+                }
+                mOutput.write(mBuffer, 0, read);
+                mTotalBytes += read;
+                long delay = mMaxRate <= 0 ? 0
+                        : mTotalBytes * 1000 / mMaxRate - (mWorker.now() - mStartTime);
+                mWorker.schedule(this, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                // Also thrown when the streams are closed by unsubscribing, see close()
+                if (!close()) return;
+                mVideoCache.abort(mVideoUrl, mTempFile);
+                Timber.w("Couldn't prefetch " + mVideoUrl + ": " + e.getMessage());
+                mSubscriber.onCompleted();
+            }
+        }
+
+        private void complete() {
+            if (!close()) return;
+            try {
+                mVideoCache.commit(mVideoUrl, mTempFile);
+                mSubscriber.onNext(mVideoUrl);
+            } catch (IOException e) {
+                Timber.w("Couldn't cache " + mVideoUrl + ": " + e.getMessage());
+            }
+            mSubscriber.onCompleted();
+        }
+
+        /**
+         * Closes the streams, returning false if they had already been closed, in which case
+         * the download has already been committed or discarded.
+         */
+        private synchronized boolean close() {
+            if (mIsClosed) return false;
+            mIsClosed = true;
+            closeQuietly(mInput);
+            closeQuietly(mOutput);
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) { }
+    }
+}
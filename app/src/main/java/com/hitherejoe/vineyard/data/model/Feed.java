@@ -0,0 +1,91 @@
+package com.hitherejoe.vineyard.data.model;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Identifies a paginated timeline of posts, e.g. the popular feed or the posts for a given tag.
+ */
+public class Feed implements Parcelable {
+
+    public static final String TYPE_POPULAR = "popular";
+    public static final String TYPE_EDITORS_PICKS = "editors_picks";
+    public static final String TYPE_TAG = "tag";
+    public static final String TYPE_USER = "user";
+
+    public String type;
+    public String id;
+
+    public Feed(String type, String id) {
+        this.type = type;
+        this.id = id;
+    }
+
+    public static Feed popular() {
+        return new Feed(TYPE_POPULAR, null);
+    }
+
+    public static Feed editorsPicks() {
+        return new Feed(TYPE_EDITORS_PICKS, null);
+    }
+
+    public static Feed tag(String tag) {
+        return new Feed(TYPE_TAG, tag);
+    }
+
+    public static Feed user(String userId) {
+        return new Feed(TYPE_USER, userId);
+    }
+
+    /**
+     * Returns a string that uniquely identifies this feed, suitable for use as a storage key.
+     */
+    public String getKey() {
+        return id == null ? type : type + ":" + id;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(this.type);
+        dest.writeString(this.id);
+    }
+
+    protected Feed(Parcel in) {
+        this.type = in.readString();
+        this.id = in.readString();
+    }
+
+    public static final Parcelable.Creator<Feed> CREATOR = new Parcelable.Creator<Feed>() {
+        public Feed createFromParcel(Parcel source) {
+            return new Feed(source);
+        }
+
+        public Feed[] newArray(int size) {
+            return new Feed[size];
+        }
+    };
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Feed feed = (Feed) o;
+
+        if (type != null ? !type.equals(feed.type) : feed.type != null) return false;
+        return !(id != null ? !id.equals(feed.id) : feed.id != null);
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type != null ? type.hashCode() : 0;
+        result = 31 * result + (id != null ? id.hashCode() : 0);
+        return result;
+    }
+}
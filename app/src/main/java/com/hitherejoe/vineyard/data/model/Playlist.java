@@ -0,0 +1,92 @@
+package com.hitherejoe.vineyard.data.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The posts being played, along with the feed they came from and the anchor and page to carry on
+ * loading it from. Playlists are kept in memory and handed between screens by their handle, see
+ * PlaylistRegistry, rather than parcelling the posts.
+ */
+public class Playlist {
+
+    private final String mHandle;
+    private final Feed mFeed;
+    private final ArrayList<Post> mPosts;
+    private final Map<String, Integer> mPositions;
+    private String mAnchor;
+    private int mNextPage;
+
+    public Playlist(String handle, Feed feed, List<Post> posts, String anchor, int nextPage) {
+        mHandle = handle;
+        mFeed = feed;
+        mPosts = new ArrayList<>(posts.size());
+        mPositions = new HashMap<>(posts.size());
+        mAnchor = anchor;
+        mNextPage = nextPage;
+        addPosts(posts);
+    }
+
+    public String getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * Returns the feed the posts came from, or null if they don't come from one.
+     */
+    public Feed getFeed() {
+        return mFeed;
+    }
+
+    public String getAnchor() {
+        return mAnchor;
+    }
+
+    public int getNextPage() {
+        return mNextPage;
+    }
+
+    public void setCursor(String anchor, int nextPage) {
+        mAnchor = anchor;
+        mNextPage = nextPage;
+    }
+
+    public List<Post> getPosts() {
+        return Collections.unmodifiableList(mPosts);
+    }
+
+    public Post get(int position) {
+        return mPosts.get(position);
+    }
+
+    public int size() {
+        return mPosts.size();
+    }
+
+    /**
+     * Returns the position of the post with the given id, or -1 if it isn't in the playlist.
+     */
+    public int indexOf(String postId) {
+        Integer position = mPositions.get(postId);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Appends the given posts, skipping any that are already in the playlist. Returns the number
+     * of posts that were added.
+     */
+    public int addPosts(List<Post> posts) {
+        int count = 0;
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            if (post.postId == null || mPositions.containsKey(post.postId)) continue;
+            mPositions.put(post.postId, mPosts.size());
+            mPosts.add(post);
+            count++;
+        }
+        return count;
+    }
+}
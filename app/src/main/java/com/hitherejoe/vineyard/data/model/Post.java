@@ -13,8 +13,21 @@ import timber.log.Timber;
 
 
 public class Post implements Comparable<Post>, Parcelable {
+
+    // SimpleDateFormat isn't thread safe and is costly to create, so each thread that decodes
+    // posts keeps one of its own rather than creating one per post
+    private static final ThreadLocal<SimpleDateFormat> CREATED_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSSSS", Locale.getDefault());
+                }
+            };
+
     public String avatarUrl;
     public String created;
+    // Parsed from created once, when the post is decoded, so that sorting doesn't parse dates
+    public transient long createdMillis;
     public String description;
     public String postId;
     public String thumbnailUrl;
@@ -24,7 +37,7 @@ public class Post implements Comparable<Post>, Parcelable {
 
     @Override
     public int compareTo(@NonNull Post another) {
-        return another.getFormattedDate().compareTo(getFormattedDate());
+        return Long.compare(another.getCreatedMillis(), getCreatedMillis());
     }
 
     @Override
@@ -36,6 +49,7 @@ public class Post implements Comparable<Post>, Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(this.avatarUrl);
         dest.writeString(this.created);
+        dest.writeLong(this.createdMillis);
         dest.writeString(this.description);
         dest.writeString(this.postId);
         dest.writeString(this.thumbnailUrl);
@@ -47,19 +61,32 @@ public class Post implements Comparable<Post>, Parcelable {
     public Post() { }
 
     public Date getFormattedDate() {
+        long createdMillis = getCreatedMillis();
+        return createdMillis == 0 ? null : new Date(createdMillis);
+    }
+
+    /**
+     * Returns the creation time in milliseconds, parsing it from created if that hasn't been
+     * done yet (e.g. for posts that weren't created by the type adapter).
+     */
+    public long getCreatedMillis() {
+        if (createdMillis == 0 && created != null) createdMillis = parseCreated(created);
+        return createdMillis;
+    }
+
+    public static long parseCreated(String created) {
         try {
-            SimpleDateFormat dateFormat =
-                    new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSSSS", Locale.getDefault());
-            return dateFormat.parse(this.created);
+            return CREATED_FORMAT.get().parse(created).getTime();
         } catch (ParseException e) {
             Timber.e(e, "There was a problem parsing the Post Date.");
         }
-        return null;
+        return 0;
     }
 
     protected Post(Parcel in) {
         this.avatarUrl = in.readString();
         this.created = in.readString();
+        this.createdMillis = in.readLong();
         this.description = in.readString();
         this.postId = in.readString();
         this.thumbnailUrl = in.readString();
@@ -11,7 +11,7 @@ public class Tag implements Comparable<Tag>, Parcelable {
 
     @Override
     public int compareTo(@NonNull Tag another) {
-        return (int) (postCount - another.postCount);
+        return Long.compare(postCount, another.postCount);
     }
 
     @Override
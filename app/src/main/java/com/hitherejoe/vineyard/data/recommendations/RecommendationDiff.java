@@ -0,0 +1,67 @@
+package com.hitherejoe.vineyard.data.recommendations;
+
+import android.support.annotation.Nullable;
+
+import com.hitherejoe.vineyard.data.model.Post;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out which recommendations need publishing and which need cancelling, by comparing the
+ * posts to recommend with a summary of what was last published in each position. Only the
+ * positions that have changed are published again, which saves fetching their thumbnails and
+ * replacing the notifications that are already shown.
+ */
+public class RecommendationDiff {
+
+    private final List<Integer> mChangedPositions;
+    private final List<Integer> mRemovedPositions;
+
+    /**
+     * @param posts the posts to recommend, in order
+     * @param published the summaries last published in each position (see getSignature()), or
+     *                  null where nothing was published
+     * @param shownPositions the positions whose recommendations are still shown, or null if that
+     *                       can't be told, in which case the published summaries are trusted
+     */
+    public RecommendationDiff(List<Post> posts, String[] published,
+                              @Nullable Set<Integer> shownPositions) {
+        mChangedPositions = new ArrayList<>();
+        mRemovedPositions = new ArrayList<>();
+        for (int i = 0; i < published.length; i++) {
+            if (i >= posts.size()) {
+                if (published[i] != null) mRemovedPositions.add(i);
+            } else if (published[i] == null
+                    || (shownPositions != null && !shownPositions.contains(i))
+                    || !getSignature(posts.get(i)).equals(published[i])) {
+                // Recommendations that have been dismissed are published again even if they
+                // haven't changed
+                mChangedPositions.add(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the positions whose recommendations need publishing.
+     */
+    public List<Integer> getChangedPositions() {
+        return mChangedPositions;
+    }
+
+    /**
+     * Returns the positions that no longer have a post, whose recommendations need cancelling.
+     */
+    public List<Integer> getRemovedPositions() {
+        return mRemovedPositions;
+    }
+
+    /**
+     * Returns a summary of everything shown in the recommendation for the given post, used to
+     * tell whether the recommendation needs to be published again.
+     */
+    public static String getSignature(Post post) {
+        return post.postId + "\n" + post.description + "\n" + post.thumbnailUrl;
+    }
+}
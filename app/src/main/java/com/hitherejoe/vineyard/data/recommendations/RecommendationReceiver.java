@@ -1,7 +1,5 @@
 package com.hitherejoe.vineyard.data.recommendations;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -9,28 +7,29 @@ import android.content.Intent;
 import timber.log.Timber;
 
 /*
- * This class extends BroadcastReceiver and publishes Recommendations when received.
+ * This class extends BroadcastReceiver and schedules Recommendations when received. It also
+ * forgets the recommendations that have been removed, so that they are published again.
  */
 public class RecommendationReceiver extends BroadcastReceiver {
-    private static final long INITIAL_DELAY = 5000;
 
     @Override
     public void onReceive(Context context, Intent intent) {
         if (intent.getAction().equals(Intent.ACTION_BOOT_COMPLETED)) {
+            // Recommendations don't survive a restart, so they all need publishing again
+            UpdateRecommendationsService.clearPublishedRecommendations(context);
             scheduleRecommendationUpdate(context);
+        } else if (intent.getAction().equals(Intent.ACTION_MY_PACKAGE_REPLACED)) {
+            // Updating the app removes its recommendations too
+            UpdateRecommendationsService.clearPublishedRecommendations(context);
+        } else if (intent.getAction().equals(
+                UpdateRecommendationsService.ACTION_RECOMMENDATION_DISMISSED)) {
+            UpdateRecommendationsService.clearPublishedRecommendation(context, intent.getIntExtra(
+                    UpdateRecommendationsService.EXTRA_NOTIFICATION_ID, -1));
         }
     }
 
     private void scheduleRecommendationUpdate(Context context) {
         Timber.i("Scheduling recommendations update...");
-
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        Intent recommendationIntent = new Intent(context, UpdateRecommendationsService.class);
-        PendingIntent alarmIntent = PendingIntent.getService(context, 0, recommendationIntent, 0);
-
-        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                INITIAL_DELAY,
-                AlarmManager.INTERVAL_HALF_HOUR,
-                alarmIntent);
+        UpdateRecommendationsService.schedule(context);
     }
-}
\ No newline at end of file
+}
@@ -1,130 +1,335 @@
 package com.hitherejoe.vineyard.data.recommendations;
 
-import android.app.IntentService;
 import android.app.Notification;
 import android.app.NotificationManager;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
 import android.support.app.recommendation.ContentRecommendation;
 import android.support.v4.content.ContextCompat;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
 import com.hitherejoe.vineyard.R;
 import com.hitherejoe.vineyard.VineyardApplication;
 import com.hitherejoe.vineyard.data.DataManager;
+import com.hitherejoe.vineyard.data.local.PreferencesHelper;
+import com.hitherejoe.vineyard.data.model.Feed;
+import com.hitherejoe.vineyard.data.model.Playlist;
 import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.data.remote.VineyardService;
 import com.hitherejoe.vineyard.ui.activity.PlaybackActivity;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
-import retrofit.Call;
 import retrofit.Response;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 /*
- * This class builds up to MAX_RECOMMENDATIONS of ContentRecommendations and defines what happens
+ * This job builds up to MAX_RECOMMENDATIONS of ContentRecommendations and defines what happens
  * when they're selected from Recommendations section on the Home screen by creating an Intent.
+ * It only runs when the device is idle and has a network connection, and recommendations that
+ * haven't changed since they were last published are left as they are, as long as they are
+ * still shown.
  */
-public class UpdateRecommendationsService extends IntentService {
-    private static final String TAG = "UpdateRecommendationsService";
+public class UpdateRecommendationsService extends JobService {
+    public static final String ACTION_RECOMMENDATION_DISMISSED =
+            "com.hitherejoe.vineyard.ACTION_RECOMMENDATION_DISMISSED";
+    public static final String EXTRA_NOTIFICATION_ID = "EXTRA_NOTIFICATION_ID";
+    private static final int JOB_ID = 1;
     private static final int MAX_RECOMMENDATIONS = 3;
+    // The thumbnails are small, so a few at once is enough to hide the latency of each one
+    private static final int MAX_CONCURRENT_THUMBNAIL_LOADS = 3;
+    private static final long UPDATE_INTERVAL_MILLIS = 30 * 60 * 1000;
 
     private NotificationManager mNotificationManager;
+    private Subscription mSubscription;
 
-    public UpdateRecommendationsService() {
-        super(TAG);
+    /**
+     * Schedules the recommendations to be updated periodically, replacing any schedule that
+     * already exists.
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, UpdateRecommendationsService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(UPDATE_INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build();
+        if (jobScheduler.schedule(jobInfo) != JobScheduler.RESULT_SUCCESS) {
+            Timber.e("Couldn't schedule the recommendations update");
+        }
+    }
+
+    /**
+     * Schedules the recommendations to be updated unless they already are, so that the time
+     * until the next update isn't reset. The job is only missing after a force stop or when the
+     * app's data has been cleared, both of which remove the recommendations too, so they are
+     * all published again.
+     */
+    public static void scheduleIfNeeded(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo jobInfo : jobScheduler.getAllPendingJobs()) {
+            if (jobInfo.getId() == JOB_ID) return;
+        }
+        clearPublishedRecommendations(context);
+        schedule(context);
+    }
+
+    /**
+     * Forgets which recommendations have been published, e.g. after a reboot, which removes
+     * them, so that they are all published again on the next update.
+     */
+    public static void clearPublishedRecommendations(Context context) {
+        PreferencesHelper preferencesHelper =
+                VineyardApplication.get(context).getComponent().preferencesHelper();
+        for (int i = 0; i < MAX_RECOMMENDATIONS; i++) {
+            preferencesHelper.putPublishedRecommendation(getNotificationId(i), null);
+        }
+    }
+
+    /**
+     * Forgets the recommendation with the given notification id once it has been dismissed, so
+     * that it is published again on the next update.
+     */
+    public static void clearPublishedRecommendation(Context context, int notificationId) {
+        VineyardApplication.get(context).getComponent().preferencesHelper()
+                .putPublishedRecommendation(notificationId, null);
+    }
+
+    /**
+     * Forgets the recommendation that the given Intent was started from, if any, as opening a
+     * recommendation dismisses it.
+     */
+    public static void onRecommendationOpened(Context context, Intent intent) {
+        int notificationId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1);
+        if (notificationId != -1) clearPublishedRecommendation(context, notificationId);
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
+    public boolean onStartJob(final JobParameters params) {
         Timber.i("Retrieving popular posts for recommendations...");
-        DataManager mDataManager = VineyardApplication.get(this).getComponent().dataManager();
-        Call<VineyardService.PostResponse> popularPosts = mDataManager.getPopularPostsSynchronous();
-        try {
-            Response<VineyardService.PostResponse> response = popularPosts.execute();
-            VineyardService.PostResponse postResponse = response.body();
-            handleRecommendations(postResponse.data.records);
-        } catch (IOException e) {
-            Timber.e("There was an error retrieving the posts", e);
-        }
+        mSubscription = updateRecommendations()
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Subscriber<Integer>() {
+                    @Override
+                    public void onCompleted() {
+                        jobFinished(params, false);
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Timber.e(e, "There was an error updating the recommendations");
+                        jobFinished(params, true);
+                    }
 
+                    @Override
+                    public void onNext(Integer notificationId) {
+                        Timber.d("Published recommendation " + notificationId);
+                    }
+                });
+        return true;
     }
 
-    private void handleRecommendations(List<Post> recommendations) {
-        Timber.i("Building recommendations...");
-        Resources res = getResources();
-        int cardWidth = res.getDimensionPixelSize(R.dimen.card_width);
-        int cardHeight = res.getDimensionPixelSize(R.dimen.card_height);
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are no longer met, so the update is tried again later
+        if (mSubscription != null) mSubscription.unsubscribe();
+        return true;
+    }
+
+    /**
+     * Publishes the recommendations for the current popular posts, emitting the notification id
+     * of each one that is published.
+     */
+    private Observable<Integer> updateRecommendations() {
+        final DataManager dataManager = VineyardApplication.get(this).getComponent().dataManager();
+        return Observable.create(new Observable.OnSubscribe<VineyardService.PostResponse>() {
+            @Override
+            public void call(Subscriber<? super VineyardService.PostResponse> subscriber) {
+                try {
+                    Response<VineyardService.PostResponse> response =
+                            dataManager.getPopularPostsSynchronous().execute();
+                    if (!response.isSuccess()) {
+                        throw new IOException("Unexpected response " + response.code());
+                    }
+                    subscriber.onNext(response.body());
+                    subscriber.onCompleted();
+                } catch (IOException e) {
+                    subscriber.onError(e);
+                }
+            }
+        }).concatMap(new Func1<VineyardService.PostResponse, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(VineyardService.PostResponse postResponse) {
+                return handleRecommendations(dataManager, postResponse);
+            }
+        });
+    }
 
-        if (recommendations == null) return;
+    private Observable<Integer> handleRecommendations(DataManager dataManager,
+                                                      VineyardService.PostResponse postResponse) {
+        Timber.i("Building recommendations...");
+        if (postResponse == null || postResponse.data.records == null) return Observable.empty();
+        List<Post> recommendations = postResponse.data.records;
 
         if (mNotificationManager == null) {
             mNotificationManager = (NotificationManager) getApplicationContext()
                     .getSystemService(Context.NOTIFICATION_SERVICE);
         }
 
-        // This will be used to build up an object for your content recommendation that will be
-        // shown on the TV home page along with other provider's recommendations.
-        final ContentRecommendation.Builder builder = new ContentRecommendation.Builder()
-                .setBadgeIcon(R.drawable.vineyard);
         Collections.sort(recommendations);
+        // Recommendations are usually opened long after this process has gone, in which case
+        // the playlist is rebuilt from the popular feed
+        final Playlist playlist = dataManager.createPlaylist(Feed.popular(), recommendations,
+                postResponse.data.anchorStr, postResponse.data.nextPage);
+
+        final PreferencesHelper preferencesHelper =
+                VineyardApplication.get(this).getComponent().preferencesHelper();
+        String[] published = new String[MAX_RECOMMENDATIONS];
+        for (int i = 0; i < MAX_RECOMMENDATIONS; i++) {
+            published[i] = preferencesHelper.getPublishedRecommendation(getNotificationId(i));
+        }
+        RecommendationDiff diff =
+                new RecommendationDiff(recommendations, published, getShownPositions());
+        for (int position : diff.getRemovedPositions()) {
+            int notificationId = getNotificationId(position);
+            mNotificationManager.cancel(notificationId);
+            preferencesHelper.putPublishedRecommendation(notificationId, null);
+        }
+        Timber.i(diff.getChangedPositions().size() + " recommendations have changed");
+
+        final List<Post> posts = recommendations;
+        return Observable.from(diff.getChangedPositions())
+                .flatMap(new Func1<Integer, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Integer position) {
+                        return publishRecommendation(preferencesHelper, playlist,
+                                posts.get(position), position)
+                                .subscribeOn(Schedulers.io());
+                    }
+                }, MAX_CONCURRENT_THUMBNAIL_LOADS);
+    }
+
+    /**
+     * Returns the positions of the recommendations that are still shown, or null before
+     * Marshmallow, where the notifications shown can't be looked up. There, the published
+     * recommendations are forgotten as they are dismissed instead, see buildDismissIntent().
+     */
+    private Set<Integer> getShownPositions() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return null;
+        Set<Integer> shownPositions = new HashSet<>();
+        for (StatusBarNotification notification : mNotificationManager.getActiveNotifications()) {
+            shownPositions.add(getPosition(notification.getId()));
+        }
+        return shownPositions;
+    }
+
+    private Observable<Integer> publishRecommendation(final PreferencesHelper preferencesHelper,
+                                                      final Playlist playlist,
+                                                      final Post post,
+                                                      final int position) {
+        return Observable.create(new Observable.OnSubscribe<Integer>() {
+            @Override
+            public void call(Subscriber<? super Integer> subscriber) {
+                Resources res = getResources();
+                int cardWidth = res.getDimensionPixelSize(R.dimen.card_width);
+                int cardHeight = res.getDimensionPixelSize(R.dimen.card_height);
+                int notificationId = getNotificationId(position);
 
-        for (int i = 0; i < recommendations.size() && i < MAX_RECOMMENDATIONS; i++) {
-            Post post = recommendations.get(i);
-            builder.setIdTag("Post" + i + 1)
-                    .setTitle(post.description)
-                    .setProgress(100, 0)
-                    .setSortKey("1.0")
-                    .setAutoDismiss(true)
-                    .setColor(ContextCompat.getColor(this, R.color.primary))
-                    .setBackgroundImageUri(post.thumbnailUrl)
-                    .setGroup("Trending")
-                    .setStatus(ContentRecommendation.CONTENT_STATUS_READY)
-                    .setContentTypes(new String[]{ContentRecommendation.CONTENT_TYPE_VIDEO})
-                    .setText(getString(R.string.header_text_popular))
-                    .setContentIntentData(ContentRecommendation.INTENT_TYPE_ACTIVITY,
-                            buildPendingIntent((ArrayList<Post>) recommendations, post), 0, null);
-
-            try {
-                Bitmap bitmap = Glide.with(getApplication())
+                // This will be used to build up an object for your content recommendation that
+                // will be shown on the TV home page along with other provider's recommendations.
+                ContentRecommendation.Builder builder = new ContentRecommendation.Builder()
+                        .setBadgeIcon(R.drawable.vineyard)
+                        .setIdTag("Post" + notificationId)
+                        .setTitle(post.description)
+                        .setProgress(100, 0)
+                        .setSortKey("1.0")
+                        .setAutoDismiss(true)
+                        .setColor(ContextCompat.getColor(UpdateRecommendationsService.this,
+                                R.color.primary))
+                        .setBackgroundImageUri(post.thumbnailUrl)
+                        .setGroup("Trending")
+                        .setStatus(ContentRecommendation.CONTENT_STATUS_READY)
+                        .setContentTypes(new String[]{ContentRecommendation.CONTENT_TYPE_VIDEO})
+                        .setText(getString(R.string.header_text_popular))
+                        .setContentIntentData(ContentRecommendation.INTENT_TYPE_ACTIVITY,
+                                buildPendingIntent(playlist, post, notificationId), 0, null)
+                        .setDismissIntentData(ContentRecommendation.INTENT_TYPE_BROADCAST,
+                                buildDismissIntent(notificationId), notificationId, null);
+
+                // Thumbnails that were fetched for an earlier update come from Glide's caches
+                FutureTarget<Bitmap> target = Glide.with(getApplicationContext())
                         .load(post.thumbnailUrl)
                         .asBitmap()
-                        .into(cardWidth, cardHeight) // Only use for synchronous .get()
-                        .get();
-                builder.setContentImage(bitmap);
-
-                // Create an object holding all the information used to recommend the content.
-                ContentRecommendation rec = builder.build();
-                Notification notification = rec.getNotificationObject(getApplicationContext());
-
-                // Recommend the content by publishing the notification.
-                mNotificationManager.notify(i + 1, notification);
-            } catch (InterruptedException | ExecutionException e) {
-                Timber.e(TAG, "Could not create recommendation: " + e);
-            }
+                        .into(cardWidth, cardHeight);
+                try {
+                    builder.setContentImage(target.get());
 
-            // Create an object holding all the information used to recommend the content.
-            ContentRecommendation rec = builder.build();
-            Notification notification = rec.getNotificationObject(getApplicationContext());
+                    // Create an object holding all the information used to recommend the content.
+                    ContentRecommendation rec = builder.build();
+                    Notification notification =
+                            rec.getNotificationObject(getApplicationContext());
 
-            // Recommend the content by publishing the notification.
-            mNotificationManager.notify(i + 1, notification);
-        }
+                    // Recommend the content by publishing the notification.
+                    mNotificationManager.notify(notificationId, notification);
+                    preferencesHelper.putPublishedRecommendation(notificationId,
+                            RecommendationDiff.getSignature(post));
+                    subscriber.onNext(notificationId);
+                } catch (InterruptedException | ExecutionException e) {
+                    // The other recommendations are still published, this one is tried again on
+                    // the next update
+                    Timber.e(e, "Could not create recommendation for post " + post.postId);
+                } finally {
+                    target.clear();
+                }
+                subscriber.onCompleted();
+            }
+        });
     }
 
-    private Intent buildPendingIntent(ArrayList<Post> recommendations, Post post) {
-        Intent detailsIntent = new Intent(this, PlaybackActivity.class);
-        detailsIntent.putExtra(PlaybackActivity.POST, post);
-        detailsIntent.putParcelableArrayListExtra(PlaybackActivity.POST_LIST, recommendations);
+    private Intent buildPendingIntent(Playlist playlist, Post post, int notificationId) {
+        Intent detailsIntent = PlaybackActivity.newStartIntent(this, post, playlist);
         detailsIntent.setAction(post.postId);
+        detailsIntent.putExtra(EXTRA_NOTIFICATION_ID, notificationId);
 
         return detailsIntent;
     }
-}
\ No newline at end of file
+
+    private Intent buildDismissIntent(int notificationId) {
+        Intent dismissIntent = new Intent(this, RecommendationReceiver.class);
+        dismissIntent.setAction(ACTION_RECOMMENDATION_DISMISSED);
+        dismissIntent.putExtra(EXTRA_NOTIFICATION_ID, notificationId);
+        return dismissIntent;
+    }
+
+    private static int getNotificationId(int position) {
+        return position + 1;
+    }
+
+    private static int getPosition(int notificationId) {
+        return notificationId - 1;
+    }
+}
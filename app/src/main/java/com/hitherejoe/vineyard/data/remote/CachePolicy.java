@@ -0,0 +1,53 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import com.squareup.okhttp.Request;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how long responses from an endpoint are considered fresh, and for how long after
+ * that a stale copy may still be served while it is revalidated in the background.
+ */
+public class CachePolicy {
+
+    public static final String PATH_TIMELINES = "timelines/";
+    public static final String PATH_SEARCH = "search/";
+    public static final String PATH_PROFILES = "users/profiles/";
+
+    public final int maxAgeSeconds;
+    public final int staleWhileRevalidateSeconds;
+
+    public CachePolicy(int maxAgeSeconds, int staleWhileRevalidateSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.staleWhileRevalidateSeconds = staleWhileRevalidateSeconds;
+    }
+
+    /**
+     * Returns the default policies keyed by the path prefix of the endpoints they apply to.
+     */
+    public static Map<String, CachePolicy> defaultPolicies() {
+        Map<String, CachePolicy> policies = new LinkedHashMap<>();
+        policies.put(PATH_TIMELINES, new CachePolicy(
+                (int) TimeUnit.MINUTES.toSeconds(1), (int) TimeUnit.DAYS.toSeconds(1)));
+        policies.put(PATH_SEARCH, new CachePolicy(
+                (int) TimeUnit.MINUTES.toSeconds(5), (int) TimeUnit.HOURS.toSeconds(1)));
+        policies.put(PATH_PROFILES, new CachePolicy(
+                (int) TimeUnit.MINUTES.toSeconds(10), (int) TimeUnit.DAYS.toSeconds(1)));
+        return policies;
+    }
+
+    /**
+     * Returns the policy for the given request, or null if its responses shouldn't be cached.
+     */
+    public static CachePolicy forRequest(Map<String, CachePolicy> policies, Request request) {
+        if (!"GET".equals(request.method())) return null;
+        String path = request.httpUrl().encodedPath();
+        if (path.startsWith("/")) path = path.substring(1);
+        for (Map.Entry<String, CachePolicy> entry : policies.entrySet()) {
+            if (path.startsWith(entry.getKey())) return entry.getValue();
+        }
+        return null;
+    }
+}
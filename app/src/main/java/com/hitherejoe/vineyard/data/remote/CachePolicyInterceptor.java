@@ -0,0 +1,33 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Network interceptor that replaces the caching headers sent by the API with the ones from
+ * our own CachePolicy, so that responses are stored in the HTTP cache for the endpoints
+ * that have one.
+ */
+public class CachePolicyInterceptor implements Interceptor {
+
+    private final Map<String, CachePolicy> mPolicies;
+
+    public CachePolicyInterceptor(Map<String, CachePolicy> policies) {
+        mPolicies = policies;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        CachePolicy policy = CachePolicy.forRequest(mPolicies, chain.request());
+        if (policy == null || !response.isSuccessful()) return response;
+        return response.newBuilder()
+                .removeHeader("Pragma")
+                .removeHeader("Expires")
+                .header("Cache-Control", "public, max-age=" + policy.maxAgeSeconds)
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Records the latency, time to first byte, size and cache status of every request in
+ * NetworkMetrics. The response body is streamed through a counting source rather than being
+ * buffered, so the request is only considered finished once the body has been consumed.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    private final NetworkMetrics mMetrics;
+
+    public MetricsInterceptor(NetworkMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = NetworkMetrics.getEndpointName(request.httpUrl().encodedPath());
+        long startNanos = System.nanoTime();
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            mMetrics.recordError(endpoint);
+            throw e;
+        }
+
+        long timeToFirstByteNanos = System.nanoTime() - startNanos;
+        boolean isCacheHit = response.networkResponse() == null;
+        if (response.body() == null) {
+            long millis = nanosToMillis(timeToFirstByteNanos);
+            mMetrics.recordResponse(
+                    endpoint, millis, millis, 0, isCacheHit, response.isSuccessful());
+            return response;
+        }
+        return response.newBuilder()
+                .body(new MeteredResponseBody(response.body(), endpoint, startNanos,
+                        timeToFirstByteNanos, isCacheHit, response.isSuccessful()))
+                .build();
+    }
+
+    private static long nanosToMillis(long nanos) {
+        return nanos / 1000000L;
+    }
+
+    private class MeteredResponseBody extends ResponseBody {
+
+        private final ResponseBody mDelegate;
+        private final String mEndpoint;
+        private final long mStartNanos;
+        private final long mTimeToFirstByteNanos;
+        private final boolean mIsCacheHit;
+        private final boolean mIsSuccessful;
+        private BufferedSource mSource;
+
+        MeteredResponseBody(ResponseBody delegate, String endpoint, long startNanos,
+                            long timeToFirstByteNanos, boolean isCacheHit, boolean isSuccessful) {
+            mDelegate = delegate;
+            mEndpoint = endpoint;
+            mStartNanos = startNanos;
+            mTimeToFirstByteNanos = timeToFirstByteNanos;
+            mIsCacheHit = isCacheHit;
+            mIsSuccessful = isSuccessful;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mDelegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return mDelegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() throws IOException {
+            if (mSource == null) mSource = Okio.buffer(new CountingSource(mDelegate.source()));
+            return mSource;
+        }
+
+        private class CountingSource extends ForwardingSource {
+
+            private long mBytesRead;
+            private boolean mIsRecorded;
+
+            CountingSource(Source delegate) {
+                super(delegate);
+            }
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read == -1) {
+                    record();
+                } else {
+                    mBytesRead += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                record();
+                super.close();
+            }
+
+            private void record() {
+                if (mIsRecorded) return;
+                mIsRecorded = true;
+                mMetrics.recordResponse(mEndpoint,
+                        nanosToMillis(mTimeToFirstByteNanos),
+                        nanosToMillis(System.nanoTime() - mStartNanos),
+                        mBytesRead, mIsCacheHit, mIsSuccessful);
+            }
+        }
+    }
+}
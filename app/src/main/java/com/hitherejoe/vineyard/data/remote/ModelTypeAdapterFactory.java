@@ -0,0 +1,600 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.hitherejoe.vineyard.data.model.Authentication;
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.model.Tag;
+import com.hitherejoe.vineyard.data.model.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provides hand written TypeAdapters for the API models so that Gson doesn't have to use
+ * reflection to decode them. Fields the app never uses are skipped while reading, and the
+ * creation date of a post is parsed once here rather than every time posts are sorted.
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == Post.class) {
+            return (TypeAdapter<T>) new PostTypeAdapter();
+        } else if (rawType == User.class) {
+            return (TypeAdapter<T>) new UserTypeAdapter();
+        } else if (rawType == Tag.class) {
+            return (TypeAdapter<T>) new TagTypeAdapter();
+        } else if (rawType == Authentication.class) {
+            return (TypeAdapter<T>) new AuthenticationTypeAdapter();
+        } else if (rawType == VineyardService.PostResponse.class) {
+            return (TypeAdapter<T>) new PostResponseTypeAdapter(new PostTypeAdapter());
+        } else if (rawType == VineyardService.TagResponse.class) {
+            return (TypeAdapter<T>) new TagResponseTypeAdapter(new TagTypeAdapter());
+        } else if (rawType == VineyardService.UserResponse.class) {
+            return (TypeAdapter<T>) new UserResponseTypeAdapter(new UserTypeAdapter());
+        }
+        return null;
+    }
+
+    static class PostTypeAdapter extends TypeAdapter<Post> {
+
+        @Override
+        public void write(JsonWriter out, Post post) throws IOException {
+            if (post == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("avatarUrl").value(post.avatarUrl);
+            out.name("created").value(post.created);
+            out.name("description").value(post.description);
+            out.name("postId").value(post.postId);
+            out.name("thumbnailUrl").value(post.thumbnailUrl);
+            out.name("username").value(post.username);
+            out.name("videoUrl").value(post.videoUrl);
+            out.name("tag").value(post.tag);
+            out.endObject();
+        }
+
+        @Override
+        public Post read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Post post = new Post();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "avatarUrl":
+                        post.avatarUrl = nextString(in);
+                        break;
+                    case "created":
+                        post.created = nextString(in);
+                        if (post.created != null) {
+                            post.createdMillis = Post.parseCreated(post.created);
+                        }
+                        break;
+                    case "description":
+                        post.description = nextString(in);
+                        break;
+                    case "postId":
+                        post.postId = nextString(in);
+                        break;
+                    case "thumbnailUrl":
+                        post.thumbnailUrl = nextString(in);
+                        break;
+                    case "username":
+                        post.username = nextString(in);
+                        break;
+                    case "videoUrl":
+                        post.videoUrl = nextString(in);
+                        break;
+                    case "tag":
+                        post.tag = nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return post;
+        }
+    }
+
+    static class UserTypeAdapter extends TypeAdapter<User> {
+
+        @Override
+        public void write(JsonWriter out, User user) throws IOException {
+            if (user == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("username").value(user.username);
+            out.name("following").value(user.following);
+            out.name("followerCount").value(user.followerCount);
+            out.name("verified").value(user.verified);
+            out.name("description").value(user.description);
+            out.name("avatarUrl").value(user.avatarUrl);
+            out.name("userId").value(user.userId);
+            out.name("twitterConnected").value(user.twitterConnected);
+            out.name("likeCount").value(user.likeCount);
+            out.name("facebookConnected").value(user.facebookConnected);
+            out.name("postCount").value(user.postCount);
+            out.name("location").value(user.location);
+            out.name("followingCount").value(user.followingCount);
+            out.name("error").value(user.error);
+            out.endObject();
+        }
+
+        @Override
+        public User read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            User user = new User();
+            in.beginObject();
+            while (in.hasNext()) {
+                // phoneNumber, email and twitterId are never used so are left unread
+                switch (in.nextName()) {
+                    case "username":
+                        user.username = nextString(in);
+                        break;
+                    case "following":
+                        user.following = nextInt(in);
+                        break;
+                    case "followerCount":
+                        user.followerCount = nextInt(in);
+                        break;
+                    case "verified":
+                        user.verified = nextInt(in);
+                        break;
+                    case "description":
+                        user.description = nextString(in);
+                        break;
+                    case "avatarUrl":
+                        user.avatarUrl = nextString(in);
+                        break;
+                    case "userId":
+                        user.userId = nextString(in);
+                        break;
+                    case "twitterConnected":
+                        user.twitterConnected = nextInt(in);
+                        break;
+                    case "likeCount":
+                        user.likeCount = nextInt(in);
+                        break;
+                    case "facebookConnected":
+                        user.facebookConnected = nextInt(in);
+                        break;
+                    case "postCount":
+                        user.postCount = nextInt(in);
+                        break;
+                    case "location":
+                        user.location = nextString(in);
+                        break;
+                    case "followingCount":
+                        user.followingCount = nextInt(in);
+                        break;
+                    case "error":
+                        user.error = nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    }
+
+    static class TagTypeAdapter extends TypeAdapter<Tag> {
+
+        @Override
+        public void write(JsonWriter out, Tag tag) throws IOException {
+            if (tag == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("tagId").value(tag.tagId);
+            out.name("tag").value(tag.tag);
+            out.name("postCount").value(tag.postCount);
+            out.endObject();
+        }
+
+        @Override
+        public Tag read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Tag tag = new Tag();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "tagId":
+                        tag.tagId = nextLong(in);
+                        break;
+                    case "tag":
+                        tag.tag = nextString(in);
+                        break;
+                    case "postCount":
+                        tag.postCount = nextLong(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return tag;
+        }
+    }
+
+    static class AuthenticationTypeAdapter extends TypeAdapter<Authentication> {
+
+        @Override
+        public void write(JsonWriter out, Authentication authentication) throws IOException {
+            if (authentication == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("code").value(authentication.code);
+            out.name("success").value(authentication.success);
+            out.name("error").value(authentication.error);
+            out.name("data");
+            if (authentication.data == null) {
+                out.nullValue();
+            } else {
+                out.beginObject();
+                out.name("username").value(authentication.data.username);
+                out.name("userId").value(authentication.data.userId);
+                out.name("key").value(authentication.data.key);
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Authentication read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Authentication authentication = new Authentication();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "code":
+                        authentication.code = nextString(in);
+                        break;
+                    case "success":
+                        authentication.success = nextBoolean(in);
+                        break;
+                    case "error":
+                        authentication.error = nextString(in);
+                        break;
+                    case "data":
+                        authentication.data = readData(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return authentication;
+        }
+
+        private Authentication.Data readData(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                return null;
+            }
+            Authentication.Data data = new Authentication.Data();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username":
+                        data.username = nextString(in);
+                        break;
+                    case "userId":
+                        data.userId = nextString(in);
+                        break;
+                    case "key":
+                        data.key = nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return data;
+        }
+    }
+
+    static class PostResponseTypeAdapter extends TypeAdapter<VineyardService.PostResponse> {
+
+        private final TypeAdapter<Post> mPostAdapter;
+
+        PostResponseTypeAdapter(TypeAdapter<Post> postAdapter) {
+            mPostAdapter = postAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, VineyardService.PostResponse response)
+                throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("code").value(response.code);
+            out.name("data");
+            if (response.data == null) {
+                out.nullValue();
+            } else {
+                out.beginObject();
+                out.name("anchorStr").value(response.data.anchorStr);
+                out.name("nextPage").value(response.data.nextPage);
+                out.name("records");
+                writeList(out, mPostAdapter, response.data.records);
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public VineyardService.PostResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            VineyardService.PostResponse response = new VineyardService.PostResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("code")) {
+                    response.code = nextString(in);
+                } else if (name.equals("data") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    response.data = new VineyardService.PostResponse.Data();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "anchorStr":
+                                response.data.anchorStr = nextString(in);
+                                break;
+                            case "nextPage":
+                                response.data.nextPage = nextInt(in);
+                                break;
+                            case "records":
+                                response.data.records = readList(in, mPostAdapter);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    static class TagResponseTypeAdapter extends TypeAdapter<VineyardService.TagResponse> {
+
+        private final TypeAdapter<Tag> mTagAdapter;
+
+        TagResponseTypeAdapter(TypeAdapter<Tag> tagAdapter) {
+            mTagAdapter = tagAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, VineyardService.TagResponse response)
+                throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("code").value(response.code);
+            out.name("data");
+            if (response.data == null) {
+                out.nullValue();
+            } else {
+                out.beginObject();
+                out.name("anchorStr").value(response.data.anchorStr);
+                out.name("nextPage").value(response.data.nextPage);
+                out.name("records");
+                writeList(out, mTagAdapter, response.data.records);
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public VineyardService.TagResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            VineyardService.TagResponse response = new VineyardService.TagResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("code")) {
+                    response.code = nextString(in);
+                } else if (name.equals("data") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    response.data = new VineyardService.TagResponse.Data();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "anchorStr":
+                                response.data.anchorStr = nextString(in);
+                                break;
+                            case "nextPage":
+                                response.data.nextPage = nextInt(in);
+                                break;
+                            case "records":
+                                response.data.records = readList(in, mTagAdapter);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    static class UserResponseTypeAdapter extends TypeAdapter<VineyardService.UserResponse> {
+
+        private final TypeAdapter<User> mUserAdapter;
+
+        UserResponseTypeAdapter(TypeAdapter<User> userAdapter) {
+            mUserAdapter = userAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, VineyardService.UserResponse response)
+                throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("code").value(response.code);
+            out.name("data");
+            if (response.data == null) {
+                out.nullValue();
+            } else {
+                out.beginObject();
+                out.name("anchorStr").value(response.data.anchorStr);
+                out.name("nextPage").value(response.data.nextPage);
+                out.name("records");
+                writeList(out, mUserAdapter, response.data.records);
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public VineyardService.UserResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            VineyardService.UserResponse response = new VineyardService.UserResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("code")) {
+                    response.code = nextString(in);
+                } else if (name.equals("data") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    response.data = new VineyardService.UserResponse.Data();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "anchorStr":
+                                response.data.anchorStr = nextString(in);
+                                break;
+                            case "nextPage":
+                                response.data.nextPage = nextInt(in);
+                                break;
+                            case "records":
+                                response.data.records = readList(in, mUserAdapter);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter)
+            throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return new ArrayList<>();
+        }
+        List<T> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            T item = adapter.read(in);
+            if (item != null) list.add(item);
+        }
+        in.endArray();
+        return list;
+    }
+
+    private static <T> void writeList(JsonWriter out, TypeAdapter<T> adapter, List<T> list)
+            throws IOException {
+        if (list == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (T item : list) {
+            adapter.write(out, item);
+        }
+        out.endArray();
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static int nextInt(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextInt();
+    }
+
+    private static long nextLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextLong();
+    }
+
+    private static boolean nextBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return false;
+        }
+        return in.nextBoolean();
+    }
+}
@@ -0,0 +1,202 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Collects per-endpoint statistics for the requests made to the API. Recording a request only
+ * increments a handful of counters, so this is cheap enough to leave enabled in release builds.
+ */
+@Singleton
+public class NetworkMetrics {
+
+    private static final String[] PARAMETERISED_PATHS = {
+            "timelines/users/",
+            "timelines/tags/",
+            "search/tags/",
+            "search/users/",
+            "users/profiles/"
+    };
+    private static final String PATH_PARAMETER = "{id}";
+
+    private final Map<String, Endpoint> mEndpoints;
+    private volatile boolean mIsDetailedLoggingEnabled;
+
+    @Inject
+    public NetworkMetrics() {
+        mEndpoints = new HashMap<>();
+    }
+
+    public void setDetailedLoggingEnabled(boolean isEnabled) {
+        mIsDetailedLoggingEnabled = isEnabled;
+    }
+
+    public boolean isDetailedLoggingEnabled() {
+        return mIsDetailedLoggingEnabled;
+    }
+
+    /**
+     * Returns the endpoint that the given path belongs to, with any path parameters replaced
+     * so that e.g. all tag timelines are recorded together.
+     */
+    public static String getEndpointName(String path) {
+        if (path.startsWith("/")) path = path.substring(1);
+        for (String prefix : PARAMETERISED_PATHS) {
+            if (path.startsWith(prefix)) return prefix + PATH_PARAMETER;
+        }
+        return path;
+    }
+
+    public void recordResponse(String endpoint, long timeToFirstByteMillis, long latencyMillis,
+                               long bytes, boolean isCacheHit, boolean isSuccessful) {
+        Endpoint stats = getEndpoint(endpoint);
+        synchronized (stats) {
+            stats.requestCount++;
+            stats.timeToFirstByte.add(timeToFirstByteMillis);
+            stats.latency.add(latencyMillis);
+            stats.responseBytes += bytes;
+            if (isCacheHit) {
+                stats.cacheHits++;
+            } else {
+                stats.cacheMisses++;
+            }
+            if (!isSuccessful) stats.errorCount++;
+        }
+        if (mIsDetailedLoggingEnabled) {
+            Timber.d("%s: %dms (first byte %dms), %d bytes, %s",
+                    endpoint, latencyMillis, timeToFirstByteMillis, bytes,
+                    isCacheHit ? "cache hit" : "cache miss");
+        }
+    }
+
+    public void recordError(String endpoint) {
+        Endpoint stats = getEndpoint(endpoint);
+        synchronized (stats) {
+            stats.requestCount++;
+            stats.errorCount++;
+        }
+        if (mIsDetailedLoggingEnabled) Timber.d("%s: request failed", endpoint);
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded so far, one entry per endpoint.
+     */
+    public List<EndpointStats> getStats() {
+        List<Endpoint> endpoints;
+        synchronized (mEndpoints) {
+            endpoints = new ArrayList<>(mEndpoints.values());
+        }
+        List<EndpointStats> stats = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            synchronized (endpoint) {
+                stats.add(endpoint.toStats());
+            }
+        }
+        return stats;
+    }
+
+    public void reset() {
+        synchronized (mEndpoints) {
+            mEndpoints.clear();
+        }
+    }
+
+    private Endpoint getEndpoint(String name) {
+        synchronized (mEndpoints) {
+            Endpoint endpoint = mEndpoints.get(name);
+            if (endpoint == null) {
+                endpoint = new Endpoint(name);
+                mEndpoints.put(name, endpoint);
+            }
+            return endpoint;
+        }
+    }
+
+    public static class EndpointStats {
+        public String endpoint;
+        public int requestCount;
+        public int errorCount;
+        public int cacheHits;
+        public int cacheMisses;
+        public long responseBytes;
+        public long latencyP50;
+        public long latencyP95;
+        public long latencyP99;
+        public long timeToFirstByteP50;
+        public long timeToFirstByteP95;
+        public long timeToFirstByteP99;
+    }
+
+    private static class Endpoint {
+        final String name;
+        final Histogram latency = new Histogram();
+        final Histogram timeToFirstByte = new Histogram();
+        int requestCount;
+        int errorCount;
+        int cacheHits;
+        int cacheMisses;
+        long responseBytes;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        EndpointStats toStats() {
+            EndpointStats stats = new EndpointStats();
+            stats.endpoint = name;
+            stats.requestCount = requestCount;
+            stats.errorCount = errorCount;
+            stats.cacheHits = cacheHits;
+            stats.cacheMisses = cacheMisses;
+            stats.responseBytes = responseBytes;
+            stats.latencyP50 = latency.percentile(0.50);
+            stats.latencyP95 = latency.percentile(0.95);
+            stats.latencyP99 = latency.percentile(0.99);
+            stats.timeToFirstByteP50 = timeToFirstByte.percentile(0.50);
+            stats.timeToFirstByteP95 = timeToFirstByte.percentile(0.95);
+            stats.timeToFirstByteP99 = timeToFirstByte.percentile(0.99);
+            return stats;
+        }
+    }
+
+    /**
+     * Fixed bucket histogram of durations in milliseconds. Percentiles are reported as the upper
+     * bound of the bucket they fall into, which is plenty accurate for spotting slow endpoints.
+     */
+    static class Histogram {
+        private static final long[] BUCKET_BOUNDS = {
+                5, 10, 25, 50, 75, 100, 150, 200, 300, 400, 500, 750,
+                1000, 1500, 2000, 3000, 5000, 10000, 30000
+        };
+
+        private final int[] mCounts = new int[BUCKET_BOUNDS.length + 1];
+        private int mTotal;
+        private long mMax;
+
+        void add(long millis) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) bucket++;
+            mCounts[bucket]++;
+            mTotal++;
+            if (millis > mMax) mMax = millis;
+        }
+
+        long percentile(double percentile) {
+            if (mTotal == 0) return 0;
+            int target = (int) Math.ceil(percentile * mTotal);
+            int seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                seen += mCounts[i];
+                if (seen >= target) return Math.min(BUCKET_BOUNDS[i], mMax);
+            }
+            return mMax;
+        }
+    }
+}
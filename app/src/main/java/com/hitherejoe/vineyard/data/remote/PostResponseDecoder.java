@@ -0,0 +1,205 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.hitherejoe.vineyard.data.model.Post;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import rx.Observable;
+import rx.Observer;
+import rx.functions.Action1;
+import rx.functions.Action2;
+import rx.functions.Func0;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Decodes a timeline response as it is being downloaded, emitting the posts in small batches
+ * rather than waiting for the whole page to be parsed. Every emitted PostResponse is marked as
+ * partial apart from the last one, which also carries the anchor and the next page.
+ */
+public class PostResponseDecoder {
+
+    private static final int BATCH_SIZE = 4;
+
+    private final TypeAdapter<Post> mPostAdapter;
+
+    public PostResponseDecoder(Gson gson) {
+        mPostAdapter = gson.getAdapter(Post.class);
+    }
+
+    /**
+     * Returns the batches of the given response. Each batch is only read once it has been
+     * requested, so a slow subscriber holds back the download rather than having batches
+     * queue up for it.
+     */
+    public Observable<VineyardService.PostResponse> decode(final ResponseBody body) {
+        return Observable.create(SyncOnSubscribe.createSingleState(
+                new Func0<PageReader>() {
+                    @Override
+                    public PageReader call() {
+                        return new PageReader(body);
+                    }
+                },
+                new Action2<PageReader, Observer<? super VineyardService.PostResponse>>() {
+                    @Override
+                    public void call(PageReader pageReader,
+                                     Observer<? super VineyardService.PostResponse> observer) {
+                        try {
+                            VineyardService.PostResponse response = pageReader.readNext();
+                            if (response != null) {
+                                observer.onNext(response);
+                            } else {
+                                observer.onCompleted();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            observer.onError(e);
+                        }
+                    }
+                },
+                new Action1<PageReader>() {
+                    @Override
+                    public void call(PageReader pageReader) {
+                        pageReader.close();
+                    }
+                }));
+    }
+
+    /**
+     * Reads a timeline response one batch at a time, keeping track of where it is in the
+     * response between batches.
+     */
+    private class PageReader {
+
+        private static final int STATE_START = 0;
+        private static final int STATE_RESPONSE = 1;
+        private static final int STATE_DATA = 2;
+        private static final int STATE_RECORDS = 3;
+        private static final int STATE_DONE = 4;
+
+        private final ResponseBody mBody;
+        private JsonReader mReader;
+        private int mState;
+        private String mCode;
+        private String mAnchorStr;
+        private int mNextPage;
+        private List<Post> mBatch;
+
+        PageReader(ResponseBody body) {
+            mBody = body;
+            mState = STATE_START;
+            mBatch = new ArrayList<>(BATCH_SIZE);
+        }
+
+        /**
+         * Returns the next batch of posts, or null once the whole response has been read.
+         */
+        VineyardService.PostResponse readNext() throws IOException {
+            while (true) {
+                switch (mState) {
+                    case STATE_START:
+                        mReader = new JsonReader(mBody.charStream());
+                        mReader.beginObject();
+                        mState = STATE_RESPONSE;
+                        break;
+                    case STATE_RESPONSE:
+                        if (!mReader.hasNext()) {
+                            mReader.endObject();
+                            mState = STATE_DONE;
+                            // The final batch completes the page, even if it has no posts of
+                            // its own
+                            return newResponse(false);
+                        }
+                        readResponseField(mReader.nextName());
+                        break;
+                    case STATE_DATA:
+                        if (!mReader.hasNext()) {
+                            mReader.endObject();
+                            mState = STATE_RESPONSE;
+                        } else {
+                            readDataField(mReader.nextName());
+                        }
+                        break;
+                    case STATE_RECORDS:
+                        if (!mReader.hasNext()) {
+                            mReader.endArray();
+                            mState = STATE_DATA;
+                            break;
+                        }
+                        mBatch.add(mPostAdapter.read(mReader));
+                        if (mBatch.size() == BATCH_SIZE) return newResponse(true);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+        }
+
+        void close() {
+            closeQuietly(mReader, mBody);
+        }
+
+        private void readResponseField(String name) throws IOException {
+            if (name.equals("code") && mReader.peek() == JsonToken.STRING) {
+                mCode = mReader.nextString();
+            } else if (name.equals("data") && mReader.peek() == JsonToken.BEGIN_OBJECT) {
+                mReader.beginObject();
+                mState = STATE_DATA;
+            } else {
+                mReader.skipValue();
+            }
+        }
+
+        private void readDataField(String name) throws IOException {
+            if (mReader.peek() == JsonToken.NULL) {
+                mReader.nextNull();
+            } else if (name.equals("anchorStr")) {
+                mAnchorStr = mReader.nextString();
+            } else if (name.equals("nextPage")) {
+                mNextPage = mReader.nextInt();
+            } else if (name.equals("records")) {
+                mReader.beginArray();
+                mState = STATE_RECORDS;
+            } else {
+                mReader.skipValue();
+            }
+        }
+
+        /**
+         * Returns the posts read since the last batch, with the anchor and the next page as far
+         * as they are known.
+         */
+        private VineyardService.PostResponse newResponse(boolean isPartial) {
+            VineyardService.PostResponse response = new VineyardService.PostResponse();
+            response.code = mCode;
+            response.data = newData(mAnchorStr, mNextPage);
+            response.data.records = mBatch;
+            response.data.partial = isPartial;
+            mBatch = new ArrayList<>(BATCH_SIZE);
+            return response;
+        }
+    }
+
+    private static VineyardService.PostResponse.Data newData(String anchorStr, int nextPage) {
+        VineyardService.PostResponse.Data data = new VineyardService.PostResponse.Data();
+        data.anchorStr = anchorStr;
+        data.nextPage = nextPage;
+        data.records = new ArrayList<>();
+        return data;
+    }
+
+    private static void closeQuietly(JsonReader reader, ResponseBody body) {
+        try {
+            if (reader != null) {
+                reader.close();
+            } else {
+                body.close();
+            }
+        } catch (IOException ignored) { }
+    }
+}
@@ -0,0 +1,94 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Application interceptor that allows a stale cached response to be returned straight away
+ * for endpoints with a CachePolicy. When that happens, a network request is made in the
+ * background to refresh the cached copy for the next time it's requested.
+ */
+public class StaleWhileRevalidateInterceptor implements Interceptor {
+
+    private static final String WARNING_STALE = "110";
+
+    private final OkHttpClient mClient;
+    private final Map<String, CachePolicy> mPolicies;
+    private final Set<String> mRevalidatingUrls;
+
+    public StaleWhileRevalidateInterceptor(OkHttpClient client,
+                                           Map<String, CachePolicy> policies) {
+        mClient = client;
+        mPolicies = policies;
+        mRevalidatingUrls = new HashSet<>();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        CachePolicy policy = CachePolicy.forRequest(mPolicies, request);
+        // Revalidation requests skip the cache, so they go straight through
+        if (policy == null || request.cacheControl().noCache()) return chain.proceed(request);
+
+        Request staleAllowedRequest = request.newBuilder()
+                .cacheControl(new CacheControl.Builder()
+                        .maxStale(policy.staleWhileRevalidateSeconds, TimeUnit.SECONDS)
+                        .build())
+                .build();
+        Response response = chain.proceed(staleAllowedRequest);
+        if (response.networkResponse() == null && isStale(response)) revalidate(request);
+        return response;
+    }
+
+    private boolean isStale(Response response) {
+        for (String warning : response.headers("Warning")) {
+            if (warning.startsWith(WARNING_STALE)) return true;
+        }
+        return false;
+    }
+
+    private void revalidate(Request request) {
+        final String url = request.urlString();
+        synchronized (mRevalidatingUrls) {
+            if (!mRevalidatingUrls.add(url)) return;
+        }
+        Request networkRequest = request.newBuilder()
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .build();
+        mClient.newCall(networkRequest).enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                Timber.e(e, "There was an error revalidating " + url);
+                finish();
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                // The body has to be read in full for the response to be written to the cache
+                try {
+                    response.body().bytes();
+                } finally {
+                    finish();
+                }
+            }
+
+            private void finish() {
+                synchronized (mRevalidatingUrls) {
+                    mRevalidatingUrls.remove(url);
+                }
+            }
+        });
+    }
+}
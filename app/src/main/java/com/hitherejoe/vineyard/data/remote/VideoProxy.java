@@ -0,0 +1,318 @@
+package com.hitherejoe.vineyard.data.remote;
+
+import com.hitherejoe.vineyard.data.local.VideoCache;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Minimal HTTP server on the loopback interface that MediaPlayer streams videos through, so that
+ * they can be served from the VideoCache when they have been downloaded before and added to it
+ * as they are streamed when they haven't. Requests for part of a video that isn't cached (e.g.
+ * after seeking) are passed on to the CDN as they are.
+ *
+ * Other apps can reach the loopback interface too, so the proxy only answers requests that carry
+ * the random token it was started with, and only fetches videos from Vine's CDN.
+ */
+@Singleton
+public class VideoProxy {
+
+    private static final String HOST = "127.0.0.1";
+    private static final String URL_PARAMETER = "?url=";
+    // Videos are served from hosts such as v.cdn.vine.co and mtc.cdn.vine.co
+    private static final String VIDEO_HOST_SUFFIX = ".cdn.vine.co";
+    private static final int TOKEN_LENGTH_BYTES = 16;
+    private static final String CONTENT_TYPE = "video/mp4";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_LINE_LENGTH = 8 * 1024;
+
+    private final VideoCache mVideoCache;
+    private final OkHttpClient mClient;
+    private final ExecutorService mExecutor;
+    // Prefix of the path of every request the proxy answers, see getVideoPath()
+    private final String mPathPrefix;
+    private ServerSocket mServerSocket;
+
+    @Inject
+    public VideoProxy(VideoCache videoCache, OkHttpClient client) {
+        mVideoCache = videoCache;
+        mClient = client;
+        mExecutor = Executors.newCachedThreadPool();
+        mPathPrefix = "/" + newToken() + URL_PARAMETER;
+    }
+
+    /**
+     * Returns whether the given URL is one that the proxy will fetch, i.e. a video on Vine's CDN.
+     */
+    public static boolean isVideoUrl(String videoUrl) {
+        HttpUrl url = videoUrl == null ? null : HttpUrl.parse(videoUrl);
+        return url != null && url.host().endsWith(VIDEO_HOST_SUFFIX);
+    }
+
+    /**
+     * Returns the path that the given video should be played from: the cached copy if there is
+     * one, otherwise a URL on the proxy. Falls back to the video's own URL if it isn't on Vine's
+     * CDN or the proxy can't be started.
+     */
+    public synchronized String getVideoPath(String videoUrl) {
+        File file = mVideoCache.get(videoUrl);
+        if (file != null) return file.getPath();
+        if (!isVideoUrl(videoUrl)) return videoUrl;
+        try {
+            start();
+            return "http://" + HOST + ":" + mServerSocket.getLocalPort() + mPathPrefix
+                    + URLEncoder.encode(videoUrl, "UTF-8");
+        } catch (IOException e) {
+            Timber.w("Couldn't start the video proxy: " + e.getMessage());
+            return videoUrl;
+        }
+    }
+
+    private void start() throws IOException {
+        if (mServerSocket != null) return;
+        final ServerSocket serverSocket = new ServerSocket(0, 8, InetAddress.getByName(HOST));
+        mServerSocket = serverSocket;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        mExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                handle(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        Timber.e(e, "The video proxy stopped accepting connections");
+                        synchronized (VideoProxy.this) {
+                            closeQuietly(serverSocket);
+                            mServerSocket = null;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void handle(Socket socket) {
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            String requestLine = readLine(input);
+            long rangeStart = 0;
+            long rangeEnd = -1;
+            String line;
+            while ((line = readLine(input)) != null && !line.isEmpty()) {
+                if (line.regionMatches(true, 0, "Range:", 0, 6)) {
+                    String range = line.substring(6).trim();
+                    if (range.startsWith("bytes=")) {
+                        String[] bounds = range.substring(6).split("-", -1);
+                        rangeStart = bounds[0].isEmpty() ? 0 : Long.parseLong(bounds[0]);
+                        rangeEnd = bounds[1].isEmpty() ? -1 : Long.parseLong(bounds[1]);
+                    }
+                }
+            }
+            String videoUrl = getVideoUrl(requestLine);
+            if (videoUrl == null || !isVideoUrl(videoUrl)) {
+                writeHeaders(output, "403 Forbidden", 0, null);
+                output.flush();
+                return;
+            }
+
+            File file = mVideoCache.get(videoUrl);
+            if (file != null) {
+                serveFile(file, rangeStart, rangeEnd, output);
+            } else if (rangeStart != 0 || rangeEnd != -1 || !serveAndCache(videoUrl, output)) {
+                serveFromNetwork(videoUrl, rangeStart, rangeEnd, output);
+            }
+            output.flush();
+        } catch (IOException | NumberFormatException e) {
+            // Usually MediaPlayer closing the connection once it has read what it needs
+            Timber.d("Video proxy request ended early: " + e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private void serveFile(File file, long rangeStart, long rangeEnd, OutputStream output)
+            throws IOException {
+        long length = file.length();
+        if (rangeStart >= length) {
+            writeHeaders(output, "416 Requested Range Not Satisfiable", 0, null);
+            return;
+        }
+        long end = rangeEnd < 0 || rangeEnd >= length ? length - 1 : rangeEnd;
+        boolean isPartial = rangeStart > 0 || end < length - 1;
+        writeHeaders(output, isPartial ? "206 Partial Content" : "200 OK", end - rangeStart + 1,
+                isPartial ? "bytes " + rangeStart + "-" + end + "/" + length : null);
+
+        InputStream input = new FileInputStream(file);
+        try {
+            long skipped = 0;
+            while (skipped < rangeStart) {
+                long count = input.skip(rangeStart - skipped);
+                if (count <= 0) throw new IOException("Couldn't skip to " + rangeStart);
+                skipped += count;
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = end - rangeStart + 1;
+            int read;
+            while (remaining > 0
+                    && (read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Streams the whole of the given video from the network, writing it to the cache as it goes.
+     * Returns false without writing anything if the video can't be cached, e.g. because it's
+     * already being downloaded.
+     */
+    private boolean serveAndCache(String videoUrl, OutputStream output) throws IOException {
+        File tempFile = mVideoCache.startWriting(videoUrl);
+        if (tempFile == null) return false;
+        boolean isComplete = false;
+        try {
+            Response response = mClient.newCall(new Request.Builder().url(videoUrl).build())
+                    .execute();
+            if (!response.isSuccessful()) {
+                writeHeaders(output, response.code() + " " + response.message(), 0, null);
+                response.body().close();
+                return true;
+            }
+            long length = response.body().contentLength();
+            writeHeaders(output, "200 OK", length, null);
+            InputStream input = response.body().byteStream();
+            OutputStream cacheOutput = new FileOutputStream(tempFile);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long total = 0;
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    cacheOutput.write(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                    total += read;
+                }
+                isComplete = length < 0 || total == length;
+            } finally {
+                input.close();
+                cacheOutput.close();
+            }
+        } finally {
+            if (isComplete) {
+                mVideoCache.commit(videoUrl, tempFile);
+            } else {
+                mVideoCache.abort(videoUrl, tempFile);
+            }
+        }
+        return true;
+    }
+
+    private void serveFromNetwork(String videoUrl, long rangeStart, long rangeEnd,
+                                  OutputStream output) throws IOException {
+        Request.Builder request = new Request.Builder().url(videoUrl);
+        if (rangeStart != 0 || rangeEnd != -1) {
+            request.header("Range", "bytes=" + rangeStart + "-" + (rangeEnd < 0 ? "" : rangeEnd));
+        }
+        Response response = mClient.newCall(request.build()).execute();
+        writeHeaders(output, response.code() + " " + response.message(),
+                response.body().contentLength(), response.header("Content-Range"));
+        InputStream input = response.body().byteStream();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void writeHeaders(OutputStream output, String status, long contentLength,
+                                     String contentRange) throws IOException {
+        StringBuilder headers = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        headers.append("Content-Type: ").append(CONTENT_TYPE).append("\r\n");
+        headers.append("Accept-Ranges: bytes\r\n");
+        if (contentLength >= 0) {
+            headers.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        if (contentRange != null) {
+            headers.append("Content-Range: ").append(contentRange).append("\r\n");
+        }
+        headers.append("Connection: close\r\n\r\n");
+        output.write(headers.toString().getBytes("ISO-8859-1"));
+    }
+
+    /**
+     * Returns the video requested by the given request line, or null if the request doesn't
+     * carry the proxy's token.
+     */
+    private String getVideoUrl(String requestLine) throws UnsupportedEncodingException {
+        // e.g. GET /<token>?url=https%3A%2F%2F... HTTP/1.1
+        if (requestLine == null) return null;
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !parts[1].startsWith(mPathPrefix)) return null;
+        return URLDecoder.decode(parts[1].substring(mPathPrefix.length()), "UTF-8");
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[TOKEN_LENGTH_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return token.toString();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = input.read()) != -1 && c != '\n') {
+            if (c != '\r') line.write(c);
+            if (line.size() > MAX_HEADER_LINE_LENGTH) throw new IOException("Header too long");
+        }
+        if (c == -1 && line.size() == 0) return null;
+        return line.toString("ISO-8859-1");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) { }
+    }
+}
@@ -1,17 +1,24 @@
 package com.hitherejoe.vineyard.data.remote;
 
+import android.content.Context;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.hitherejoe.vineyard.data.model.Authentication;
 import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.data.model.Tag;
 import com.hitherejoe.vineyard.data.model.User;
+import com.squareup.okhttp.Cache;
 import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Response;
-import com.squareup.okhttp.logging.HttpLoggingInterceptor;
+import com.squareup.okhttp.ResponseBody;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import retrofit.Call;
 import retrofit.GsonConverterFactory;
@@ -23,6 +30,7 @@ import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.Path;
 import retrofit.http.Query;
+import retrofit.http.Streaming;
 import rx.Observable;
 
 public interface VineyardService {
@@ -39,20 +47,24 @@ public interface VineyardService {
     @GET("users/profiles/{userid}")
     Observable<User> getUser(@Path("userid") String userId);
 
+    @Streaming
     @GET("timelines/users/{userid}")
-    Observable<VineyardService.PostResponse> getUserTimeline(@Path("userid") String userId, @Query("page") String page, @Query("anchorStr") String anchor);
+    Observable<ResponseBody> getUserTimeline(@Path("userid") String userId, @Query("page") String page, @Query("anchorStr") String anchor);
 
+    @Streaming
     @GET("timelines/popular")
-    Observable<PostResponse> getPopularPosts(@Query("page") String page, @Query("anchorStr") String anchor);
+    Observable<ResponseBody> getPopularPosts(@Query("page") String page, @Query("anchorStr") String anchor);
 
     @GET("timelines/popular")
     Call<PostResponse> getPopularPosts();
 
+    @Streaming
     @GET("timelines/promoted")
-    Observable<PostResponse> getEditorsPicksPosts(@Query("page") String page, @Query("anchorStr") String anchor);
+    Observable<ResponseBody> getEditorsPicksPosts(@Query("page") String page, @Query("anchorStr") String anchor);
 
+    @Streaming
     @GET("timelines/tags/{tag}")
-    Observable<PostResponse> getPostsByTag(@Path("tag") String tag, @Query("page") String page, @Query("anchorStr") String anchor);
+    Observable<ResponseBody> getPostsByTag(@Path("tag") String tag, @Query("page") String page, @Query("anchorStr") String anchor);
 
     @GET("search/tags/{tag}")
     Observable<TagResponse> searchByTag(@Path("tag") String tag, @Query("page") String page, @Query("anchorStr") String anchor);
@@ -64,8 +76,28 @@ public interface VineyardService {
      * Helper class that sets up a new services
      *******/
     class Creator {
-        public static VineyardService newVineyardService() {
-            OkHttpClient client = new OkHttpClient();
+        private static final String HTTP_CACHE_DIR = "http";
+        private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+        public static VineyardService newVineyardService(Context context,
+                                                         OkHttpClient baseClient,
+                                                         NetworkMetrics networkMetrics) {
+            return newVineyardService(context, baseClient, networkMetrics,
+                    CachePolicy.defaultPolicies());
+        }
+
+        /**
+         * Creates the service on a copy of the given client, so that the cache and interceptors
+         * used for the API aren't applied to the other requests made with it, e.g. for videos.
+         */
+        public static VineyardService newVineyardService(Context context,
+                                                         OkHttpClient baseClient,
+                                                         NetworkMetrics networkMetrics,
+                                                         Map<String, CachePolicy> cachePolicies) {
+            OkHttpClient client = baseClient.clone();
+            client.setCache(new Cache(
+                    new File(context.getCacheDir(), HTTP_CACHE_DIR), HTTP_CACHE_SIZE));
+            client.interceptors().add(new MetricsInterceptor(networkMetrics));
             client.interceptors().add(new Interceptor() {
                 @Override
                 public Response intercept(Chain chain) throws IOException {
@@ -75,18 +107,23 @@ public interface VineyardService {
                 }
             });
 
-            HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor();
-            interceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-            client.interceptors().add(interceptor);
+            client.interceptors().add(new StaleWhileRevalidateInterceptor(client, cachePolicies));
+            client.networkInterceptors().add(new CachePolicyInterceptor(cachePolicies));
 
             Retrofit retrofit = new Retrofit.Builder()
                     .baseUrl(VineyardService.ENDPOINT)
                     .client(client)
-                    .addConverterFactory(GsonConverterFactory.create())
+                    .addConverterFactory(GsonConverterFactory.create(newGson()))
                     .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
                     .build();
             return retrofit.create(VineyardService.class);
         }
+
+        public static Gson newGson() {
+            return new GsonBuilder()
+                    .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                    .create();
+        }
     }
 
     class PostResponse {
@@ -97,6 +134,12 @@ public interface VineyardService {
             public String anchorStr;
             public int nextPage;
             public List<Post> records;
+            // Set when this is one chunk of a page that is still being streamed, in which case
+            // the anchor and next page are not final yet
+            public transient boolean partial;
+            // Set when this is the copy of the page that was stored in the database, which the
+            // page from the API replaces once it arrives
+            public transient boolean stored;
         }
     }
 
@@ -106,6 +149,7 @@ public interface VineyardService {
 
         public static class Data {
             public String anchorStr;
+            public int nextPage;
             public List<Tag> records;
         }
     }
@@ -116,6 +160,7 @@ public interface VineyardService {
 
         public static class Data {
             public String anchorStr;
+            public int nextPage;
             public List<User> records;
         }
     }
@@ -123,7 +168,18 @@ public interface VineyardService {
     class KeywordSearchResponse {
         public String tagSearchAnchor;
         public String userSearchAnchor;
+        public int tagNextPage;
+        public int userNextPage;
         public ArrayList<Object> list;
+        // Set when these aren't the final results yet, either because they were filtered locally
+        // from those of another query or because only one of tags and users has arrived so far
+        public transient boolean partial;
+        // Set when the results were filtered locally from those of another query, in which case
+        // they are replaced as a whole once the actual results arrive
+        public transient boolean approximate;
+        // The tags or users that arrived with these results, i.e. those the previous results
+        // for the same query didn't have yet, see SearchResultsMerger
+        public transient List<?> addedItems;
 
         @Override
         public boolean equals(Object o) {
@@ -140,6 +196,8 @@ public interface VineyardService {
                     ? !userSearchAnchor.equals(that.userSearchAnchor)
                     : that.userSearchAnchor != null)
                 return false;
+            if (tagNextPage != that.tagNextPage) return false;
+            if (userNextPage != that.userNextPage) return false;
             return !(list != null ? !list.equals(that.list) : that.list != null);
 
         }
@@ -148,6 +206,8 @@ public interface VineyardService {
         public int hashCode() {
             int result = tagSearchAnchor != null ? tagSearchAnchor.hashCode() : 0;
             result = 31 * result + (userSearchAnchor != null ? userSearchAnchor.hashCode() : 0);
+            result = 31 * result + tagNextPage;
+            result = 31 * result + userNextPage;
             result = 31 * result + (list != null ? list.hashCode() : 0);
             return result;
         }
@@ -0,0 +1,15 @@
+package com.hitherejoe.vineyard.injection;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import javax.inject.Qualifier;
+
+/**
+ * The Scheduler used for timers such as debouncing, which tests can replace so that they don't
+ * have to wait for them.
+ */
+@Qualifier
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ComputationScheduler {
+}
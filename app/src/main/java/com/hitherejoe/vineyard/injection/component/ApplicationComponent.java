@@ -5,13 +5,20 @@ import android.content.Context;
 
 import com.hitherejoe.vineyard.data.DataManager;
 import com.hitherejoe.vineyard.data.local.PreferencesHelper;
+import com.hitherejoe.vineyard.data.local.VideoCache;
+import com.hitherejoe.vineyard.data.local.VideoPrefetcher;
+import com.hitherejoe.vineyard.data.remote.VideoProxy;
 import com.hitherejoe.vineyard.injection.ApplicationContext;
+import com.hitherejoe.vineyard.injection.ComputationScheduler;
 import com.hitherejoe.vineyard.injection.module.ApplicationModule;
+import com.hitherejoe.vineyard.ui.widget.BackgroundEngine;
+import com.hitherejoe.vineyard.ui.widget.PreviewPlayerManager;
 import com.squareup.otto.Bus;
 
 import javax.inject.Singleton;
 
 import dagger.Component;
+import rx.Scheduler;
 import rx.subscriptions.CompositeSubscription;
 
 @Singleton
@@ -25,5 +32,12 @@ public interface ApplicationComponent {
     DataManager dataManager();
     CompositeSubscription compositeSubscription();
     Bus eventBus();
+    VideoCache videoCache();
+    VideoPrefetcher videoPrefetcher();
+    VideoProxy videoProxy();
+    PreviewPlayerManager previewPlayerManager();
+    BackgroundEngine backgroundEngine();
+    @ComputationScheduler
+    Scheduler computationScheduler();
 
 }
\ No newline at end of file
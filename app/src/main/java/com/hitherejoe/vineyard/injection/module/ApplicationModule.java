@@ -3,15 +3,21 @@ package com.hitherejoe.vineyard.injection.module;
 import android.app.Application;
 import android.content.Context;
 
+import com.hitherejoe.vineyard.BuildConfig;
 import com.hitherejoe.vineyard.data.DataManager;
+import com.hitherejoe.vineyard.data.remote.NetworkMetrics;
 import com.hitherejoe.vineyard.data.remote.VineyardService;
 import com.hitherejoe.vineyard.injection.ApplicationContext;
+import com.hitherejoe.vineyard.injection.ComputationScheduler;
+import com.squareup.okhttp.OkHttpClient;
 import com.squareup.otto.Bus;
 
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
 
 /**
@@ -43,6 +49,12 @@ public class ApplicationModule {
         return new CompositeSubscription();
     }
 
+    @Provides
+    @ComputationScheduler
+    Scheduler provideComputationScheduler() {
+        return Schedulers.computation();
+    }
+
     @Provides
     @Singleton
     Bus provideEventBus() {
@@ -51,7 +63,14 @@ public class ApplicationModule {
 
     @Provides
     @Singleton
-    VineyardService provideVineyardService() {
-        return VineyardService.Creator.newVineyardService();
+    OkHttpClient provideOkHttpClient() {
+        return new OkHttpClient();
+    }
+
+    @Provides
+    @Singleton
+    VineyardService provideVineyardService(OkHttpClient client, NetworkMetrics networkMetrics) {
+        networkMetrics.setDetailedLoggingEnabled(BuildConfig.DEBUG);
+        return VineyardService.Creator.newVineyardService(mApplication, client, networkMetrics);
     }
 }
\ No newline at end of file
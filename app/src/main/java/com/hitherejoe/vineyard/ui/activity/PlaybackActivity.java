@@ -18,13 +18,21 @@ import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.SimpleTarget;
 import com.hitherejoe.vineyard.R;
+import com.hitherejoe.vineyard.data.BusEvent;
 import com.hitherejoe.vineyard.data.DataManager;
+import com.hitherejoe.vineyard.data.PlaylistLoader;
+import com.hitherejoe.vineyard.data.local.VideoCache;
+import com.hitherejoe.vineyard.data.local.VideoPrefetcher;
+import com.hitherejoe.vineyard.data.model.Feed;
+import com.hitherejoe.vineyard.data.model.Playlist;
 import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.recommendations.UpdateRecommendationsService;
+import com.hitherejoe.vineyard.data.remote.VideoProxy;
 import com.hitherejoe.vineyard.ui.fragment.PlaybackOverlayFragment;
+import com.hitherejoe.vineyard.ui.widget.PreviewPlayerManager;
 import com.hitherejoe.vineyard.util.NetworkUtil;
 import com.hitherejoe.vineyard.util.ToastFactory;
-
-import java.util.ArrayList;
+import com.squareup.otto.Bus;
 
 import javax.inject.Inject;
 
@@ -39,12 +47,25 @@ public class PlaybackActivity extends BaseActivity {
 
     public static final String AUTO_PLAY = "auto_play";
     public static final String POST = "post";
-    public static final String POST_LIST = "postList";
+    public static final String PLAYLIST = "playlist";
+    public static final String FEED = "feed";
     public static final String EXTRA_IS_LOOP_ENABLED = "EXTRA_IS_LOOP_ENABLED";
+    // How soon to look again if the player hasn't gone back to the start by the end of the video
+    private static final int LOOP_CHECK_RETRY_MILLIS = 50;
+    // Skips that come within this long of each other are treated as one, so that only the post
+    // they end on is loaded
+    private static final int SKIP_SETTLE_MILLIS = 400;
     private boolean mWasSkipPressed;
+    private boolean mAutoPlayPendingPost;
     private boolean mIsAutoLoopEnabled;
+    private boolean mIsPlayingCachedVideo;
 
+    @Inject Bus mEventBus;
     @Inject DataManager mDataManager;
+    @Inject PreviewPlayerManager mPreviewPlayerManager;
+    @Inject VideoCache mVideoCache;
+    @Inject VideoPrefetcher mVideoPrefetcher;
+    @Inject VideoProxy mVideoProxy;
 
     @Bind(R.id.videoView)
     VideoView mVideoView;
@@ -56,24 +77,58 @@ public class PlaybackActivity extends BaseActivity {
         PLAYING, PAUSED, IDLE
     }
 
-    private ArrayList<Post> mPostsList;
+    private Playlist mPlaylist;
     private LeanbackPlaybackState mPlaybackState;
     private MediaPlayer mMediaPlayer;
     private MediaSession mSession;
     private Post mCurrentPost;
+    private PlaylistLoader mPlaylistLoader;
+    private SimpleTarget<Bitmap> mArtTarget;
 
     private int mPosition;
     private int mCurrentItem;
-    private long mStartTimeMillis;
+    private int mBufferedPercent;
+    private int mLastLoopCheckPosition;
     private long mDuration;
 
-    public static Intent newStartIntent(Context context, Post post, ArrayList<Post> postList) {
+    private final Runnable mLoopCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            int position = mVideoView.getCurrentPosition();
+            if (position < mLastLoopCheckPosition) updateLoopingState(position);
+            scheduleLoopCheck();
+        }
+    };
+
+    private final Runnable mPlayPendingPostRunnable = new Runnable() {
+        @Override
+        public void run() {
+            playCurrentPost(mAutoPlayPendingPost);
+        }
+    };
+
+    /**
+     * Returns an Intent that plays the given post from the given playlist. Only the playlist's
+     * handle is passed along with its feed, so that it can be rebuilt if the process has been
+     * restarted by the time the Intent is used.
+     */
+    public static Intent newStartIntent(Context context, Post post, Playlist playlist) {
         Intent intent = new Intent(context, PlaybackActivity.class);
         intent.putExtra(POST, post);
-        intent.putParcelableArrayListExtra(POST_LIST, postList);
+        intent.putExtra(PLAYLIST, playlist.getHandle());
+        intent.putExtra(FEED, playlist.getFeed());
         return intent;
     }
 
+    /**
+     * Returns the playlist that the given Intent (see newStartIntent()) was started with.
+     */
+    public static Playlist getPlaylist(DataManager dataManager, Intent intent) {
+        Post post = intent.getParcelableExtra(POST);
+        Feed feed = intent.getParcelableExtra(FEED);
+        return dataManager.getPlaylist(intent.getStringExtra(PLAYLIST), feed, post);
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -86,21 +141,42 @@ public class PlaybackActivity extends BaseActivity {
         setContentView(R.layout.activity_playback);
         ButterKnife.bind(this);
         getActivityComponent().inject(this);
+        // Frees up the decoders held by the previews on the screen we came from, and keeps any
+        // more previews from being played until we're done
+        mPreviewPlayerManager.beginPlaybackSession();
         mIsAutoLoopEnabled = mDataManager.getPreferencesHelper().getShouldAutoLoop();
+        if (savedInstanceState == null) {
+            // Opening a recommendation dismisses it, so it needs publishing again
+            UpdateRecommendationsService.onRecommendationOpened(this, getIntent());
+        }
 
         mCurrentPost = getIntent().getParcelableExtra(PlaybackActivity.POST);
         if (mCurrentPost == null) {
             throw new IllegalArgumentException("PlaybackActivity requires a Post object!");
         }
 
-        mPostsList = getIntent().getExtras().getParcelableArrayList(POST_LIST);
-        if (mPostsList != null) {
-            for (int i = 0; i < mPostsList.size(); i++) {
-                if (mCurrentPost.equals(mPostsList.get(i))) mCurrentItem = i;
-            }
-        }
+        mPlaylist = getPlaylist(mDataManager, getIntent());
+        mCurrentItem = Math.max(mPlaylist.indexOf(mCurrentPost.postId), 0);
+        mPlaylistLoader = new PlaylistLoader(mDataManager, mPlaylist,
+                new PlaylistLoader.Listener() {
+                    @Override
+                    public void onPostsAdded(int previousSize) {
+                        mEventBus.post(new BusEvent.PlaylistUpdated(mPlaylist.getHandle()));
+                        if (!mPlaylistLoader.isWaiting() && previousSize == mCurrentItem + 1) {
+                            // The post after the current one has only just arrived
+                            mVideoPrefetcher.prefetch(mPlaylist, mCurrentItem);
+                        }
+                    }
+
+                    @Override
+                    public void onNextPostLoaded(int position) {
+                        playPost(position);
+                    }
+                });
         loadViews();
         playPause(true);
+        mPlaylistLoader.loadNextPageIfNeeded(mCurrentItem);
+        mVideoPrefetcher.prefetch(mPlaylist, mCurrentItem);
     }
 
     @Override
@@ -119,14 +195,18 @@ public class PlaybackActivity extends BaseActivity {
     @Override
     protected void onStop() {
         super.onStop();
+        // A post that is still waiting for skips to settle is loaded without being played
+        mAutoPlayPendingPost = false;
         playPause(false);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        mPlaylistLoader.cancel();
+        mVideoPrefetcher.cancel();
+        mPreviewPlayerManager.endPlaybackSession();
         stopPlayback();
-        mMediaPlayer.release();
         mVideoView.suspend();
         mVideoView.setVideoURI(null);
         mSession.release();
@@ -164,15 +244,14 @@ public class PlaybackActivity extends BaseActivity {
     }
 
     private void setPosition(int position) {
-        if (position > mDuration) {
+        // The duration isn't known until the video has been prepared
+        if (mDuration >= 0 && position > mDuration) {
             mPosition = (int) mDuration;
         } else if (position < 0) {
             mPosition = 0;
         } else {
             mPosition = position;
         }
-        mStartTimeMillis = System.currentTimeMillis();
-
     }
 
     private void createMediaSession() {
@@ -195,12 +274,9 @@ public class PlaybackActivity extends BaseActivity {
                 mVideoView.seekTo(mPosition);
             }
             mVideoView.start();
-            mStartTimeMillis = System.currentTimeMillis();
         } else {
-            mPosition = mVideoView.getCurrentPosition();
             mPlaybackState = LeanbackPlaybackState.PAUSED;
-            int timeElapsedSinceStart = (int) (System.currentTimeMillis() - mStartTimeMillis);
-            setPosition(mPosition + timeElapsedSinceStart);
+            setPosition(mVideoView.getCurrentPosition());
             mVideoView.pause();
         }
         updatePlaybackState();
@@ -214,8 +290,45 @@ public class PlaybackActivity extends BaseActivity {
                 || mPlaybackState == LeanbackPlaybackState.IDLE) {
             state = PlaybackState.STATE_PAUSED;
         }
-        stateBuilder.setState(state, mPosition, 1.0f);
+        // The overlay's progress clock works out the position from here while playing, so it
+        // needs to be the player's actual position at the time the state is published
+        long position = mPlaybackState == LeanbackPlaybackState.PLAYING
+                ? mVideoView.getCurrentPosition() : mPosition;
+        stateBuilder.setState(state, position, 1.0f);
+        stateBuilder.setBufferedPosition(getBufferedPosition());
         mSession.setPlaybackState(stateBuilder.build());
+        scheduleLoopCheck();
+    }
+
+    /**
+     * Tells the overlay that the video has gone back to the start, so that it can reset the
+     * progress from the given position.
+     */
+    private void updateLoopingState(int position) {
+        PlaybackState.Builder stateBuilder =
+                new PlaybackState.Builder().setActions(getAvailableActions());
+        stateBuilder.setState(PlaybackOverlayFragment.STATE_LOOPING, position, 1.0f);
+        stateBuilder.setBufferedPosition(getBufferedPosition());
+        mSession.setPlaybackState(stateBuilder.build());
+    }
+
+    /**
+     * The player doesn't say when it loops, so this checks for the position going back to the
+     * start once the end of the video should have been reached, i.e. once per loop.
+     */
+    private void scheduleLoopCheck() {
+        mVideoView.removeCallbacks(mLoopCheckRunnable);
+        if (!mIsAutoLoopEnabled || mPlaybackState != LeanbackPlaybackState.PLAYING
+                || mDuration <= 0) {
+            return;
+        }
+        mLastLoopCheckPosition = mVideoView.getCurrentPosition();
+        long delay = Math.max(LOOP_CHECK_RETRY_MILLIS, mDuration - mLastLoopCheckPosition);
+        mVideoView.postDelayed(mLoopCheckRunnable, delay);
+    }
+
+    private long getBufferedPosition() {
+        return mDuration > 0 ? mDuration * mBufferedPercent / 100 : 0;
     }
 
     private long getAvailableActions() {
@@ -243,13 +356,17 @@ public class PlaybackActivity extends BaseActivity {
                 post.description);
         metadataBuilder.putString(MediaMetadata.METADATA_KEY_DISPLAY_ICON_URI,
                 post.avatarUrl);
-        metadataBuilder.putLong(MediaMetadata.METADATA_KEY_DURATION, mVideoView.getDuration());
+        // The duration isn't known while skipping, until the post has been prepared
+        metadataBuilder.putLong(MediaMetadata.METADATA_KEY_DURATION, Math.max(mDuration, 0));
 
         // And at minimum the title and artist for legacy support
         metadataBuilder.putString(MediaMetadata.METADATA_KEY_TITLE, title);
         metadataBuilder.putString(MediaMetadata.METADATA_KEY_ARTIST, post.username);
 
-        Glide.with(this)
+        // Published straight away so the overlay keeps up with skips, and again with the art
+        mSession.setMetadata(metadataBuilder.build());
+        if (mArtTarget != null) Glide.clear(mArtTarget);
+        mArtTarget = Glide.with(this)
                 .load(post.avatarUrl)
                 .asBitmap()
                 .into(new SimpleTarget<Bitmap>(500, 500) {
@@ -275,16 +392,23 @@ public class PlaybackActivity extends BaseActivity {
             @Override
             public void onPrepared(MediaPlayer mp) {
                 mMediaPlayer = mp;
+                mDuration = mp.getDuration();
+                // Looped by the player itself, which doesn't leave a gap between loops
+                mMediaPlayer.setLooping(mIsAutoLoopEnabled);
 
                 mMediaPlayer.setOnBufferingUpdateListener(new MediaPlayer.OnBufferingUpdateListener() {
                     @Override
                     public void onBufferingUpdate(MediaPlayer mp, int percent) {
+                        // Reported every second or so, even once the whole video has buffered
+                        if (percent == mBufferedPercent) return;
+                        mBufferedPercent = percent;
                         if (percent > 40) {
                             updatePlaybackState();
                             mLoadingOverlay.setVisibility(View.GONE);
                         }
                     }
                 });
+                if (mIsPlayingCachedVideo) updatePlaybackState();
                 updateMetadata(mCurrentPost);
             }
         });
@@ -294,21 +418,71 @@ public class PlaybackActivity extends BaseActivity {
             public void onCompletion(MediaPlayer mp) {
                 if (!mIsAutoLoopEnabled) {
                     mPlaybackState = LeanbackPlaybackState.IDLE;
+                    getMediaController().getTransportControls().skipToNext();
                 } else {
-                    //TODO: It'd be better to use the MediaPlayer looping functionality, but
-                    // this broke the seek bar progress due to the gap between loops...
+                    // Only reached if looping was turned on after the player finished the
+                    // video, as the player loops by itself otherwise
+                    mMediaPlayer.setLooping(true);
                     mMediaPlayer.start();
-                    PlaybackState.Builder stateBuilder =
-                            new PlaybackState.Builder().setActions(getAvailableActions());
-                    stateBuilder.setState(PlaybackOverlayFragment.STATE_LOOPING, 0, 1.0f);
-                    mSession.setPlaybackState(stateBuilder.build());
+                    updateLoopingState(0);
+                    scheduleLoopCheck();
                 }
             }
         });
     }
 
     private void stopPlayback() {
-        if (mVideoView != null) mVideoView.stopPlayback();
+        if (mVideoView != null) {
+            mVideoView.removeCallbacks(mLoopCheckRunnable);
+            mVideoView.removeCallbacks(mPlayPendingPostRunnable);
+            // Releases the player, which cancels any prepare and closes its stream
+            mVideoView.stopPlayback();
+        }
+        mMediaPlayer = null;
+    }
+
+    /**
+     * Plays the post after the current one, waiting for the next page of the feed if we've
+     * reached the end of what's been loaded. Wraps around to the start once the feed runs out.
+     */
+    private void skipToNextPost() {
+        int position = mPlaylistLoader.skipToNext(mCurrentItem);
+        if (position == PlaylistLoader.WAITING) {
+            mLoadingOverlay.setVisibility(View.VISIBLE);
+        } else {
+            playPost(position);
+        }
+    }
+
+    private void playCurrentPost(boolean autoPlay) {
+        mVideoView.removeCallbacks(mPlayPendingPostRunnable);
+        setVideoPath(mCurrentPost.videoUrl);
+        mPlaybackState = LeanbackPlaybackState.PAUSED;
+        playPause(autoPlay);
+        mVideoPrefetcher.prefetch(mPlaylist, mCurrentItem);
+    }
+
+    /**
+     * Stops the current post and shows the details of the one being skipped to, which is only
+     * loaded once no more skips have come in for a while. Skipping through several posts in a
+     * row then only loads the last of them.
+     */
+    private void skipToCurrentPost(boolean autoPlay) {
+        stopPlayback();
+        mPlaybackState = LeanbackPlaybackState.IDLE;
+        mDuration = -1;
+        setPosition(0);
+        mAutoPlayPendingPost = autoPlay;
+        updateMetadata(mCurrentPost);
+        mVideoView.postDelayed(mPlayPendingPostRunnable, SKIP_SETTLE_MILLIS);
+    }
+
+    private void playPost(int position) {
+        mCurrentItem = position;
+        Bundle bundle = new Bundle(1);
+        bundle.putBoolean(PlaybackActivity.AUTO_PLAY, true);
+        String postId = mPlaylist.get(position).postId;
+        getMediaController().getTransportControls().playFromMediaId(postId, bundle);
     }
 
     private class MediaSessionCallback extends MediaSession.Callback {
@@ -327,13 +501,16 @@ public class PlaybackActivity extends BaseActivity {
         public void onPlayFromMediaId(String mediaId, Bundle extras) {
             if (mWasSkipPressed || !mIsAutoLoopEnabled) {
                 if (NetworkUtil.isNetworkConnected(PlaybackActivity.this)) {
-                    for (Post post : mPostsList) {
-                        if (post.postId.equals(mediaId)) {
-                            mCurrentPost = post;
-                            setVideoPath(mCurrentPost.videoUrl);
-                            mPlaybackState = LeanbackPlaybackState.PAUSED;
-                            playPause(extras.getBoolean(AUTO_PLAY));
+                    int position = mPlaylist.indexOf(mediaId);
+                    if (position != -1) {
+                        mCurrentItem = position;
+                        mCurrentPost = mPlaylist.get(position);
+                        if (mWasSkipPressed) {
+                            skipToCurrentPost(extras.getBoolean(AUTO_PLAY));
+                        } else {
+                            playCurrentPost(extras.getBoolean(AUTO_PLAY));
                         }
+                        mPlaylistLoader.loadNextPageIfNeeded(mCurrentItem);
                     }
                     mWasSkipPressed = false;
                 } else {
@@ -350,16 +527,7 @@ public class PlaybackActivity extends BaseActivity {
                         new PlaybackState.Builder().setActions(getAvailableActions());
                 stateBuilder.setState(PlaybackState.STATE_SKIPPING_TO_NEXT, 0, 1.0f);
                 mSession.setPlaybackState(stateBuilder.build());
-                mCurrentItem++;
-                if (mCurrentItem == mPostsList.size()) {
-                    mCurrentItem = 0;
-                }
-
-                Bundle bundle = new Bundle(1);
-                bundle.putBoolean(PlaybackActivity.AUTO_PLAY, true);
-
-                String nextId = mPostsList.get(mCurrentItem).postId;
-                getMediaController().getTransportControls().playFromMediaId(nextId, bundle);
+                skipToNextPost();
             }
         }
 
@@ -371,12 +539,8 @@ public class PlaybackActivity extends BaseActivity {
                 stateBuilder.setState(PlaybackState.STATE_SKIPPING_TO_PREVIOUS, 0, 1.0f);
                 mSession.setPlaybackState(stateBuilder.build());
 
-                if (mCurrentItem-- < 0) mCurrentItem = mPostsList.size() - 1;
-                Bundle bundle = new Bundle(1);
-                bundle.putBoolean(PlaybackActivity.AUTO_PLAY, true);
-
-                String prevId = mPostsList.get(mCurrentItem).postId;
-                getMediaController().getTransportControls().playFromMediaId(prevId, bundle);
+                // Wraps around to the end of what's been loaded so far
+                playPost(mCurrentItem > 0 ? mCurrentItem - 1 : mPlaylist.size() - 1);
             }
         }
 
@@ -410,6 +574,8 @@ public class PlaybackActivity extends BaseActivity {
             if (action.equals(PlaybackOverlayFragment.CUSTOM_ACTION_LOOP)) {
                 if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
                     mIsAutoLoopEnabled = extras.getBoolean(EXTRA_IS_LOOP_ENABLED);
+                    mMediaPlayer.setLooping(mIsAutoLoopEnabled);
+                    scheduleLoopCheck();
                 }
             } else if (action.equals(PlaybackOverlayFragment.CUSTOM_ACTION_SKIP_VIDEO)) {
                 mWasSkipPressed = true;
@@ -420,9 +586,13 @@ public class PlaybackActivity extends BaseActivity {
     }
 
     private void setVideoPath(String videoUrl) {
-        mLoadingOverlay.setVisibility(View.VISIBLE);
+        // Videos that have been cached can be played from local storage without buffering
+        mIsPlayingCachedVideo = mVideoCache.isCached(videoUrl);
+        mLoadingOverlay.setVisibility(mIsPlayingCachedVideo ? View.GONE : View.VISIBLE);
+        mDuration = -1;
+        mBufferedPercent = mIsPlayingCachedVideo ? 100 : 0;
+        mVideoView.removeCallbacks(mLoopCheckRunnable);
         setPosition(0);
-        mVideoView.setVideoPath(videoUrl);
-        mStartTimeMillis = 0;
+        mVideoView.setVideoPath(mVideoProxy.getVideoPath(videoUrl));
     }
 }
\ No newline at end of file
@@ -0,0 +1,239 @@
+package com.hitherejoe.vineyard.ui.adapter;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.v17.leanback.widget.Presenter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PaginationAdapter that keeps its items in a typed list alongside an index of their keys, so
+ * that duplicates from later pages are dropped without searching through the items already
+ * shown. Ranked adapters, those given a comparator, sort each page and merge it into place among
+ * the existing items. Otherwise items are appended in the order they arrive, as pages of a feed
+ * follow on from each other and a page may arrive in several parts. Existing items always come
+ * before the loading indicator and any option cards.
+ */
+public abstract class IndexedPaginationAdapter<T> extends PaginationAdapter {
+
+    private final Class<T> mItemClass;
+    private final Comparator<? super T> mComparator;
+    private final ArrayList<T> mItems;
+    private final Map<String, T> mIndex;
+    // Items from the stored copy of a page, by key, until the page from the API replaces them
+    private final Map<String, T> mStoredItems;
+
+    public IndexedPaginationAdapter(Context context, Presenter presenter, String tag,
+                                    Class<T> itemClass,
+                                    @Nullable Comparator<? super T> comparator) {
+        super(context, presenter, tag);
+        mItemClass = itemClass;
+        mComparator = comparator;
+        mItems = new ArrayList<>();
+        mIndex = new HashMap<>();
+        mStoredItems = new HashMap<>();
+    }
+
+    /**
+     * Returns the key that identifies the given item, or null if it shouldn't be shown.
+     */
+    protected abstract String getKey(T item);
+
+    @Override
+    public void addAllItems(List<?> items) {
+        addPosts(items);
+    }
+
+    @Override
+    public void addStoredItems(List<?> items) {
+        for (int i = 0; i < items.size(); i++) {
+            Object object = items.get(i);
+            if (!mItemClass.isInstance(object)) continue;
+            T item = mItemClass.cast(object);
+            String key = getKey(item);
+            // Items that an earlier page has already shown aren't part of this page
+            if (key != null && !mIndex.containsKey(key)) mStoredItems.put(key, item);
+        }
+        addPosts(items);
+    }
+
+    @Override
+    public void removeStoredItems() {
+        for (T item : mStoredItems.values()) {
+            // Pages that are held back haven't been indexed yet
+            if (removeBufferedItem(item)) continue;
+            String key = getKey(item);
+            if (mIndex.get(key) != item) continue;
+            int position = indexOfItem(item);
+            if (position != -1) removeItems(position, 1);
+        }
+        mStoredItems.clear();
+    }
+
+    @Override
+    public boolean cancelLoadingPage() {
+        // Whatever is left of the stored copy of the page is kept as it is
+        mStoredItems.clear();
+        return super.cancelLoadingPage();
+    }
+
+    /**
+     * Returns the items shown so far, in the order they are shown. The list is a read only view
+     * of the items rather than a copy, so callers that keep it should copy it themselves.
+     */
+    @Override
+    public List<T> getAllItems() {
+        return Collections.unmodifiableList(mItems);
+    }
+
+    public boolean containsKey(String key) {
+        return mIndex.containsKey(key);
+    }
+
+    @Override
+    protected boolean hasItems() {
+        return !mItems.isEmpty();
+    }
+
+    @Override
+    protected void showItems(List<?> items) {
+        List<T> page = getNewItems(items);
+        if (page.isEmpty()) return;
+        if (mComparator == null) {
+            int position = mItems.size();
+            mItems.addAll(page);
+            insertItems(position, page);
+            return;
+        }
+
+        Collections.sort(page, mComparator);
+
+        // Pages usually follow on from the items already shown, in which case this finds the
+        // end of the list straight away and the whole page is appended in one go
+        int position = findInsertionPosition(page.get(0));
+        int start = 0;
+        while (start < page.size()) {
+            while (position < mItems.size()
+                    && mComparator.compare(mItems.get(position), page.get(start)) <= 0) {
+                position++;
+            }
+            int end = start + 1;
+            while (end < page.size() && (position == mItems.size()
+                    || mComparator.compare(page.get(end), mItems.get(position)) < 0)) {
+                end++;
+            }
+            List<T> run = page.subList(start, end);
+            mItems.addAll(position, run);
+            insertItems(position, run);
+            position += run.size();
+            start = end;
+        }
+    }
+
+    @Override
+    public int removeItems(int position, int count) {
+        // Shown items normally come first, but look up what is actually being removed rather
+        // than relying on that, as option cards and the loading indicator are removed this way
+        int end = Math.min(position + count, size());
+        for (int i = position; i < end; i++) {
+            forgetItem(get(i));
+        }
+        return super.removeItems(position, count);
+    }
+
+    @Override
+    public void clear() {
+        mItems.clear();
+        mIndex.clear();
+        mStoredItems.clear();
+        super.clear();
+    }
+
+    /**
+     * Returns the items of the given type that aren't already shown, adding them to the index.
+     * Items that replace the stored copy of one that is already shown take its place instead.
+     */
+    private List<T> getNewItems(List<?> items) {
+        List<T> newItems = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Object object = items.get(i);
+            if (!mItemClass.isInstance(object)) continue;
+            T item = mItemClass.cast(object);
+            String key = getKey(item);
+            if (key == null) continue;
+            T existing = mIndex.get(key);
+            if (existing == null) {
+                mIndex.put(key, item);
+                newItems.add(item);
+            } else if (existing != item && mStoredItems.get(key) == existing) {
+                mStoredItems.remove(key);
+                mIndex.put(key, item);
+                int position = indexOfItem(newItems, existing);
+                if (position != -1) {
+                    newItems.set(position, item);
+                } else {
+                    replaceItem(existing, item);
+                }
+            }
+        }
+        return newItems;
+    }
+
+    /**
+     * Removes the given object from the items and the index, if it is one of the items shown.
+     */
+    private void forgetItem(Object object) {
+        if (!mItemClass.isInstance(object)) return;
+        T item = mItemClass.cast(object);
+        int index = indexOfItem(item);
+        if (index == -1) return;
+        mItems.remove(index);
+        String key = getKey(item);
+        if (mIndex.get(key) == item) mIndex.remove(key);
+    }
+
+    private void replaceItem(T existing, T item) {
+        int position = indexOfItem(existing);
+        if (position == -1) return;
+        mItems.set(position, item);
+        // Shown items always come first, so their positions are the same in the adapter
+        replace(position, item);
+    }
+
+    private int indexOfItem(T item) {
+        return indexOfItem(mItems, item);
+    }
+
+    /**
+     * Returns the position of the given item in the given list, searching from the end as it is
+     * usually part of the most recent page.
+     */
+    private static <T> int indexOfItem(List<T> items, T item) {
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (items.get(i) == item) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position after the last item that doesn't come after the given one.
+     */
+    private int findInsertionPosition(T item) {
+        int low = 0;
+        int high = mItems.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mComparator.compare(mItems.get(middle), item) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -5,6 +5,9 @@ import android.os.Handler;
 import android.support.v17.leanback.widget.ArrayObjectAdapter;
 import android.support.v17.leanback.widget.Presenter;
 import android.support.v17.leanback.widget.PresenterSelector;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewParent;
 
 import com.hitherejoe.vineyard.R;
 import com.hitherejoe.vineyard.data.model.Option;
@@ -12,6 +15,7 @@ import com.hitherejoe.vineyard.ui.presenter.IconItemPresenter;
 import com.hitherejoe.vineyard.ui.widget.LoadingCardView;
 import com.hitherejoe.vineyard.ui.presenter.LoadingPresenter;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +25,7 @@ public abstract class PaginationAdapter extends ArrayObjectAdapter {
     public static final String KEY_TAG = "tag";
     public static final String KEY_ANCHOR = "anchor";
     public static final String KEY_NEXT_PAGE = "next_page";
+    public static final int DEFAULT_PREFETCH_DISTANCE = 4;
 
     private Context mContext;
     private Integer mNextPage;
@@ -31,7 +36,12 @@ public abstract class PaginationAdapter extends ArrayObjectAdapter {
     private String mRowTag;
     private String mAnchor;
     private int mLoadingIndicatorPosition;
-
+    private int mPrefetchDistance;
+    private boolean mIsLoadingPage;
+    private boolean mIsBuffering;
+    private List<Object> mBufferedItems;
+    private Handler mHandler;
+    private Runnable mShowLoadingIndicatorRunnable;
 
     public PaginationAdapter(Context context, Presenter presenter, String tag) {
         mContext = context;
@@ -39,6 +49,17 @@ public abstract class PaginationAdapter extends ArrayObjectAdapter {
         mLoadingPresenter = new LoadingPresenter();
         mIconItemPresenter = new IconItemPresenter();
         mLoadingIndicatorPosition = -1;
+        mPrefetchDistance = DEFAULT_PREFETCH_DISTANCE;
+        mBufferedItems = new ArrayList<>();
+        mHandler = new Handler();
+        mShowLoadingIndicatorRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mLoadingIndicatorPosition = size();
+                add(mLoadingIndicatorPosition, new LoadingCardView(mContext));
+                notifyItemRangeInserted(mLoadingIndicatorPosition, 1);
+            }
+        };
         mNextPage = 1;
         mRowTag = tag;
         setPresenterSelector();
@@ -52,6 +73,18 @@ public abstract class PaginationAdapter extends ArrayObjectAdapter {
         mNextPage = page;
     }
 
+    public int getNextPage() {
+        return mNextPage;
+    }
+
+    /**
+     * Sets how many items from the end of the list the user has to be for the page that has
+     * been loaded ahead of time to be shown.
+     */
+    public void setPrefetchDistance(int prefetchDistance) {
+        mPrefetchDistance = prefetchDistance;
+    }
+
     public void setPresenterSelector() {
         setPresenterSelector(new PresenterSelector() {
             @Override
@@ -75,17 +108,16 @@ public abstract class PaginationAdapter extends ArrayObjectAdapter {
     }
 
     public void showLoadingIndicator() {
-        new Handler().post(new Runnable() {
-            @Override
-            public void run() {
-                mLoadingIndicatorPosition = size();
-                add(mLoadingIndicatorPosition, new LoadingCardView(mContext));
-                notifyItemRangeInserted(mLoadingIndicatorPosition, 1);
-            }
-        });
+        mHandler.removeCallbacks(mShowLoadingIndicatorRunnable);
+        mHandler.post(mShowLoadingIndicatorRunnable);
     }
 
     public void removeLoadingIndicator() {
+        // The page may have been added before the indicator was due to be shown
+        mHandler.removeCallbacks(mShowLoadingIndicatorRunnable);
+        // Pages can be delivered more than once (e.g. stored copy then network), so the
+        // indicator may already have been removed
+        if (mLoadingIndicatorPosition == -1) return;
         removeItems(mLoadingIndicatorPosition, 1);
         notifyItemRangeRemoved(mLoadingIndicatorPosition, 1);
         mLoadingIndicatorPosition = -1;
@@ -95,16 +127,163 @@ public abstract class PaginationAdapter extends ArrayObjectAdapter {
         mAnchor = anchor;
     }
 
+    public String getAnchor() {
+        return mAnchor;
+    }
+
     public void addPosts(List<?> posts) {
-        if (posts.size() > 0) {
-            addAll(size(), posts);
-        } else {
-            mNextPage = 0;
+        if (posts.isEmpty()) return;
+        if (mIsBuffering) {
+            mBufferedItems.addAll(posts);
+            return;
+        }
+        showItems(posts);
+    }
+
+    /**
+     * Shows the items of the stored copy of a page, see removeStoredItems(). Adapters that can't
+     * tell items apart simply add them.
+     */
+    public void addStoredItems(List<?> items) {
+        addAllItems(items);
+    }
+
+    /**
+     * Called once the whole of a page has arrived from the API, to remove the items of the
+     * stored copy of the page (see addStoredItems()) that it no longer contains.
+     */
+    public void removeStoredItems() { }
+
+    /**
+     * Removes the given item from the page that is held back until the user reaches it, if it's
+     * there. Returns true if it was.
+     */
+    protected boolean removeBufferedItem(Object item) {
+        for (int i = 0; i < mBufferedItems.size(); i++) {
+            if (mBufferedItems.get(i) == item) {
+                mBufferedItems.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Shows items that are ready to be displayed, by default appending them to the list.
+     */
+    protected void showItems(List<?> items) {
+        // Pages are streamed in chunks, so keep the loading indicator after the items that
+        // have arrived so far until the page is complete
+        insertItems(mLoadingIndicatorPosition == -1 ? size() : mLoadingIndicatorPosition, items);
+    }
+
+    /**
+     * Inserts the given items at the given position, ahead of the loading indicator if it is
+     * shown.
+     */
+    protected void insertItems(int position, List<?> items) {
+        addAll(position, items);
+        if (mLoadingIndicatorPosition != -1 && position <= mLoadingIndicatorPosition) {
+            mLoadingIndicatorPosition += items.size();
         }
     }
 
+    @Override
+    public int removeItems(int position, int count) {
+        int removed = super.removeItems(position, count);
+        if (mLoadingIndicatorPosition > position) {
+            mLoadingIndicatorPosition -= Math.min(removed, mLoadingIndicatorPosition - position);
+        }
+        return removed;
+    }
+
+    /**
+     * Returns true if any items from the loaded pages are being shown.
+     */
+    protected boolean hasItems() {
+        return !getAllItems().isEmpty();
+    }
+
+    /**
+     * Returns true if the next page should be requested, which is as soon as the previous one
+     * has been shown so that there is always a page waiting to be appended.
+     */
     public boolean shouldLoadNextPage() {
-        return shouldShowLoadingIndicator() && mNextPage != 0;
+        return !mIsLoadingPage && !mIsBuffering && shouldShowLoadingIndicator() && mNextPage != 0;
+    }
+
+    /**
+     * Called when a request for the next page is made. The first page is shown as it arrives,
+     * while later pages are held back until the user gets near the end of the list.
+     */
+    public void startLoadingPage() {
+        mIsLoadingPage = true;
+        mIsBuffering = hasItems();
+        if (!mIsBuffering && shouldShowLoadingIndicator()) showLoadingIndicator();
+    }
+
+    /**
+     * Called once the whole of the requested page has been added.
+     */
+    public void finishLoadingPage() {
+        mIsLoadingPage = false;
+    }
+
+    /**
+     * Called when the request for the next page fails. Returns true if the page was being loaded
+     * in the background, in which case it will be requested again once the user reaches it and
+     * there's no need to show the error.
+     */
+    public boolean cancelLoadingPage() {
+        boolean isInBackground = mIsBuffering;
+        if (mIsLoadingPage && mIsBuffering) {
+            mBufferedItems.clear();
+            mIsBuffering = false;
+        }
+        mIsLoadingPage = false;
+        return isInBackground;
+    }
+
+    /**
+     * Appends the page that was loaded ahead of time if the item at the given position is within
+     * the prefetch distance of the end of the list. If the page is still being loaded, the rest
+     * of it is shown as it arrives, behind the loading indicator.
+     */
+    public void onItemSelected(int position) {
+        if (!mIsBuffering || position < size() - 1 - mPrefetchDistance) return;
+        mIsBuffering = false;
+        // Pages can be delivered more than once (e.g. stored copy then network), so subclasses
+        // should drop any duplicates as the items are shown
+        List<Object> items = new ArrayList<>(mBufferedItems);
+        mBufferedItems.clear();
+        addAllItems(items);
+        if (mIsLoadingPage && shouldShowLoadingIndicator()) showLoadingIndicator();
+    }
+
+    /**
+     * Same as onItemSelected(int), for the item shown by the given view holder.
+     */
+    public void onItemSelected(Presenter.ViewHolder itemViewHolder, Object item) {
+        onItemSelected(getPosition(itemViewHolder, item));
+    }
+
+    /**
+     * Returns the position of the item shown by the given view holder. This is taken from the
+     * list the view is in, rather than searching the adapter, as it is needed every time the
+     * selection moves.
+     */
+    public int getPosition(Presenter.ViewHolder itemViewHolder, Object item) {
+        // Cards may be wrapped (e.g. to draw their shadow), so find the view in the list itself
+        View view = itemViewHolder.view;
+        ViewParent parent = view.getParent();
+        while (parent instanceof View && !(parent instanceof RecyclerView)) {
+            view = (View) parent;
+            parent = view.getParent();
+        }
+        int position = parent instanceof RecyclerView
+                ? ((RecyclerView) parent).getChildAdapterPosition(view)
+                : RecyclerView.NO_POSITION;
+        return position != RecyclerView.NO_POSITION ? position : indexOf(item);
     }
 
     public Map<String, String> getAdapterOptions() {
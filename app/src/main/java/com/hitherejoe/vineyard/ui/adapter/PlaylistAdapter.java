@@ -0,0 +1,45 @@
+package com.hitherejoe.vineyard.ui.adapter;
+
+import android.support.v17.leanback.widget.ObjectAdapter;
+import android.support.v17.leanback.widget.Presenter;
+
+import com.hitherejoe.vineyard.data.model.Playlist;
+
+/**
+ * Shows the posts of a playlist straight from the playlist itself, rather than copying them into
+ * an ArrayObjectAdapter. Only the cards in view are ever bound, so a long playlist costs nothing
+ * more than a short one.
+ */
+public class PlaylistAdapter extends ObjectAdapter {
+
+    private final Playlist mPlaylist;
+    private int mSize;
+
+    public PlaylistAdapter(Presenter presenter, Playlist playlist) {
+        super(presenter);
+        mPlaylist = playlist;
+        mSize = playlist.size();
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public Object get(int position) {
+        return mPlaylist.get(position);
+    }
+
+    /**
+     * Shows any posts that have been added to the playlist since it was last updated. Posts are
+     * only ever appended to a playlist, so only those need binding.
+     */
+    public void notifyPostsAdded() {
+        int size = mPlaylist.size();
+        if (size <= mSize) return;
+        int positionStart = mSize;
+        mSize = size;
+        notifyItemRangeInserted(positionStart, size - positionStart);
+    }
+}
@@ -3,41 +3,20 @@ package com.hitherejoe.vineyard.ui.adapter;
 import android.content.Context;
 
 import com.hitherejoe.vineyard.data.model.Post;
-import com.hitherejoe.vineyard.ui.activity.PostGridActivity;
 import com.hitherejoe.vineyard.ui.presenter.CardPresenter;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-public class PostAdapter extends PaginationAdapter {
+/**
+ * Shows the posts of a feed in the order the feed returns them, which is also the order they are
+ * played in.
+ */
+public class PostAdapter extends IndexedPaginationAdapter<Post> {
 
     public PostAdapter(Context context, String tag) {
-        super(context, new CardPresenter(context), tag);
-    }
-
-    @Override
-    public void addAllItems(List<?> items) {
-        List<Post> currentPosts = getAllItems();
-        ArrayList<Post> posts = new ArrayList<>();
-        for (int i = 0; i < items.size(); i++) {
-            Object object = items.get(i);
-            if (object instanceof Post && !currentPosts.contains(object)) {
-                posts.add((Post) object);
-            }
-        }
-        Collections.sort(posts);
-        addPosts(posts);
+        super(context, new CardPresenter(context), tag, Post.class, null);
     }
 
     @Override
-    public List<Post> getAllItems() {
-        List<Object> itemList = getItems();
-        ArrayList<Post> posts = new ArrayList<>();
-        for (int i = 0; i < itemList.size(); i++) {
-            Object object = itemList.get(i);
-            if (object instanceof Post) posts.add((Post) object);
-        }
-        return posts;
+    protected String getKey(Post post) {
+        return post.postId;
     }
 }
@@ -1,11 +1,9 @@
 package com.hitherejoe.vineyard.ui.fragment;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v17.leanback.app.BackgroundManager;
 import android.support.v17.leanback.app.BrowseFragment;
 import android.support.v17.leanback.widget.ArrayObjectAdapter;
@@ -19,19 +17,17 @@ import android.support.v17.leanback.widget.PresenterSelector;
 import android.support.v17.leanback.widget.Row;
 import android.support.v17.leanback.widget.RowPresenter;
 import android.support.v4.content.ContextCompat;
-import android.util.DisplayMetrics;
 import android.view.View;
 import android.widget.Toast;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.animation.GlideAnimation;
-import com.bumptech.glide.request.target.SimpleTarget;
 import com.hitherejoe.vineyard.R;
 import com.hitherejoe.vineyard.VineyardApplication;
 import com.hitherejoe.vineyard.data.BusEvent;
 import com.hitherejoe.vineyard.data.DataManager;
 import com.hitherejoe.vineyard.data.local.PreferencesHelper;
+import com.hitherejoe.vineyard.data.model.Feed;
 import com.hitherejoe.vineyard.data.model.Option;
+import com.hitherejoe.vineyard.data.model.Playlist;
 import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.data.remote.VineyardService.PostResponse;
 import com.hitherejoe.vineyard.ui.activity.BaseActivity;
@@ -42,18 +38,18 @@ import com.hitherejoe.vineyard.ui.adapter.OptionsAdapter;
 import com.hitherejoe.vineyard.ui.adapter.PaginationAdapter;
 import com.hitherejoe.vineyard.ui.adapter.PostAdapter;
 import com.hitherejoe.vineyard.ui.presenter.IconHeaderItemPresenter;
+import com.hitherejoe.vineyard.ui.presenter.ThumbnailPreloader;
+import com.hitherejoe.vineyard.ui.widget.BackgroundEngine;
+import com.hitherejoe.vineyard.ui.widget.PreviewPlayerManager;
 import com.hitherejoe.vineyard.util.NetworkUtil;
 import com.hitherejoe.vineyard.util.ToastFactory;
 import com.squareup.otto.Bus;
 import com.squareup.otto.Subscribe;
 
-import java.net.URI;
-import java.util.ArrayList;
 import java.util.Map;
 
 import javax.inject.Inject;
 
-import rx.Observable;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
@@ -62,21 +58,19 @@ import timber.log.Timber;
 
 public class MainFragment extends BrowseFragment {
 
-    private static final int BACKGROUND_UPDATE_DELAY = 300;
-
+    @Inject BackgroundEngine mBackgroundEngine;
     @Inject Bus mEventBus;
     @Inject CompositeSubscription mCompositeSubscription;
     @Inject DataManager mDataManager;
+    @Inject PreviewPlayerManager mPreviewPlayerManager;
     private PreferencesHelper mPreferencesHelper;
 
     private ArrayObjectAdapter mRowsAdapter;
     private BackgroundManager mBackgroundManager;
-    private DisplayMetrics mMetrics;
     private Drawable mDefaultBackground;
-    private Handler mHandler;
     private Option mAutoLoopOption;
     private OptionsAdapter mOptionsAdapter;
-    private Runnable mBackgroundRunnable;
+    private ThumbnailPreloader mThumbnailPreloader;
 
     private String mPopularText;
     private String mEditorsPicksText;
@@ -93,7 +87,7 @@ public class MainFragment extends BrowseFragment {
         mPreferencesHelper =
                 VineyardApplication.get(getActivity()).getComponent().preferencesHelper();
         mRowsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
-        mHandler = new Handler();
+        mThumbnailPreloader = new ThumbnailPreloader(getActivity());
         mPopularText = getString(R.string.header_text_popular);
         mEditorsPicksText = getString(R.string.header_text_editors_picks);
         mEventBus.register(this);
@@ -108,10 +102,7 @@ public class MainFragment extends BrowseFragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (mBackgroundRunnable != null) {
-            mHandler.removeCallbacks(mBackgroundRunnable);
-            mBackgroundRunnable = null;
-        }
+        if (mThumbnailPreloader != null) mThumbnailPreloader.cancel();
         mBackgroundManager = null;
         mCompositeSubscription.unsubscribe();
         mEventBus.unregister(this);
@@ -126,7 +117,10 @@ public class MainFragment extends BrowseFragment {
     @Override
     public void onStop() {
         super.onStop();
+        mBackgroundEngine.cancel(mBackgroundManager);
         mBackgroundManager.release();
+        // The manager outlives this screen, so it mustn't keep hold of the previews on it
+        mPreviewPlayerManager.release();
         mIsStopping = true;
     }
 
@@ -143,25 +137,6 @@ public class MainFragment extends BrowseFragment {
         return mIsStopping;
     }
 
-    protected void updateBackground(String uri) {
-        int width = mMetrics.widthPixels;
-        int height = mMetrics.heightPixels;
-        Glide.with(getActivity())
-                .load(uri)
-                .asBitmap()
-                .centerCrop()
-                .error(mDefaultBackground)
-                .into(new SimpleTarget<Bitmap>(width, height) {
-                    @Override
-                    public void onResourceReady(Bitmap resource,
-                                                GlideAnimation<? super Bitmap>
-                                                        glideAnimation) {
-                        mBackgroundManager.setBitmap(resource);
-                    }
-                });
-        if (mBackgroundRunnable != null) mHandler.removeCallbacks(mBackgroundRunnable);
-    }
-
     private void setupUIElements() {
         setBadgeDrawable(ContextCompat.getDrawable(getActivity(), R.drawable.banner_shadow));
         setHeadersState(HEADERS_ENABLED);
@@ -223,51 +198,44 @@ public class MainFragment extends BrowseFragment {
     private void prepareBackgroundManager() {
         mBackgroundManager = BackgroundManager.getInstance(getActivity());
         mBackgroundManager.attach(getActivity().getWindow());
+        mBackgroundManager.setColor(ContextCompat.getColor(getActivity(), R.color.bg_grey));
         mDefaultBackground =
                 new ColorDrawable(ContextCompat.getColor(getActivity(), R.color.bg_grey));
-        mBackgroundManager.setColor(ContextCompat.getColor(getActivity(), R.color.bg_grey));
-        mMetrics = new DisplayMetrics();
-        getActivity().getWindowManager().getDefaultDisplay().getMetrics(mMetrics);
-    }
-
-    private void startBackgroundTimer(final URI backgroundURI) {
-        if (mBackgroundRunnable != null) mHandler.removeCallbacks(mBackgroundRunnable);
-        mBackgroundRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (backgroundURI != null) updateBackground(backgroundURI.toString());
-            }
-        };
-        mHandler.postDelayed(mBackgroundRunnable, BACKGROUND_UPDATE_DELAY);
     }
 
     private void addPostLoadSubscription(final PostAdapter adapter) {
-        if (adapter.shouldShowLoadingIndicator()) adapter.showLoadingIndicator();
-
         Map<String, String> options = adapter.getAdapterOptions();
-        String tag = options.get(PaginationAdapter.KEY_TAG);
         final String anchor = options.get(PaginationAdapter.KEY_ANCHOR);
         String nextPage = options.get(PaginationAdapter.KEY_NEXT_PAGE);
-
-        Observable<PostResponse> observable;
-        if (tag.equals(mPopularText)) {
-            observable = mDataManager.getPopularPosts(nextPage, anchor);
-        } else if (tag.equals(mEditorsPicksText)) {
-            observable = mDataManager.getEditorsPicksPosts(nextPage, anchor);
-        } else {
-            observable = mDataManager.getPostsByTag(tag, nextPage, anchor);
+        Feed feed = getFeed(adapter);
+        adapter.startLoadingPage();
+
+        // Pages that were loaded recently can be shown without waiting for a request
+        PostResponse cachedPage = mDataManager.peekPosts(feed, nextPage, anchor);
+        if (cachedPage != null) {
+            onPageLoaded(adapter, cachedPage, anchor);
+            adapter.finishLoadingPage();
+            return;
         }
 
-        mCompositeSubscription.add(observable
+        mCompositeSubscription.add(mDataManager.getPosts(feed, nextPage, anchor)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribeOn(Schedulers.io())
                 .unsubscribeOn(Schedulers.io())
                 .subscribe(new Subscriber<PostResponse>() {
                     @Override
-                    public void onCompleted() { }
+                    public void onCompleted() {
+                        // Only now is the page from the API complete, the stored copy of it may
+                        // have been shown before it arrived
+                        adapter.finishLoadingPage();
+                    }
 
                     @Override
                     public void onError(Throwable e) {
+                        if (adapter.cancelLoadingPage()) {
+                            Timber.e(e, "There was an error prefetching the next page");
+                            return;
+                        }
                         adapter.removeLoadingIndicator();
                         if (adapter.size() == 0) {
                             adapter.showTryAgainCard();
@@ -283,18 +251,41 @@ public class MainFragment extends BrowseFragment {
 
                     @Override
                     public void onNext(PostResponse postResponse) {
-                        adapter.removeLoadingIndicator();
-                        if (adapter.size() == 0 && postResponse.data.records.isEmpty()) {
-                            adapter.showReloadCard();
-                        } else {
-                            if (anchor == null) adapter.setAnchor(postResponse.data.anchorStr);
-                            adapter.setNextPage(postResponse.data.nextPage);
-                            adapter.addAllItems(postResponse.data.records);
-                        }
+                        onPageLoaded(adapter, postResponse, anchor);
                     }
                 }));
     }
 
+    private Feed getFeed(PostAdapter adapter) {
+        String tag = adapter.getAdapterOptions().get(PaginationAdapter.KEY_TAG);
+        if (tag.equals(mPopularText)) {
+            return Feed.popular();
+        } else if (tag.equals(mEditorsPicksText)) {
+            return Feed.editorsPicks();
+        }
+        return Feed.tag(tag);
+    }
+
+    private void onPageLoaded(PostAdapter adapter, PostResponse postResponse, String anchor) {
+        if (postResponse.data.partial) {
+            adapter.addAllItems(postResponse.data.records);
+            return;
+        }
+        adapter.removeLoadingIndicator();
+        if (adapter.size() == 0 && postResponse.data.records.isEmpty()) {
+            adapter.showReloadCard();
+        } else {
+            if (anchor == null) adapter.setAnchor(postResponse.data.anchorStr);
+            adapter.setNextPage(postResponse.data.nextPage);
+            if (postResponse.data.stored) {
+                adapter.addStoredItems(postResponse.data.records);
+            } else {
+                adapter.addAllItems(postResponse.data.records);
+                adapter.removeStoredItems();
+            }
+        }
+    }
+
     private OnItemViewClickedListener mOnItemViewClickedListener = new OnItemViewClickedListener() {
         @Override
         public void onItemClicked(Presenter.ViewHolder itemViewHolder, Object item,
@@ -302,11 +293,10 @@ public class MainFragment extends BrowseFragment {
             if (item instanceof Post) {
                 if (NetworkUtil.isNetworkConnected(getActivity())) {
                     Post post = (Post) item;
-                    int index = mRowsAdapter.indexOf(row);
-                    PostAdapter adapter =
-                            ((PostAdapter) ((ListRow) mRowsAdapter.get(index)).getAdapter());
-                    ArrayList<Post> postList = (ArrayList<Post>) adapter.getAllItems();
-                    startActivity(PlaybackActivity.newStartIntent(getActivity(), post, postList));
+                    PostAdapter adapter = (PostAdapter) ((ListRow) row).getAdapter();
+                    Playlist playlist = mDataManager.createPlaylist(getFeed(adapter),
+                            adapter.getAllItems(), adapter.getAnchor(), adapter.getNextPage());
+                    startActivity(PlaybackActivity.newStartIntent(getActivity(), post, playlist));
                 } else {
                     ToastFactory.createWifiErrorToast(getActivity()).show();
                 }
@@ -314,9 +304,7 @@ public class MainFragment extends BrowseFragment {
                 Option option = (Option) item;
                 if (option.title.equals(getString(R.string.title_no_videos)) ||
                         option.title.equals(getString(R.string.title_oops))) {
-                    int index = mRowsAdapter.indexOf(row);
-                    PostAdapter adapter =
-                            ((PostAdapter) ((ListRow) mRowsAdapter.get(index)).getAdapter());
+                    PostAdapter adapter = (PostAdapter) ((ListRow) row).getAdapter();
                     adapter.removeReloadCard();
                     addPostLoadSubscription(adapter);
                 } else {
@@ -332,13 +320,15 @@ public class MainFragment extends BrowseFragment {
                                    RowPresenter.ViewHolder rowViewHolder, Row row) {
             if (item instanceof Post) {
                 String backgroundUrl = ((Post) item).thumbnailUrl;
-                if (backgroundUrl != null) startBackgroundTimer(URI.create(backgroundUrl));
-                int index = mRowsAdapter.indexOf(row);
-                PostAdapter adapter =
-                        ((PostAdapter) ((ListRow) mRowsAdapter.get(index)).getAdapter());
-                if (adapter.get(adapter.size() - 1).equals(item) && adapter.shouldLoadNextPage()) {
-                    addPostLoadSubscription(adapter);
+                if (backgroundUrl != null) {
+                    mBackgroundEngine.showBackground(
+                            mBackgroundManager, backgroundUrl, mDefaultBackground);
                 }
+                PostAdapter adapter = (PostAdapter) ((ListRow) row).getAdapter();
+                int position = adapter.getPosition(itemViewHolder, item);
+                adapter.onItemSelected(position);
+                mThumbnailPreloader.preload(adapter, position);
+                if (adapter.shouldLoadNextPage()) addPostLoadSubscription(adapter);
             }
         }
     };
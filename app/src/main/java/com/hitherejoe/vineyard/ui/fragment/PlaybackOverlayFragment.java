@@ -8,6 +8,7 @@ import android.media.session.MediaController;
 import android.media.session.PlaybackState;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v17.leanback.widget.AbstractDetailsDescriptionPresenter;
 import android.support.v17.leanback.widget.Action;
@@ -25,6 +26,7 @@ import android.support.v17.leanback.widget.PlaybackControlsRow.SkipNextAction;
 import android.support.v17.leanback.widget.PlaybackControlsRow.SkipPreviousAction;
 import android.support.v17.leanback.widget.PlaybackControlsRowPresenter;
 import android.support.v4.content.ContextCompat;
+import android.view.Choreographer;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.drawable.GlideDrawable;
@@ -34,13 +36,15 @@ import com.hitherejoe.vineyard.R;
 import com.hitherejoe.vineyard.data.BusEvent;
 import com.hitherejoe.vineyard.data.DataManager;
 import com.hitherejoe.vineyard.data.local.PreferencesHelper;
+import com.hitherejoe.vineyard.data.model.Playlist;
 import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.ui.activity.BaseActivity;
 import com.hitherejoe.vineyard.ui.activity.PlaybackActivity;
-import com.hitherejoe.vineyard.ui.presenter.CardPresenter;
+import com.hitherejoe.vineyard.ui.adapter.PlaylistAdapter;
+import com.hitherejoe.vineyard.ui.presenter.ThumbnailCardPresenter;
 import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
 
-import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -57,9 +61,6 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     private static final int BACKGROUND_TYPE = PlaybackOverlayFragment.BG_LIGHT;
     private static final int CARD_WIDTH = 150;
     private static final int CARD_HEIGHT = 240;
-    private static final int DEFAULT_UPDATE_PERIOD = 1000;
-    private static final int UPDATE_PERIOD = 16;
-    private static final int SIMULATED_BUFFERED_TIME = 10000;
     private static final int CLICK_TRACKING_DELAY = 1000;
     private static final int INITIAL_SPEED = 10000;
 
@@ -67,9 +68,10 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     public static final String CUSTOM_ACTION_SKIP_VIDEO = "custom_action_skip_video";
     public static final int STATE_LOOPING = 2323;
 
-    private ArrayList<Post> mItems;
+    private Playlist mPlaylist;
 
     private ArrayObjectAdapter mRowsAdapter;
+    private PlaylistAdapter mPlaylistRowAdapter;
     private ArrayObjectAdapter mPrimaryActionsAdapter;
     private ArrayObjectAdapter mSecondaryActionsAdapter;
     private Handler mClickTrackingHandler;
@@ -80,8 +82,8 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     private RepeatAction mRepeatAction;
     private SkipNextAction mSkipNextAction;
     private SkipPreviousAction mSkipPreviousAction;
-    private Handler mHandler;
-    private Runnable mRunnable;
+    private ProgressClock mProgressClock;
+    private SimpleTarget<GlideDrawable> mVideoImageTarget;
     private int mFfwRwdSpeed;
     private Timer mClickTrackingTimer;
     private int mClickCount;
@@ -102,19 +104,41 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
         mFfwRwdSpeed = INITIAL_SPEED;
 
         mClickTrackingHandler = new Handler();
-        mItems = new ArrayList<>();
         mSelectedPost = getActivity()
                 .getIntent().getParcelableExtra(PlaybackActivity.POST);
-        mHandler = new Handler();
-        mItems = getActivity().getIntent().getParcelableArrayListExtra(PlaybackActivity.POST_LIST);
-        if (mItems == null || mSelectedPost == null) {
-            throw new IllegalArgumentException(
-                    "PlaybackOverlayFragment requires both a Post object and list of posts!");
+        mProgressClock = new ProgressClock();
+        if (mSelectedPost == null) {
+            throw new IllegalArgumentException("PlaybackOverlayFragment requires a Post object!");
         }
+        mPlaylist = PlaybackActivity.getPlaylist(mDataManager, getActivity().getIntent());
 
         setBackgroundType(BACKGROUND_TYPE);
         setFadingEnabled(false);
+        setFadeCompleteListener(new OnFadeCompleteListener() {
+            @Override
+            public void onFadeInComplete() {
+                mProgressClock.setVisible(true);
+            }
+
+            @Override
+            public void onFadeOutComplete() {
+                mProgressClock.setVisible(false);
+            }
+        });
         setupRows();
+        mEventBus.register(this);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mEventBus.unregister(this);
+    }
+
+    @Subscribe
+    public void onPlaylistUpdated(BusEvent.PlaylistUpdated event) {
+        if (!event.handle.equals(mPlaylist.getHandle())) return;
+        mPlaylistRowAdapter.notifyPostsAdded();
     }
 
     // TODO: There's currently a bug here, so we need to Override both onAttach methods
@@ -131,9 +155,15 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
         setupMediaController();
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        mProgressClock.setVisible(true);
+    }
+
     @Override
     public void onStop() {
-        stopProgressAutomation();
+        mProgressClock.setVisible(false);
         mRowsAdapter = null;
         super.onStop();
     }
@@ -153,7 +183,9 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     }
 
     protected void updateVideoImage(String uri) {
-        Glide.with(getActivity())
+        // When skipping through posts, only the image of the one skipped to is wanted
+        if (mVideoImageTarget != null) Glide.clear(mVideoImageTarget);
+        mVideoImageTarget = Glide.with(getActivity())
                 .load(uri)
                 .centerCrop()
                 .into(new SimpleTarget<GlideDrawable>(CARD_WIDTH, CARD_HEIGHT) {
@@ -161,7 +193,9 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
                     public void onResourceReady(GlideDrawable resource,
                                                 GlideAnimation<? super GlideDrawable> glideAnimation) {
                         mPlaybackControlsRow.setImageDrawable(resource);
-                        mRowsAdapter.notifyArrayItemRangeChanged(0, mRowsAdapter.size());
+                        // Only the controls row shows the image
+                        int index = mRowsAdapter.indexOf(mPlaybackControlsRow);
+                        if (index >= 0) mRowsAdapter.notifyArrayItemRangeChanged(index, 1);
                     }
                 });
     }
@@ -278,41 +312,10 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
     }
 
     private void addOtherRows() {
-        ArrayObjectAdapter listRowAdapter = new ArrayObjectAdapter(new CardPresenter(getActivity()));
-        listRowAdapter.addAll(0, mItems);
+        // Thumbnails only, as a preview would compete with the video for a decoder
+        mPlaylistRowAdapter = new PlaylistAdapter(new ThumbnailCardPresenter(), mPlaylist);
         HeaderItem header = new HeaderItem(0, getResources().getString(R.string.related_posts));
-        mRowsAdapter.add(new ListRow(header, listRowAdapter));
-
-    }
-
-    private int getUpdatePeriod() {
-        if (getView() == null || mPlaybackControlsRow.getTotalTime() <= 0) {
-            return DEFAULT_UPDATE_PERIOD;
-        }
-        return Math.max(UPDATE_PERIOD, mPlaybackControlsRow.getTotalTime() / getView().getWidth());
-    }
-
-    private void startProgressAutomation() {
-        if (mRunnable == null) {
-            mRunnable = new Runnable() {
-                @Override
-                public void run() {
-                    int updatePeriod = getUpdatePeriod();
-                    int currentTime = mPlaybackControlsRow.getCurrentTime() + updatePeriod;
-                    int totalTime = mPlaybackControlsRow.getTotalTime();
-                    mPlaybackControlsRow.setCurrentTime(currentTime);
-                    mPlaybackControlsRow.setBufferedProgress(currentTime + SIMULATED_BUFFERED_TIME);
-
-                    if (totalTime > 0 && totalTime <= currentTime) {
-                        stopProgressAutomation();
-                        next(false);
-                    } else {
-                        mHandler.postDelayed(this, updatePeriod);
-                    }
-                }
-            };
-            mHandler.postDelayed(mRunnable, getUpdatePeriod());
-        }
+        mRowsAdapter.add(new ListRow(header, mPlaylistRowAdapter));
     }
 
     private void next(boolean wasSkipPressed) {
@@ -349,12 +352,6 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
         mMediaController.getTransportControls().rewind();
     }
 
-    private void stopProgressAutomation() {
-        if (mHandler != null && mRunnable != null) {
-            mHandler.removeCallbacks(mRunnable);
-            mRunnable = null;
-        }
-    }
 
     private void startClickTrackingTimer() {
         if (mClickTrackingTimer != null) {
@@ -397,17 +394,90 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
         }
     }
 
+    /**
+     * Moves the seek bar along with playback. The position is worked out from the last one the
+     * player reported rather than counted here, so that it doesn't drift, and it's only updated
+     * once a frame while the video is playing and the controls can be seen.
+     */
+    private class ProgressClock implements Choreographer.FrameCallback {
+
+        private PlaybackState mState;
+        private boolean mIsVisible;
+        private boolean mIsTicking;
+
+        ProgressClock() {
+            // The controls are shown until playback starts
+            mIsVisible = true;
+        }
+
+        void setPlaybackState(PlaybackState state) {
+            mState = state;
+            update();
+            updateTicking();
+        }
+
+        void setVisible(boolean isVisible) {
+            mIsVisible = isVisible;
+            if (isVisible) update();
+            updateTicking();
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mIsTicking = false;
+            update();
+            updateTicking();
+        }
+
+        private boolean isPlaying() {
+            return mState != null && (mState.getState() == PlaybackState.STATE_PLAYING
+                    || mState.getState() == STATE_LOOPING);
+        }
+
+        private void updateTicking() {
+            boolean shouldTick = mIsVisible && isPlaying();
+            if (shouldTick && !mIsTicking) {
+                Choreographer.getInstance().postFrameCallback(this);
+            } else if (!shouldTick && mIsTicking) {
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+            mIsTicking = shouldTick;
+        }
+
+        private void update() {
+            if (mState == null) return;
+            long position = mState.getPosition();
+            if (isPlaying()) {
+                long elapsed = SystemClock.elapsedRealtime() - mState.getLastPositionUpdateTime();
+                position += (long) (elapsed * mState.getPlaybackSpeed());
+            }
+            int totalTime = mPlaybackControlsRow.getTotalTime();
+            if (totalTime > 0) {
+                // A looping video goes straight back to the start, which the player only
+                // reports once it has happened, see PlaybackActivity.scheduleLoopCheck()
+                position = mIsAutoLoopEnabled ? position % totalTime
+                        : Math.min(position, totalTime);
+            }
+            // The row only redraws its seek bar when a value changes
+            if (mPlaybackControlsRow.getCurrentTime() != position) {
+                mPlaybackControlsRow.setCurrentTime((int) position);
+            }
+            int bufferedPosition = (int) mState.getBufferedPosition();
+            if (mPlaybackControlsRow.getBufferedProgress() != bufferedPosition) {
+                mPlaybackControlsRow.setBufferedProgress(bufferedPosition);
+            }
+        }
+    }
+
     private class MediaControllerCallback extends MediaController.Callback {
 
         @Override
         public void onPlaybackStateChanged(@NonNull PlaybackState state) {
             if (state.getState() == PlaybackState.STATE_PLAYING
                     && mCurrentPlaybackState == PlaybackState.STATE_PLAYING) {
-                startProgressAutomation();
                 setFadingEnabled(true);
             } else if (state.getState() == PlaybackState.STATE_PLAYING) {
                 mCurrentPlaybackState = PlaybackState.STATE_PLAYING;
-                startProgressAutomation();
                 setFadingEnabled(true);
                 mPlayPauseAction.setIndex(PlayPauseAction.PAUSE);
                 mPlayPauseAction.setIcon(mPlayPauseAction.getDrawable(PlayPauseAction.PAUSE));
@@ -415,7 +485,6 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
             } else if (state.getState() == PlaybackState.STATE_PAUSED
                     && mCurrentPlaybackState != PlaybackState.STATE_PAUSED) {
                 mCurrentPlaybackState = PlaybackState.STATE_PAUSED;
-                stopProgressAutomation();
                 setFadingEnabled(false);
                 mPlayPauseAction.setIndex(PlayPauseAction.PLAY);
                 mPlayPauseAction.setIcon(mPlayPauseAction.getDrawable(PlayPauseAction.PLAY));
@@ -426,24 +495,13 @@ public class PlaybackOverlayFragment extends android.support.v17.leanback.app.Pl
                 notifyChanged(mSkipNextAction);
             } else if (state.getState() == PlaybackState.STATE_SKIPPING_TO_PREVIOUS) {
                 mCurrentPlaybackState = PlaybackState.STATE_SKIPPING_TO_PREVIOUS;
-                startProgressAutomation();
                 setFadingEnabled(true);
                 notifyChanged(mSkipPreviousAction);
             } else if (state.getState() == STATE_LOOPING) {
                 mCurrentPlaybackState = STATE_LOOPING;
-                startProgressAutomation();
             }
 
-            int currentTime;
-
-            if (state.getState() == PlaybackState.STATE_PAUSED
-                    || state.getState() == PlaybackState.STATE_PLAYING) {
-                currentTime = mPlaybackControlsRow.getCurrentTime();
-            } else {
-                currentTime = (int) state.getPosition();
-            }
-            mPlaybackControlsRow.setCurrentTime(currentTime);
-            mPlaybackControlsRow.setBufferedProgress(currentTime + SIMULATED_BUFFERED_TIME);
+            mProgressClock.setPlaybackState(state);
         }
 
         @Override
@@ -1,10 +1,8 @@
 package com.hitherejoe.vineyard.ui.fragment;
 
-import android.graphics.Bitmap;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v17.leanback.app.BackgroundManager;
 import android.support.v17.leanback.app.VerticalGridFragment;
 import android.support.v17.leanback.widget.OnItemViewClickedListener;
@@ -14,16 +12,14 @@ import android.support.v17.leanback.widget.Row;
 import android.support.v17.leanback.widget.RowPresenter;
 import android.support.v17.leanback.widget.VerticalGridPresenter;
 import android.support.v4.content.ContextCompat;
-import android.util.DisplayMetrics;
 import android.view.View;
 import android.widget.Toast;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.animation.GlideAnimation;
-import com.bumptech.glide.request.target.SimpleTarget;
 import com.hitherejoe.vineyard.R;
 import com.hitherejoe.vineyard.data.DataManager;
+import com.hitherejoe.vineyard.data.model.Feed;
 import com.hitherejoe.vineyard.data.model.Option;
+import com.hitherejoe.vineyard.data.model.Playlist;
 import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.data.model.Tag;
 import com.hitherejoe.vineyard.data.model.User;
@@ -33,16 +29,16 @@ import com.hitherejoe.vineyard.ui.activity.PlaybackActivity;
 import com.hitherejoe.vineyard.ui.activity.SearchActivity;
 import com.hitherejoe.vineyard.ui.adapter.PaginationAdapter;
 import com.hitherejoe.vineyard.ui.adapter.PostAdapter;
+import com.hitherejoe.vineyard.ui.presenter.ThumbnailPreloader;
+import com.hitherejoe.vineyard.ui.widget.BackgroundEngine;
+import com.hitherejoe.vineyard.ui.widget.PreviewPlayerManager;
 import com.hitherejoe.vineyard.util.NetworkUtil;
 import com.hitherejoe.vineyard.util.ToastFactory;
 
-import java.net.URI;
-import java.util.ArrayList;
 import java.util.Map;
 
 import javax.inject.Inject;
 
-import rx.Observable;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
@@ -55,18 +51,17 @@ public class PostGridFragment extends VerticalGridFragment {
     public static final String TYPE_USER = "user";
     public static final String TYPE_TAG = "tag";
 
+    @Inject BackgroundEngine mBackgroundEngine;
     @Inject CompositeSubscription mCompositeSubscription;
     @Inject DataManager mDataManager;
+    @Inject PreviewPlayerManager mPreviewPlayerManager;
 
     private static final int NUM_COLUMNS = 5;
-    private static final int BACKGROUND_UPDATE_DELAY = 300;
 
     private BackgroundManager mBackgroundManager;
-    private DisplayMetrics mMetrics;
     private Drawable mDefaultBackground;
-    private Handler mHandler;
     private PostAdapter mPostAdapter;
-    private Runnable mBackgroundRunnable;
+    private ThumbnailPreloader mThumbnailPreloader;
     private String mSelectedType;
     private boolean mIsStopping;
 
@@ -100,10 +95,7 @@ public class PostGridFragment extends VerticalGridFragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (mBackgroundRunnable != null) {
-            mHandler.removeCallbacks(mBackgroundRunnable);
-            mBackgroundRunnable = null;
-        }
+        mThumbnailPreloader.cancel();
         mBackgroundManager = null;
         mCompositeSubscription.unsubscribe();
     }
@@ -117,7 +109,10 @@ public class PostGridFragment extends VerticalGridFragment {
     @Override
     public void onStop() {
         super.onStop();
+        mBackgroundEngine.cancel(mBackgroundManager);
         mBackgroundManager.release();
+        // The manager outlives this screen, so it mustn't keep hold of the previews on it
+        mPreviewPlayerManager.release();
         mIsStopping = true;
     }
 
@@ -130,8 +125,6 @@ public class PostGridFragment extends VerticalGridFragment {
         mBackgroundManager.attach(getActivity().getWindow());
         mDefaultBackground =
                 new ColorDrawable(ContextCompat.getColor(getActivity(), R.color.bg_light_grey));
-        mMetrics = new DisplayMetrics();
-        getActivity().getWindowManager().getDefaultDisplay().getMetrics(mMetrics);
     }
 
     public void setTag(Object selectedItem) {
@@ -146,6 +139,8 @@ public class PostGridFragment extends VerticalGridFragment {
             setTitle(String.format("#%s", tag));
         }
         mPostAdapter = new PostAdapter(getActivity(), tag);
+        // Show the next page while there are still a couple of rows to go
+        mPostAdapter.setPrefetchDistance(NUM_COLUMNS * 2);
         setAdapter(mPostAdapter);
         addPageLoadSubscription();
     }
@@ -154,8 +149,9 @@ public class PostGridFragment extends VerticalGridFragment {
         VerticalGridPresenter gridPresenter = new VerticalGridPresenter();
         gridPresenter.setNumberOfColumns(NUM_COLUMNS);
         setGridPresenter(gridPresenter);
-
-        mHandler = new Handler();
+        mThumbnailPreloader = new ThumbnailPreloader(getActivity());
+        // A couple of rows either side of the focused card
+        mThumbnailPreloader.setPreloadDistance(NUM_COLUMNS * 2);
 
         setOnSearchClickedListener(new View.OnClickListener() {
             @Override
@@ -168,89 +164,83 @@ public class PostGridFragment extends VerticalGridFragment {
         setOnItemViewSelectedListener(mOnItemViewSelectedListener);
     }
 
-    private void startBackgroundTimer(final URI backgroundURI) {
-        if (mBackgroundRunnable != null) mHandler.removeCallbacks(mBackgroundRunnable);
-        mBackgroundRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (backgroundURI != null) updateBackground(backgroundURI.toString());
-            }
-        };
-        mHandler.postDelayed(mBackgroundRunnable, BACKGROUND_UPDATE_DELAY);
-    }
-
-    protected void updateBackground(String uri) {
-        int width = mMetrics.widthPixels;
-        int height = mMetrics.heightPixels;
-        Glide.with(getActivity())
-                .load(uri)
-                .asBitmap()
-                .centerCrop()
-                .error(mDefaultBackground)
-                .into(new SimpleTarget<Bitmap>(width, height) {
-                    @Override
-                    public void onResourceReady(Bitmap resource,
-                                                GlideAnimation<? super Bitmap>
-                                                        glideAnimation) {
-                        mBackgroundManager.setBitmap(resource);
-                    }
-                });
-        if (mBackgroundRunnable != null) mHandler.removeCallbacks(mBackgroundRunnable);
-    }
-
     private void addPageLoadSubscription() {
-        if (mPostAdapter.shouldShowLoadingIndicator()) mPostAdapter.showLoadingIndicator();
-
         Map<String, String> options = mPostAdapter.getAdapterOptions();
-        String tag = options.get(PaginationAdapter.KEY_TAG);
         final String anchor = options.get(PaginationAdapter.KEY_ANCHOR);
         String nextPage = options.get(PaginationAdapter.KEY_NEXT_PAGE);
-
-        Observable<VineyardService.PostResponse> observable = null;
-
-        if (mSelectedType.equals(TYPE_TAG)) {
-            observable = mDataManager.getPostsByTag(tag, nextPage, anchor);
-        } else if (mSelectedType.equals(TYPE_USER)) {
-            observable = mDataManager.getPostsByUser(tag, nextPage, anchor);
+        Feed feed = getFeed();
+        mPostAdapter.startLoadingPage();
+
+        // Pages that were loaded recently can be shown without waiting for a request
+        VineyardService.PostResponse cachedPage = mDataManager.peekPosts(feed, nextPage, anchor);
+        if (cachedPage != null) {
+            onPageLoaded(cachedPage, anchor);
+            mPostAdapter.finishLoadingPage();
+            return;
         }
-        if (observable != null) {
-            mCompositeSubscription.add(observable
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribeOn(Schedulers.io())
-                    .unsubscribeOn(Schedulers.io())
-                    .subscribe(new Subscriber<VineyardService.PostResponse>() {
-                        @Override
-                        public void onCompleted() { }
 
-                        @Override
-                        public void onError(Throwable e) {
-                            mPostAdapter.removeLoadingIndicator();
-                            if (mPostAdapter.size() == 0) {
-                                mPostAdapter.showTryAgainCard();
-                            } else {
-                                Toast.makeText(
-                                        getActivity(),
-                                        getString(R.string.error_message_loading_more_posts),
-                                        Toast.LENGTH_SHORT
-                                ).show();
-                            }
-                            Timber.e("There was an error loading the posts", e);
-                        }
+        mCompositeSubscription.add(mDataManager.getPosts(feed, nextPage, anchor)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribeOn(Schedulers.io())
+                .unsubscribeOn(Schedulers.io())
+                .subscribe(new Subscriber<VineyardService.PostResponse>() {
+                    @Override
+                    public void onCompleted() {
+                        // Only now is the page from the API complete, the stored copy of it
+                        // may have been shown before it arrived
+                        mPostAdapter.finishLoadingPage();
+                    }
 
-                        @Override
-                        public void onNext(VineyardService.PostResponse postResponse) {
-                            mPostAdapter.removeLoadingIndicator();
-                            if (mPostAdapter.size() == 0 && postResponse.data.records.isEmpty()) {
-                                mPostAdapter.showReloadCard();
-                            } else {
-                                if (anchor == null) {
-                                    mPostAdapter.setAnchor(postResponse.data.anchorStr);
-                                }
-                                mPostAdapter.setNextPage(postResponse.data.nextPage);
-                                mPostAdapter.addAllItems(postResponse.data.records);
-                            }
+                    @Override
+                    public void onError(Throwable e) {
+                        if (mPostAdapter.cancelLoadingPage()) {
+                            Timber.e(e, "There was an error prefetching the next page");
+                            return;
+                        }
+                        mPostAdapter.removeLoadingIndicator();
+                        if (mPostAdapter.size() == 0) {
+                            mPostAdapter.showTryAgainCard();
+                        } else {
+                            Toast.makeText(
+                                    getActivity(),
+                                    getString(R.string.error_message_loading_more_posts),
+                                    Toast.LENGTH_SHORT
+                            ).show();
                         }
-                    }));
+                        Timber.e("There was an error loading the posts", e);
+                    }
+
+                    @Override
+                    public void onNext(VineyardService.PostResponse postResponse) {
+                        onPageLoaded(postResponse, anchor);
+                    }
+                }));
+    }
+
+    private Feed getFeed() {
+        String tag = mPostAdapter.getAdapterOptions().get(PaginationAdapter.KEY_TAG);
+        return mSelectedType.equals(TYPE_USER) ? Feed.user(tag) : Feed.tag(tag);
+    }
+
+    private void onPageLoaded(VineyardService.PostResponse postResponse, String anchor) {
+        if (postResponse.data.partial) {
+            mPostAdapter.addAllItems(postResponse.data.records);
+            return;
+        }
+        mPostAdapter.removeLoadingIndicator();
+        if (mPostAdapter.size() == 0 && postResponse.data.records.isEmpty()) {
+            mPostAdapter.showReloadCard();
+        } else {
+            if (anchor == null) {
+                mPostAdapter.setAnchor(postResponse.data.anchorStr);
+            }
+            mPostAdapter.setNextPage(postResponse.data.nextPage);
+            if (postResponse.data.stored) {
+                mPostAdapter.addStoredItems(postResponse.data.records);
+            } else {
+                mPostAdapter.addAllItems(postResponse.data.records);
+                mPostAdapter.removeStoredItems();
+            }
         }
     }
 
@@ -261,8 +251,10 @@ public class PostGridFragment extends VerticalGridFragment {
             if (item instanceof Post) {
                 if (NetworkUtil.isNetworkConnected(getActivity())) {
                     Post post = (Post) item;
-                    ArrayList<Post> postList = (ArrayList<Post>) mPostAdapter.getAllItems();
-                    startActivity(PlaybackActivity.newStartIntent(getActivity(), post, postList));
+                    Playlist playlist = mDataManager.createPlaylist(getFeed(),
+                            mPostAdapter.getAllItems(), mPostAdapter.getAnchor(),
+                            mPostAdapter.getNextPage());
+                    startActivity(PlaybackActivity.newStartIntent(getActivity(), post, playlist));
                 } else {
                     ToastFactory.createWifiErrorToast(getActivity()).show();
                 }
@@ -283,15 +275,14 @@ public class PostGridFragment extends VerticalGridFragment {
                                    RowPresenter.ViewHolder rowViewHolder, Row row) {
             if (item instanceof Post) {
                 String backgroundUrl = ((Post) item).thumbnailUrl;
-                if (backgroundUrl != null) startBackgroundTimer(URI.create(backgroundUrl));
-                ArrayList<Post> posts = (ArrayList<Post>) mPostAdapter.getAllItems();
-
-                // If any item on the bottom row is selected...
-                int itemIndex = mPostAdapter.indexOf(item);
-                int minimumIndex = posts.size() - NUM_COLUMNS;
-                if (itemIndex >= minimumIndex && mPostAdapter.shouldLoadNextPage()) {
-                    addPageLoadSubscription();
+                if (backgroundUrl != null) {
+                    mBackgroundEngine.showBackground(
+                            mBackgroundManager, backgroundUrl, mDefaultBackground);
                 }
+                int position = mPostAdapter.getPosition(itemViewHolder, item);
+                mPostAdapter.onItemSelected(position);
+                mThumbnailPreloader.preload(mPostAdapter, position);
+                if (mPostAdapter.shouldLoadNextPage()) addPageLoadSubscription();
             }
         }
     };
@@ -6,7 +6,6 @@ import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -25,67 +24,82 @@ import android.support.v17.leanback.widget.RowPresenter;
 import android.support.v17.leanback.widget.SpeechRecognitionCallback;
 import android.support.v4.content.ContextCompat;
 import android.text.TextUtils;
-import android.util.DisplayMetrics;
 import android.widget.Toast;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.animation.GlideAnimation;
-import com.bumptech.glide.request.target.SimpleTarget;
 import com.hitherejoe.vineyard.R;
 import com.hitherejoe.vineyard.data.DataManager;
+import com.hitherejoe.vineyard.data.model.Feed;
 import com.hitherejoe.vineyard.data.model.Option;
+import com.hitherejoe.vineyard.data.model.Playlist;
 import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.data.model.Tag;
 import com.hitherejoe.vineyard.data.model.User;
 import com.hitherejoe.vineyard.data.remote.VineyardService;
+import com.hitherejoe.vineyard.injection.ComputationScheduler;
 import com.hitherejoe.vineyard.ui.activity.BaseActivity;
 import com.hitherejoe.vineyard.ui.activity.PlaybackActivity;
 import com.hitherejoe.vineyard.ui.activity.PostGridActivity;
 import com.hitherejoe.vineyard.ui.adapter.PaginationAdapter;
 import com.hitherejoe.vineyard.ui.adapter.PostAdapter;
 import com.hitherejoe.vineyard.ui.adapter.TagAdapter;
+import com.hitherejoe.vineyard.ui.presenter.ThumbnailPreloader;
+import com.hitherejoe.vineyard.ui.widget.BackgroundEngine;
+import com.hitherejoe.vineyard.ui.widget.PreviewPlayerManager;
 import com.hitherejoe.vineyard.util.NetworkUtil;
 import com.hitherejoe.vineyard.util.ToastFactory;
 
-import java.net.URI;
-import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import rx.Observable;
+import rx.Scheduler;
 import rx.Subscriber;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.functions.Func1;
 import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
 import timber.log.Timber;
 
 public class SearchFragment extends android.support.v17.leanback.app.SearchFragment
         implements android.support.v17.leanback.app.SearchFragment.SearchResultProvider {
 
-    private static final int BACKGROUND_UPDATE_DELAY = 300;
     private static final int REQUEST_SPEECH = 0x00000010;
+    private static final int SEARCH_DEBOUNCE_MILLIS = 300;
 
+    @Inject BackgroundEngine mBackgroundEngine;
     @Inject DataManager mDataManager;
+    @Inject PreviewPlayerManager mPreviewPlayerManager;
+    @Inject @ComputationScheduler Scheduler mDebounceScheduler;
 
     private ArrayObjectAdapter mResultsAdapter;
     private BackgroundManager mBackgroundManager;
     private Drawable mDefaultBackground;
-    private DisplayMetrics mMetrics;
-    private Handler mHandler;
     private HeaderItem mResultsHeader;
     private Object mSelectedTag;
     private PostAdapter mPostResultsAdapter;
-    private Runnable mBackgroundRunnable;
+    private ThumbnailPreloader mThumbnailPreloader;
     private Subscription mSearchResultsSubscription;
     private Subscription mTagSubscription;
     private Subscription mUserSubscription;
+    private Subscription mTagResultsSubscription;
+    private Subscription mUserResultsSubscription;
     private TagAdapter mSearchResultsAdapter;
 
-    private String mSearchQuery;
-    private String mTagSearchAnchor;
-    private String mUserSearchAnchor;
+    private String mQuery;
+    private String mTagResultsAnchor;
+    private String mUserResultsAnchor;
+    private int mTagResultsNextPage;
+    private int mUserResultsNextPage;
+
+    private PublishSubject<String> mQueryChanges;
+    private PublishSubject<String> mQuerySubmissions;
     private boolean mIsStopping;
+    private boolean mIsShowingApproximateResults;
+    private boolean mIsShowingActualResults;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -93,10 +107,13 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
         ((BaseActivity) getActivity()).getActivityComponent().inject(this);
         mResultsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
         mSearchResultsAdapter = new TagAdapter(getActivity(), "");
-        mHandler = new Handler();
+        mThumbnailPreloader = new ThumbnailPreloader(getActivity());
+        mQueryChanges = PublishSubject.create();
+        mQuerySubmissions = PublishSubject.create();
         setSearchResultProvider(this);
         setupBackgroundManager();
         setListeners();
+        subscribeToQueries();
     }
 
     @Override
@@ -107,21 +124,22 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
 
 
     public void onDestroy() {
-        if (mBackgroundRunnable != null) {
-            mHandler.removeCallbacks(mBackgroundRunnable);
-            mBackgroundRunnable = null;
-        }
+        mThumbnailPreloader.cancel();
         mBackgroundManager = null;
         if (mSearchResultsSubscription != null) mSearchResultsSubscription.unsubscribe();
         if (mTagSubscription != null) mTagSubscription.unsubscribe();
         if (mUserSubscription != null) mUserSubscription.unsubscribe();
+        unSubscribeResultsObservables();
         super.onDestroy();
     }
 
     @Override
     public void onStop() {
         super.onStop();
+        mBackgroundEngine.cancel(mBackgroundManager);
         mBackgroundManager.release();
+        // The manager outlives this screen, so it mustn't keep hold of the previews on it
+        mPreviewPlayerManager.release();
         mIsStopping = true;
     }
 
@@ -148,13 +166,13 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
 
     @Override
     public boolean onQueryTextChange(String newQuery) {
-        loadQuery(newQuery);
+        mQueryChanges.onNext(newQuery);
         return true;
     }
 
     @Override
     public boolean onQueryTextSubmit(String query) {
-        loadQuery(query);
+        mQuerySubmissions.onNext(query);
         return true;
     }
 
@@ -166,44 +184,12 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
         return mResultsAdapter.size() > 0;
     }
 
-    protected void updateBackground(String uri) {
-        int width = mMetrics.widthPixels;
-        int height = mMetrics.heightPixels;
-        Glide.with(getActivity())
-                .load(uri)
-                .asBitmap()
-                .centerCrop()
-                .error(mDefaultBackground)
-                .into(new SimpleTarget<Bitmap>(width, height) {
-                    @Override
-                    public void onResourceReady(Bitmap resource,
-                                                GlideAnimation<? super Bitmap>
-                                                        glideAnimation) {
-                        mBackgroundManager.setBitmap(resource);
-                    }
-                });
-        if (mBackgroundRunnable != null) mHandler.removeCallbacks(mBackgroundRunnable);
-    }
-
     private void setupBackgroundManager() {
         mBackgroundManager = BackgroundManager.getInstance(getActivity());
         mBackgroundManager.attach(getActivity().getWindow());
         mBackgroundManager.setColor(ContextCompat.getColor(getActivity(), R.color.bg_grey));
         mDefaultBackground =
                 new ColorDrawable(ContextCompat.getColor(getActivity(), R.color.bg_grey));
-        mMetrics = new DisplayMetrics();
-        getActivity().getWindowManager().getDefaultDisplay().getMetrics(mMetrics);
-    }
-
-    private void startBackgroundTimer(final URI backgroundURI) {
-        if (mBackgroundRunnable != null) mHandler.removeCallbacks(mBackgroundRunnable);
-        mBackgroundRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (backgroundURI != null) updateBackground(backgroundURI.toString());
-            }
-        };
-        mHandler.postDelayed(mBackgroundRunnable, BACKGROUND_UPDATE_DELAY);
     }
 
     private void setListeners() {
@@ -229,104 +215,238 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
                 permission, context.getPackageName());
     }
 
-    private void loadQuery(String query) {
-        if ((mSearchQuery != null && !mSearchQuery.equals(query))
-                && query.trim().length() > 0
-                || (!TextUtils.isEmpty(query) && !query.equals("nil"))) {
-            if (NetworkUtil.isNetworkConnected(getActivity())) {
-                mSearchQuery = query;
-                searchTaggedPosts(query);
-            } else {
-                ToastFactory.createWifiErrorToast(getActivity()).show();
-            }
-        }
+    /**
+     * Searches for each query once the user has stopped typing for a moment. Any search still in
+     * progress when the next query arrives is cancelled, so only the latest results are shown.
+     */
+    private void subscribeToQueries() {
+        mSearchResultsSubscription = Observable.merge(
+                mQueryChanges.debounce(SEARCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS,
+                        mDebounceScheduler),
+                mQuerySubmissions)
+                .map(new Func1<String, String>() {
+                    @Override
+                    public String call(String query) {
+                        return query.trim();
+                    }
+                })
+                .filter(new Func1<String, Boolean>() {
+                    @Override
+                    public Boolean call(String query) {
+                        return !TextUtils.isEmpty(query) && !query.equals("nil");
+                    }
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .filter(new Func1<String, Boolean>() {
+                    @Override
+                    public Boolean call(String query) {
+                        if (NetworkUtil.isNetworkConnected(getActivity())) return true;
+                        showNetworkUnavailableToast();
+                        return false;
+                    }
+                })
+                .filter(new Func1<String, Boolean>() {
+                    @Override
+                    public Boolean call(String query) {
+                        // Rather than distinctUntilChanged(), so that a query can be searched
+                        // again once its search has failed, see showSearchError()
+                        return !query.equals(mQuery);
+                    }
+                })
+                .switchMap(new Func1<String, Observable<VineyardService.KeywordSearchResponse>>() {
+                    @Override
+                    public Observable<VineyardService.KeywordSearchResponse> call(String query) {
+                        showSearchInProgress(query);
+                        return mDataManager.search(query)
+                                .subscribeOn(Schedulers.io())
+                                .unsubscribeOn(Schedulers.io())
+                                .observeOn(AndroidSchedulers.mainThread())
+                                .onErrorResumeNext(new Func1<Throwable,
+                                        Observable<VineyardService.KeywordSearchResponse>>() {
+                                    @Override
+                                    public Observable<VineyardService.KeywordSearchResponse> call(
+                                            Throwable e) {
+                                        // Keep listening for queries after a failed search
+                                        showSearchError(e);
+                                        return Observable.empty();
+                                    }
+                                });
+                    }
+                })
+                .subscribe(new Action1<VineyardService.KeywordSearchResponse>() {
+                    @Override
+                    public void call(VineyardService.KeywordSearchResponse response) {
+                        showSearchResults(response);
+                    }
+                });
     }
 
-    private void searchTaggedPosts(String tag) {
-        mSearchResultsAdapter.setTag(tag);
+    private void showSearchInProgress(String query) {
+        mQuery = query;
+        mIsShowingApproximateResults = false;
+        mIsShowingActualResults = false;
+        unSubscribeResultsObservables();
+        mTagResultsNextPage = 0;
+        mUserResultsNextPage = 0;
+        mSearchResultsAdapter.setTag(query);
         mResultsAdapter.clear();
         mResultsHeader = new HeaderItem(0, getString(R.string.text_search_results));
-        ListRow listRow = new ListRow(mResultsHeader, mSearchResultsAdapter);
-        Timber.e(listRow.getId() + "");
-        mResultsAdapter.add(listRow);
-        performSearch(mSearchResultsAdapter);
+        mResultsAdapter.add(new ListRow(mResultsHeader, mSearchResultsAdapter));
+        if (mPostResultsAdapter != null) mPostResultsAdapter.clear();
+        mSearchResultsAdapter.removeLoadingIndicator();
+        mSearchResultsAdapter.clear();
+        mSearchResultsAdapter.showLoadingIndicator();
+    }
+
+    private void showSearchError(Throwable e) {
+        // Lets the user retry the same query
+        mQuery = null;
+        mSearchResultsAdapter.removeLoadingIndicator();
+        Toast.makeText(
+                getActivity(),
+                getString(R.string.error_message_retrieving_results),
+                Toast.LENGTH_SHORT
+        ).show();
+        Timber.e("There was an error loading the videos", e);
     }
 
-    private void performSearch(final PaginationAdapter adapter) {
-        if (adapter.shouldShowLoadingIndicator()) adapter.showLoadingIndicator();
-        if (mSearchResultsSubscription != null && !mSearchResultsSubscription.isUnsubscribed()) {
-            mSearchResultsSubscription.unsubscribe();
+    /**
+     * Shows the results of the current query as they arrive. Results filtered from another
+     * query's are replaced as a whole by the first actual results. After that, only the tags or
+     * users that have just arrived are added, which TagAdapter merges into place among those
+     * already shown.
+     */
+    private void showSearchResults(VineyardService.KeywordSearchResponse response) {
+        mSearchResultsAdapter.removeLoadingIndicator();
+        if (response.approximate || !mIsShowingActualResults) {
+            if (mIsShowingApproximateResults) mSearchResultsAdapter.clear();
+            mIsShowingApproximateResults = response.approximate;
+            mIsShowingActualResults = !response.approximate;
+            mSearchResultsAdapter.addAllItems(response.list);
+        } else if (response.addedItems != null) {
+            mSearchResultsAdapter.addAllItems(response.addedItems);
         }
-        if (mPostResultsAdapter != null) mPostResultsAdapter.clear();
-        adapter.clear();
+        if (response.list.isEmpty() && !response.partial) {
+            mResultsAdapter.clear();
+            mResultsHeader = new HeaderItem(0, getString(R.string.text_no_results));
+            mResultsAdapter.add(new ListRow(mResultsHeader, mSearchResultsAdapter));
+        } else if (response.partial) {
+            mSearchResultsAdapter.showLoadingIndicator();
+        }
+        if (!response.partial) {
+            mTagResultsAnchor = response.tagSearchAnchor;
+            mTagResultsNextPage = response.tagNextPage;
+            mUserResultsAnchor = response.userSearchAnchor;
+            mUserResultsNextPage = response.userNextPage;
+        }
+    }
 
-        Map<String, String> options = adapter.getAdapterOptions();
-        String tag = options.get(PaginationAdapter.KEY_TAG);
-        String nextPage = options.get(PaginationAdapter.KEY_NEXT_PAGE);
+    /**
+     * Requests the next page of tags and of users once the user gets near the end of the
+     * results. Each has its own cursor, so one can carry on paging after the other has run out
+     * and neither is requested again because of the other.
+     */
+    private void loadMoreResultsIfNeeded(Presenter.ViewHolder itemViewHolder, Object item) {
+        int position = mSearchResultsAdapter.getPosition(itemViewHolder, item);
+        int lastPosition = mSearchResultsAdapter.size() - 1;
+        if (position < lastPosition - PaginationAdapter.DEFAULT_PREFETCH_DISTANCE) return;
+
+        if (mTagResultsNextPage != 0 && isUnsubscribed(mTagResultsSubscription)) {
+            mTagResultsSubscription = mDataManager.searchByTag(
+                    mQuery, String.valueOf(mTagResultsNextPage), mTagResultsAnchor)
+                    .subscribeOn(Schedulers.io())
+                    .unsubscribeOn(Schedulers.io())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(new Subscriber<VineyardService.TagResponse>() {
+                        @Override
+                        public void onCompleted() {
+                        }
 
-        Observable<VineyardService.KeywordSearchResponse> observable =
-                mDataManager.search(
-                        tag, nextPage, mTagSearchAnchor, nextPage, mUserSearchAnchor);
+                        @Override
+                        public void onError(Throwable e) {
+                            // Stop paging tags for this query rather than retrying on every move
+                            mTagResultsNextPage = 0;
+                            Timber.e(e, "There was an error loading more tags");
+                        }
 
-        mSearchResultsSubscription = observable
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribeOn(Schedulers.io())
-                .unsubscribeOn(Schedulers.io())
-                .subscribe(new Subscriber<VineyardService.KeywordSearchResponse>() {
-                    @Override
-                    public void onCompleted() {
-                        adapter.removeLoadingIndicator();
-                    }
+                        @Override
+                        public void onNext(VineyardService.TagResponse tagResponse) {
+                            mTagResultsAnchor = tagResponse.data.anchorStr;
+                            mTagResultsNextPage = tagResponse.data.nextPage;
+                            mSearchResultsAdapter.addAllItems(tagResponse.data.records);
+                        }
+                    });
+        }
 
-                    @Override
-                    public void onError(Throwable e) {
-                        //TODO: Handle error
-                        adapter.removeLoadingIndicator();
-                        Toast.makeText(
-                                getActivity(),
-                                getString(R.string.error_message_retrieving_results),
-                                Toast.LENGTH_SHORT
-                        ).show();
-                        Timber.e("There was an error loading the videos", e);
-                    }
+        if (mUserResultsNextPage != 0 && isUnsubscribed(mUserResultsSubscription)) {
+            mUserResultsSubscription = mDataManager.searchByUser(
+                    mQuery, String.valueOf(mUserResultsNextPage), mUserResultsAnchor)
+                    .subscribeOn(Schedulers.io())
+                    .unsubscribeOn(Schedulers.io())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(new Subscriber<VineyardService.UserResponse>() {
+                        @Override
+                        public void onCompleted() {
+                        }
 
-                    @Override
-                    public void onNext(VineyardService.KeywordSearchResponse dualResponse) {
-                        if (dualResponse.list.isEmpty()) {
-                            mResultsAdapter.clear();
-                            mResultsHeader = new HeaderItem(0, getString(R.string.text_no_results));
-                            mResultsAdapter.add(new ListRow(mResultsHeader, adapter));
-                            mTagSearchAnchor = "";
-                            mUserSearchAnchor = "";
-                        } else {
-                            adapter.addAllItems(dualResponse.list);
-                            mTagSearchAnchor = dualResponse.tagSearchAnchor;
-                            mUserSearchAnchor = dualResponse.userSearchAnchor;
+                        @Override
+                        public void onError(Throwable e) {
+                            mUserResultsNextPage = 0;
+                            Timber.e(e, "There was an error loading more users");
                         }
-                    }
-                });
+
+                        @Override
+                        public void onNext(VineyardService.UserResponse userResponse) {
+                            mUserResultsAnchor = userResponse.data.anchorStr;
+                            mUserResultsNextPage = userResponse.data.nextPage;
+                            mSearchResultsAdapter.addAllItems(userResponse.data.records);
+                        }
+                    });
+        }
+    }
+
+    private static boolean isUnsubscribed(Subscription subscription) {
+        return subscription == null || subscription.isUnsubscribed();
+    }
+
+    private void unSubscribeResultsObservables() {
+        if (mTagResultsSubscription != null) mTagResultsSubscription.unsubscribe();
+        if (mUserResultsSubscription != null) mUserResultsSubscription.unsubscribe();
     }
 
     private void addPageLoadSubscriptionByTag(final PaginationAdapter adapter) {
         unSubscribeSearchObservables();
-        if (adapter.shouldShowLoadingIndicator()) adapter.showLoadingIndicator();
 
         Map<String, String> options = adapter.getAdapterOptions();
         String tag = options.get(PaginationAdapter.KEY_TAG);
         String anchor = options.get(PaginationAdapter.KEY_ANCHOR);
         String nextPage = options.get(PaginationAdapter.KEY_NEXT_PAGE);
 
-        mTagSubscription = mDataManager.getPostsByTag(tag, nextPage, anchor)
+        Feed feed = Feed.tag(tag);
+        adapter.startLoadingPage();
+        VineyardService.PostResponse cachedPage = mDataManager.peekPosts(feed, nextPage, anchor);
+        if (cachedPage != null) {
+            onPageLoaded(adapter, cachedPage);
+            adapter.finishLoadingPage();
+            return;
+        }
+
+        mTagSubscription = mDataManager.getPosts(feed, nextPage, anchor)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribeOn(Schedulers.io())
                 .unsubscribeOn(Schedulers.io())
                 .subscribe(new Subscriber<VineyardService.PostResponse>() {
                     @Override
                     public void onCompleted() {
+                        adapter.finishLoadingPage();
                     }
 
                     @Override
                     public void onError(Throwable e) {
+                        if (adapter.cancelLoadingPage()) {
+                            Timber.e(e, "There was an error prefetching the next page");
+                            return;
+                        }
                         adapter.removeLoadingIndicator();
                         if (adapter.size() == 0) {
                             adapter.showTryAgainCard();
@@ -342,38 +462,44 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
 
                     @Override
                     public void onNext(VineyardService.PostResponse postResponse) {
-                        adapter.removeLoadingIndicator();
-                        if (adapter.size() == 0 && postResponse.data.records.isEmpty()) {
-                            adapter.showReloadCard();
-                        } else {
-                            adapter.setAnchor(postResponse.data.anchorStr);
-                            adapter.setNextPage(postResponse.data.nextPage);
-                            adapter.addAllItems(postResponse.data.records);
-                        }
+                        onPageLoaded(adapter, postResponse);
                     }
                 });
     }
 
     private void addPageLoadSubscriptionByUser(final PaginationAdapter adapter) {
         unSubscribeSearchObservables();
-        if (adapter.shouldShowLoadingIndicator()) adapter.showLoadingIndicator();
 
         Map<String, String> options = adapter.getAdapterOptions();
         String tag = options.get(PaginationAdapter.KEY_TAG);
         String anchor = options.get(PaginationAdapter.KEY_ANCHOR);
         String nextPage = options.get(PaginationAdapter.KEY_NEXT_PAGE);
 
-        mUserSubscription = mDataManager.getPostsByUser(tag, nextPage, anchor)
+        Feed feed = Feed.user(tag);
+        adapter.startLoadingPage();
+        VineyardService.PostResponse cachedPage = mDataManager.peekPosts(feed, nextPage, anchor);
+        if (cachedPage != null) {
+            onPageLoaded(adapter, cachedPage);
+            adapter.finishLoadingPage();
+            return;
+        }
+
+        mUserSubscription = mDataManager.getPosts(feed, nextPage, anchor)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribeOn(Schedulers.io())
                 .unsubscribeOn(Schedulers.io())
                 .subscribe(new Subscriber<VineyardService.PostResponse>() {
                     @Override
                     public void onCompleted() {
+                        adapter.finishLoadingPage();
                     }
 
                     @Override
                     public void onError(Throwable e) {
+                        if (adapter.cancelLoadingPage()) {
+                            Timber.e(e, "There was an error prefetching the next page");
+                            return;
+                        }
                         adapter.removeLoadingIndicator();
                         if (adapter.size() == 0) {
                             adapter.showTryAgainCard();
@@ -389,18 +515,40 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
 
                     @Override
                     public void onNext(VineyardService.PostResponse postResponse) {
-                        adapter.removeLoadingIndicator();
-                        if (adapter.size() == 0 && postResponse.data.records.isEmpty()) {
-                            adapter.showReloadCard();
-                        } else {
-                            adapter.setAnchor(postResponse.data.anchorStr);
-                            adapter.setNextPage(postResponse.data.nextPage);
-                            adapter.addAllItems(postResponse.data.records);
-                        }
+                        onPageLoaded(adapter, postResponse);
                     }
                 });
     }
 
+    private void onPageLoaded(PaginationAdapter adapter, VineyardService.PostResponse postResponse) {
+        if (postResponse.data.partial) {
+            adapter.addAllItems(postResponse.data.records);
+            return;
+        }
+        adapter.removeLoadingIndicator();
+        if (adapter.size() == 0 && postResponse.data.records.isEmpty()) {
+            adapter.showReloadCard();
+        } else {
+            adapter.setAnchor(postResponse.data.anchorStr);
+            adapter.setNextPage(postResponse.data.nextPage);
+            if (postResponse.data.stored) {
+                adapter.addStoredItems(postResponse.data.records);
+            } else {
+                adapter.addAllItems(postResponse.data.records);
+                adapter.removeStoredItems();
+            }
+        }
+    }
+
+    private Feed getSelectedFeed() {
+        if (mSelectedTag instanceof Tag) {
+            return Feed.tag(((Tag) mSelectedTag).tag);
+        } else if (mSelectedTag instanceof User) {
+            return Feed.user(((User) mSelectedTag).userId);
+        }
+        return null;
+    }
+
     private void unSubscribeSearchObservables() {
         if (mUserSubscription != null && !mUserSubscription.isUnsubscribed()) {
             mUserSubscription.unsubscribe();
@@ -447,11 +595,10 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
             if (item instanceof Post) {
                 if (NetworkUtil.isNetworkConnected(getActivity())) {
                     Post post = (Post) item;
-                    int index = mResultsAdapter.indexOf(row);
-                    PostAdapter arrayObjectAdapter =
-                            ((PostAdapter) ((ListRow) mResultsAdapter.get(index)).getAdapter());
-                    ArrayList<Post> postList = (ArrayList<Post>) arrayObjectAdapter.getAllItems();
-                    startActivity(PlaybackActivity.newStartIntent(getActivity(), post, postList));
+                    PostAdapter adapter = (PostAdapter) ((ListRow) row).getAdapter();
+                    Playlist playlist = mDataManager.createPlaylist(getSelectedFeed(),
+                            adapter.getAllItems(), adapter.getAnchor(), adapter.getNextPage());
+                    startActivity(PlaybackActivity.newStartIntent(getActivity(), post, playlist));
                 } else {
                     showNetworkUnavailableToast();
                 }
@@ -473,9 +620,7 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
                 Option option = (Option) item;
                 if (option.title.equals(getString(R.string.message_check_again)) ||
                         option.title.equals(getString(R.string.message_try_again))) {
-                    int index = mResultsAdapter.indexOf(row);
-                    PostAdapter adapter =
-                            ((PostAdapter) ((ListRow) mResultsAdapter.get(index)).getAdapter());
+                    PostAdapter adapter = (PostAdapter) ((ListRow) row).getAdapter();
                     adapter.removeReloadCard();
                     if (mSelectedTag instanceof Tag) {
                         addPageLoadSubscriptionByTag(adapter);
@@ -492,13 +637,13 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
         public void onItemSelected(Presenter.ViewHolder itemViewHolder, Object item,
                                    RowPresenter.ViewHolder rowViewHolder, Row row) {
             if (item instanceof Tag || item instanceof User) {
+                loadMoreResultsIfNeeded(itemViewHolder, item);
                 boolean isValid = true;
                 if (mSelectedTag != null && mSelectedTag.equals(item)) isValid = false;
                 mSelectedTag = item;
                 if (isValid) {
-                    int index = mResultsAdapter.indexOf(row);
                     PaginationAdapter adapter =
-                            ((PaginationAdapter) ((ListRow) mResultsAdapter.get(index)).getAdapter());
+                            (PaginationAdapter) ((ListRow) row).getAdapter();
 
                     if (item instanceof Tag) {
                         Tag tagOne = (Tag) item;
@@ -518,7 +663,12 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
                 }
             } else if (item instanceof Post) {
                 String backgroundUrl = ((Post) item).thumbnailUrl;
-                if (backgroundUrl != null) startBackgroundTimer(URI.create(backgroundUrl));
+                if (backgroundUrl != null) {
+                    mBackgroundEngine.showBackground(
+                            mBackgroundManager, backgroundUrl, mDefaultBackground);
+                }
+                PaginationAdapter adapter = (PaginationAdapter) ((ListRow) row).getAdapter();
+                mThumbnailPreloader.preload(adapter, adapter.getPosition(itemViewHolder, item));
             }
         }
     };
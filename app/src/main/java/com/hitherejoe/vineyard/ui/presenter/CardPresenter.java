@@ -8,6 +8,7 @@ import android.support.v4.content.ContextCompat;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.bumptech.glide.DrawableRequestBuilder;
 import com.bumptech.glide.Glide;
 import com.hitherejoe.vineyard.R;
 import com.hitherejoe.vineyard.data.model.Post;
@@ -18,8 +19,8 @@ import com.hitherejoe.vineyard.ui.widget.VideoCardView;
 
 public class CardPresenter extends Presenter {
 
-    private static final int CARD_WIDTH = 300;
-    private static final int CARD_HEIGHT = 300;
+    static final int CARD_WIDTH = 300;
+    static final int CARD_HEIGHT = 300;
     private static int sSelectedBackgroundColor;
     private static int sDefaultBackgroundColor;
     private Drawable mDefaultCardImage;
@@ -102,17 +103,31 @@ public class CardPresenter extends Presenter {
                 cardView.setMainContainerDimensions(CARD_WIDTH, CARD_HEIGHT);
                 cardView.setVideoUrl(post.videoUrl);
 
-                Glide.with(cardView.getContext())
-                        .load(post.thumbnailUrl)
-                        .centerCrop()
+                loadThumbnail(cardView.getContext(), post.thumbnailUrl)
                         .error(mDefaultCardImage)
                         .into(cardView.getMainImageView());
             }
         }
     }
 
+    /**
+     * Returns the request for the thumbnail shown on a card. This is shared with the
+     * ThumbnailPreloader, as a preloaded thumbnail is only used if it was requested at the same
+     * size and with the same transformation.
+     */
+    static DrawableRequestBuilder<String> loadThumbnail(Context context, String thumbnailUrl) {
+        return Glide.with(context)
+                .load(thumbnailUrl)
+                .centerCrop()
+                .override(CARD_WIDTH, CARD_HEIGHT);
+    }
+
     @Override
     public void onUnbindViewHolder(Presenter.ViewHolder viewHolder) {
+        if (viewHolder.view instanceof VideoCardView) {
+            // Otherwise the preview would carry on playing if the card is bound to another post
+            ((VideoCardView) viewHolder.view).stopVideo();
+        }
         if (viewHolder.view instanceof ImageCardView) {
             ImageCardView cardView = (ImageCardView) viewHolder.view;
             // Remove references to images so that the garbage collector can free up memory
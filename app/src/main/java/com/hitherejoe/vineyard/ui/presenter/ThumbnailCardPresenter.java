@@ -0,0 +1,57 @@
+package com.hitherejoe.vineyard.ui.presenter;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.v17.leanback.widget.ImageCardView;
+import android.support.v17.leanback.widget.Presenter;
+import android.support.v4.content.ContextCompat;
+import android.view.ViewGroup;
+
+import com.bumptech.glide.Glide;
+import com.hitherejoe.vineyard.R;
+import com.hitherejoe.vineyard.data.model.Post;
+
+/**
+ * Shows posts as a thumbnail and their text only, without a preview when they're focused. Used
+ * where a preview would compete with a video that is already playing, e.g. the playback overlay.
+ */
+public class ThumbnailCardPresenter extends Presenter {
+
+    private Drawable mDefaultCardImage;
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent) {
+        Context context = parent.getContext();
+        mDefaultCardImage = ContextCompat.getDrawable(context, R.drawable.ic_card_default);
+
+        ImageCardView cardView = new ImageCardView(context);
+        cardView.setMainImageDimensions(CardPresenter.CARD_WIDTH, CardPresenter.CARD_HEIGHT);
+        cardView.setBackgroundColor(ContextCompat.getColor(context, R.color.primary));
+        cardView.setFocusable(true);
+        cardView.setFocusableInTouchMode(true);
+        return new ViewHolder(cardView);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder viewHolder, Object item) {
+        if (item instanceof Post) {
+            Post post = (Post) item;
+            ImageCardView cardView = (ImageCardView) viewHolder.view;
+            cardView.setTitleText(post.description);
+            cardView.setContentText(post.username);
+            // Requested the same way as CardPresenter, so thumbnails from the browse screens
+            // come straight from the memory cache
+            CardPresenter.loadThumbnail(cardView.getContext(), post.thumbnailUrl)
+                    .error(mDefaultCardImage)
+                    .into(cardView.getMainImageView());
+        }
+    }
+
+    @Override
+    public void onUnbindViewHolder(ViewHolder viewHolder) {
+        ImageCardView cardView = (ImageCardView) viewHolder.view;
+        // Stops any thumbnail that is still loading and lets the last one be reused
+        Glide.clear(cardView.getMainImageView());
+        cardView.setMainImage(null);
+    }
+}
@@ -0,0 +1,116 @@
+package com.hitherejoe.vineyard.ui.presenter;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v17.leanback.widget.ObjectAdapter;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.request.target.Target;
+import com.hitherejoe.vineyard.data.model.Post;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the thumbnails of the cards near the one in focus before they are bound, so that they're
+ * already in memory when they scroll into view rather than popping in afterwards. Thumbnails are
+ * requested nearest first, alternating ahead of and behind the focused card, and preloads that
+ * are no longer near the focus are cancelled as it moves. Preloading waits for the focus to
+ * settle, so that moving focus quickly across a row neither allocates nor starts requests for
+ * every card passed over.
+ */
+public class ThumbnailPreloader {
+
+    // Around a screen's width of cards in a row
+    public static final int DEFAULT_PRELOAD_DISTANCE = 6;
+    // How long the focus has to stay put before the thumbnails around it are preloaded
+    private static final int FOCUS_SETTLE_MILLIS = 150;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Runnable mPreloadRunnable;
+    // Swapped on each preload, so that the lists are reused rather than allocated each time
+    private List<Target<?>> mTargets;
+    private List<Target<?>> mPreviousTargets;
+    private ObjectAdapter mAdapter;
+    private int mPosition;
+    private int mPreloadDistance;
+
+    public ThumbnailPreloader(Context context) {
+        mContext = context;
+        mHandler = new Handler(Looper.getMainLooper());
+        mPreloadRunnable = new Runnable() {
+            @Override
+            public void run() {
+                preloadAroundPosition();
+            }
+        };
+        mPreloadDistance = DEFAULT_PRELOAD_DISTANCE;
+        mTargets = new ArrayList<>(mPreloadDistance * 2);
+        mPreviousTargets = new ArrayList<>(mPreloadDistance * 2);
+        mPosition = -1;
+    }
+
+    /**
+     * Sets the number of cards either side of the focused one to preload, e.g. a couple of
+     * rows' worth in a grid.
+     */
+    public void setPreloadDistance(int preloadDistance) {
+        mPreloadDistance = preloadDistance;
+    }
+
+    /**
+     * Preloads the thumbnails around the given position in the adapter once the focus has
+     * stayed there for a moment.
+     */
+    public void preload(ObjectAdapter adapter, int position) {
+        if (adapter == mAdapter && position == mPosition) return;
+        mAdapter = adapter;
+        mPosition = position;
+        mHandler.removeCallbacks(mPreloadRunnable);
+        mHandler.postDelayed(mPreloadRunnable, FOCUS_SETTLE_MILLIS);
+    }
+
+    /**
+     * Cancels any thumbnails that are still being preloaded.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mPreloadRunnable);
+        clear(mTargets);
+        mAdapter = null;
+        mPosition = -1;
+    }
+
+    private void preloadAroundPosition() {
+        // The new preloads are started before the old ones are cleared, so that any thumbnails
+        // that are still loading carry on rather than being cancelled and started again
+        List<Target<?>> previousTargets = mTargets;
+        mTargets = mPreviousTargets;
+        mPreviousTargets = previousTargets;
+        for (int distance = 1; distance <= mPreloadDistance; distance++) {
+            preloadItem(mAdapter, mPosition + distance);
+            preloadItem(mAdapter, mPosition - distance);
+        }
+        clear(mPreviousTargets);
+    }
+
+    private void preloadItem(ObjectAdapter adapter, int position) {
+        if (position < 0 || position >= adapter.size()) return;
+        Object item = adapter.get(position);
+        if (!(item instanceof Post)) return;
+        Post post = (Post) item;
+        if (post.videoUrl == null || post.thumbnailUrl == null) return;
+        mTargets.add(CardPresenter.loadThumbnail(mContext, post.thumbnailUrl)
+                .priority(Priority.LOW)
+                .preload(CardPresenter.CARD_WIDTH, CardPresenter.CARD_HEIGHT));
+    }
+
+    private static void clear(List<Target<?>> targets) {
+        for (int i = 0; i < targets.size(); i++) {
+            Glide.clear(targets.get(i));
+        }
+        targets.clear();
+    }
+}
@@ -0,0 +1,253 @@
+package com.hitherejoe.vineyard.ui.widget;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v17.leanback.app.BackgroundManager;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.ScriptIntrinsicBlur;
+import android.util.DisplayMetrics;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.request.FutureTarget;
+import com.hitherejoe.vineyard.R;
+import com.hitherejoe.vineyard.injection.ApplicationContext;
+
+import java.util.LinkedList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Shows a blurred and dimmed copy of the focused post's thumbnail behind the browse screens.
+ * Backgrounds are decoded at a fraction of the display size and processed once on a background
+ * thread, and the last few are kept so that moving focus back and forth between cards doesn't
+ * decode them again. Bitmaps that are dropped from the cache are handed to Glide's bitmap pool to
+ * be reused. Only one screen is shown at a time, so the engine is shared by all of them. All
+ * methods must be called on the main thread.
+ */
+@Singleton
+public class BackgroundEngine {
+
+    public static final long DEFAULT_UPDATE_DELAY_MILLIS = 300;
+
+    // The background is blurred, so it can be scaled up to fill the screen without looking worse
+    private static final int DOWNSAMPLE_FACTOR = 4;
+    // The most that ScriptIntrinsicBlur allows
+    private static final float BLUR_RADIUS = 25f;
+    private static final int MAX_CACHED_BACKGROUNDS = 6;
+    // The previous background is still drawn while BackgroundManager fades to the next one
+    private static final int MAX_SHOWN_BACKGROUNDS = 2;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Runnable mUpdateRunnable;
+    private final BitmapPool mBitmapPool;
+    private final LruCache<String, Bitmap> mCache;
+    // Backgrounds that may still be drawn, which mustn't be reused, most recent last
+    private final LinkedList<Bitmap> mShownBitmaps;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mDimColor;
+    private long mUpdateDelayMillis;
+    private RenderScript mRenderScript;
+    private BackgroundManager mBackgroundManager;
+    private String mPendingImageUrl;
+    private Drawable mErrorBackground;
+    private Subscription mSubscription;
+
+    @Inject
+    public BackgroundEngine(@ApplicationContext Context context) {
+        mContext = context;
+        mHandler = new Handler(Looper.getMainLooper());
+        mUpdateRunnable = new Runnable() {
+            @Override
+            public void run() {
+                updateBackground();
+            }
+        };
+        mBitmapPool = Glide.get(context).getBitmapPool();
+        mShownBitmaps = new LinkedList<>();
+        mCache = new LruCache<String, Bitmap>(MAX_CACHED_BACKGROUNDS) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                if (!mShownBitmaps.contains(oldValue)) mBitmapPool.put(oldValue);
+            }
+        };
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        mWidth = Math.max(1, metrics.widthPixels / DOWNSAMPLE_FACTOR);
+        mHeight = Math.max(1, metrics.heightPixels / DOWNSAMPLE_FACTOR);
+        mDimColor = ContextCompat.getColor(context, R.color.background_dim);
+        mUpdateDelayMillis = DEFAULT_UPDATE_DELAY_MILLIS;
+    }
+
+    /**
+     * Sets how long the focus needs to stay on a card before its background is shown.
+     */
+    public void setUpdateDelayMillis(long updateDelayMillis) {
+        mUpdateDelayMillis = updateDelayMillis;
+    }
+
+    /**
+     * Shows the background for the given image using the given BackgroundManager once the
+     * update delay has passed, replacing any background that is waiting to be shown. The given
+     * error background is shown instead if the image can't be loaded.
+     */
+    public void showBackground(BackgroundManager backgroundManager, String imageUrl,
+                               Drawable errorBackground) {
+        mBackgroundManager = backgroundManager;
+        mPendingImageUrl = imageUrl;
+        mErrorBackground = errorBackground;
+        mHandler.removeCallbacks(mUpdateRunnable);
+        mHandler.postDelayed(mUpdateRunnable, mUpdateDelayMillis);
+    }
+
+    /**
+     * Stops any background that is waiting to be shown using the given BackgroundManager, e.g.
+     * because its screen has been stopped.
+     */
+    public void cancel(BackgroundManager backgroundManager) {
+        if (mBackgroundManager != backgroundManager) return;
+        mHandler.removeCallbacks(mUpdateRunnable);
+        if (mSubscription != null) {
+            mSubscription.unsubscribe();
+            mSubscription = null;
+        }
+        mBackgroundManager = null;
+        mPendingImageUrl = null;
+        mErrorBackground = null;
+    }
+
+    /**
+     * Releases the cached backgrounds once the UI is no longer shown, see
+     * ComponentCallbacks2#onTrimMemory(int).
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) mCache.evictAll();
+    }
+
+    private void updateBackground() {
+        final String imageUrl = mPendingImageUrl;
+        if (imageUrl == null || mBackgroundManager == null) return;
+        Bitmap bitmap = mCache.get(imageUrl);
+        if (bitmap != null) {
+            setBitmap(bitmap);
+            return;
+        }
+
+        if (mSubscription != null) mSubscription.unsubscribe();
+        mSubscription = Observable.create(new Observable.OnSubscribe<Bitmap>() {
+            @Override
+            public void call(Subscriber<? super Bitmap> subscriber) {
+                try {
+                    subscriber.onNext(loadBackground(imageUrl));
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                }
+            }
+        }).subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Subscriber<Bitmap>() {
+                    @Override
+                    public void onCompleted() {
+                        mSubscription = null;
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        mSubscription = null;
+                        Timber.e(e, "There was an error loading the background " + imageUrl);
+                        if (imageUrl.equals(mPendingImageUrl) && mErrorBackground != null) {
+                            mBackgroundManager.setDrawable(mErrorBackground);
+                        }
+                    }
+
+                    @Override
+                    public void onNext(Bitmap bitmap) {
+                        mCache.put(imageUrl, bitmap);
+                        if (imageUrl.equals(mPendingImageUrl)) setBitmap(bitmap);
+                    }
+                });
+    }
+
+    private void setBitmap(Bitmap bitmap) {
+        mShownBitmaps.remove(bitmap);
+        mShownBitmaps.addLast(bitmap);
+        while (mShownBitmaps.size() > MAX_SHOWN_BACKGROUNDS) {
+            mShownBitmaps.removeFirst();
+        }
+        mBackgroundManager.setBitmap(bitmap);
+    }
+
+    /**
+     * Decodes the given image at the background's size and returns a blurred and dimmed copy of
+     * it. Called on a background thread.
+     */
+    private Bitmap loadBackground(String imageUrl) throws Exception {
+        // ScriptIntrinsicBlur only works on ARGB_8888 bitmaps. Only the processed copy is kept,
+        // so the decoded image skips the memory cache and goes back to the bitmap pool once it
+        // has been cleared
+        FutureTarget<Bitmap> target = Glide.with(mContext)
+                .load(imageUrl)
+                .asBitmap()
+                .format(DecodeFormat.PREFER_ARGB_8888)
+                .skipMemoryCache(true)
+                .centerCrop()
+                .into(mWidth, mHeight);
+        Bitmap copy = null;
+        try {
+            Bitmap source = target.get();
+            if (source.getConfig() != Bitmap.Config.ARGB_8888) {
+                // Mutable, as the pool only takes mutable bitmaps
+                copy = source.copy(Bitmap.Config.ARGB_8888, true);
+                source = copy;
+            }
+            return blurAndDim(source);
+        } finally {
+            target.clear();
+            if (copy != null && !mBitmapPool.put(copy)) copy.recycle();
+        }
+    }
+
+    private synchronized Bitmap blurAndDim(Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        Bitmap output = mBitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+        if (output == null) output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+        if (mRenderScript == null) mRenderScript = RenderScript.create(mContext);
+        Allocation input = Allocation.createFromBitmap(mRenderScript, source);
+        Allocation blurred = Allocation.createTyped(mRenderScript, input.getType());
+        ScriptIntrinsicBlur script =
+                ScriptIntrinsicBlur.create(mRenderScript, Element.U8_4(mRenderScript));
+        script.setRadius(BLUR_RADIUS);
+        script.setInput(input);
+        script.forEach(blurred);
+        blurred.copyTo(output);
+        input.destroy();
+        blurred.destroy();
+        script.destroy();
+
+        new Canvas(output).drawColor(mDimColor);
+        return output;
+    }
+}
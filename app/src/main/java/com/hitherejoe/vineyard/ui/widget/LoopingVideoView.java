@@ -1,58 +1,84 @@
 package com.hitherejoe.vineyard.ui.widget;
 
 import android.content.Context;
-import android.media.MediaPlayer;
-import android.net.Uri;
+import android.graphics.SurfaceTexture;
 import android.util.AttributeSet;
-import android.widget.VideoView;
+import android.view.Surface;
+import android.view.TextureView;
 
-public class LoopingVideoView extends VideoView {
+/**
+ * Surface that looping previews are played on by the PreviewPlayerManager. Unlike a VideoView it
+ * doesn't hold a MediaPlayer of its own, so players can be shared. It is a TextureView rather
+ * than a SurfaceView so that it moves in step with the card it is shown over, see PreviewOverlay.
+ */
+public class LoopingVideoView extends TextureView implements TextureView.SurfaceTextureListener {
 
-    private MediaPlayer mMediaPlayer;
+    private SurfaceListener mSurfaceListener;
+    private Surface mSurface;
 
     public LoopingVideoView(Context context) {
         super(context);
+        init();
     }
 
     public LoopingVideoView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init();
     }
 
     public LoopingVideoView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        init();
     }
 
     public LoopingVideoView(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
+        init();
     }
 
-    public void setupMediaPlayer(String url, final OnVideoReadyListener onVideoReadyListener) {
-        setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
-            @Override
-            public void onPrepared(MediaPlayer mp) {
-                mMediaPlayer = mp;
-                mMediaPlayer.setOnBufferingUpdateListener(new MediaPlayer.OnBufferingUpdateListener() {
-                    @Override
-                    public void onBufferingUpdate(MediaPlayer mp, int percent) {
-                        if (percent > 20) onVideoReadyListener.onVideoReady();
-                    }
-                });
-                mMediaPlayer.setLooping(true);
-                mMediaPlayer.setVolume(0, 0);
-                mMediaPlayer.start();
-            }
-        });
-        setVideoURI(Uri.parse(url));
-    }
-
-    public void stopMediaPlayer() {
-        if (mMediaPlayer != null) {
-            mMediaPlayer.release();
+    private void init() {
+        // Shows whatever is underneath until the first frame has been drawn
+        setOpaque(false);
+        setSurfaceTextureListener(this);
+    }
+
+    public void setSurfaceListener(SurfaceListener surfaceListener) {
+        mSurfaceListener = surfaceListener;
+    }
+
+    /**
+     * Returns the surface to draw to, or null if it doesn't exist yet.
+     */
+    public Surface getSurface() {
+        return mSurface;
+    }
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture, int width, int height) {
+        mSurface = new Surface(surfaceTexture);
+        if (mSurfaceListener != null) mSurfaceListener.onSurfaceCreated();
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) { }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
+        if (mSurfaceListener != null) mSurfaceListener.onSurfaceDestroyed();
+        if (mSurface != null) {
+            mSurface.release();
+            mSurface = null;
         }
+        return true;
     }
 
-    public interface OnVideoReadyListener {
-        void onVideoReady();
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surface) { }
+
+    public interface SurfaceListener {
+        void onSurfaceCreated();
+
+        void onSurfaceDestroyed();
     }
 
 }
@@ -0,0 +1,193 @@
+package com.hitherejoe.vineyard.ui.widget;
+
+import android.content.Context;
+import android.view.Surface;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.widget.FrameLayout;
+import android.widget.ProgressBar;
+
+import com.hitherejoe.vineyard.R;
+import com.hitherejoe.vineyard.VineyardApplication;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+
+/**
+ * The one video surface that card previews are played on, shared by all of the cards in a
+ * window. While a preview is shown the overlay is kept over the image of the focused card, so
+ * the cards themselves only need an image and text.
+ */
+public class PreviewOverlay extends FrameLayout implements PreviewPlayerManager.PreviewTarget,
+        LoopingVideoView.SurfaceListener, ViewTreeObserver.OnPreDrawListener {
+
+    @Bind(R.id.preview_video)
+    LoopingVideoView mVideoView;
+
+    @Bind(R.id.preview_dim)
+    View mDimView;
+
+    @Bind(R.id.preview_progress)
+    ProgressBar mProgressBar;
+
+    private final PreviewPlayerManager mPreviewPlayerManager;
+    private final int[] mAnchorLocation;
+    private final int[] mParentLocation;
+    private View mAnchor;
+    private boolean mIsTracking;
+
+    /**
+     * Returns the overlay for the window that the given view is in, adding it if there isn't one
+     * yet. Returns null if the view isn't attached to a window.
+     */
+    public static PreviewOverlay get(View view) {
+        View content = view.getRootView().findViewById(android.R.id.content);
+        if (!(content instanceof FrameLayout)) return null;
+        PreviewOverlay overlay = (PreviewOverlay) content.findViewById(R.id.preview_overlay);
+        if (overlay == null) {
+            overlay = new PreviewOverlay(content.getContext());
+            ((FrameLayout) content).addView(overlay, new FrameLayout.LayoutParams(0, 0));
+        }
+        return overlay;
+    }
+
+    /**
+     * Returns the overlay for the window that the given view is in, or null if there isn't one.
+     */
+    public static PreviewOverlay find(View view) {
+        return (PreviewOverlay) view.getRootView().findViewById(R.id.preview_overlay);
+    }
+
+    private PreviewOverlay(Context context) {
+        super(context);
+        setId(R.id.preview_overlay);
+        inflate(context, R.layout.widget_preview_overlay, this);
+        ButterKnife.bind(this);
+        mVideoView.setSurfaceListener(this);
+        mPreviewPlayerManager = VineyardApplication.get(context).getComponent()
+                .previewPlayerManager();
+        mAnchorLocation = new int[2];
+        mParentLocation = new int[2];
+        setFocusable(false);
+        setPivotX(0);
+        setPivotY(0);
+        setVisibility(View.INVISIBLE);
+    }
+
+    /**
+     * Plays a preview of the given video over the given view once it has kept focus for long
+     * enough, see PreviewPlayerManager.
+     */
+    public void startPreview(View anchor, String videoUrl) {
+        mAnchor = anchor;
+        mPreviewPlayerManager.requestPreview(this, videoUrl);
+    }
+
+    public void stopPreview(View anchor) {
+        if (mAnchor != anchor) return;
+        mPreviewPlayerManager.cancelPreview(this);
+        onPreviewStopped();
+        mAnchor = null;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // The manager outlives the window, so it mustn't keep hold of the overlay
+        mPreviewPlayerManager.cancelPreview(this);
+        stopTracking();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public Surface getPreviewSurface() {
+        return mVideoView.getSurface();
+    }
+
+    @Override
+    public void onPreviewLoading() {
+        if (mAnchor == null) return;
+        ViewGroup.LayoutParams layoutParams = getLayoutParams();
+        if (layoutParams.width != mAnchor.getWidth()
+                || layoutParams.height != mAnchor.getHeight()) {
+            layoutParams.width = mAnchor.getWidth();
+            layoutParams.height = mAnchor.getHeight();
+            setLayoutParams(layoutParams);
+        }
+        updatePosition();
+        startTracking();
+        mDimView.setVisibility(View.VISIBLE);
+        mProgressBar.setVisibility(View.VISIBLE);
+        setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void onPreviewStarted() {
+        mDimView.setVisibility(View.INVISIBLE);
+        mProgressBar.setVisibility(View.INVISIBLE);
+    }
+
+    @Override
+    public void onPreviewStopped() {
+        stopTracking();
+        setVisibility(View.INVISIBLE);
+    }
+
+    @Override
+    public void onSurfaceCreated() {
+        mPreviewPlayerManager.onSurfaceCreated(this);
+    }
+
+    @Override
+    public void onSurfaceDestroyed() {
+        mPreviewPlayerManager.onSurfaceDestroyed(this);
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if (mAnchor == null) return true;
+        if (!mAnchor.isAttachedToWindow() || !mAnchor.isShown()) {
+            // e.g. the card has been scrolled off screen and recycled
+            stopPreview(mAnchor);
+        } else {
+            updatePosition();
+        }
+        return true;
+    }
+
+    private void startTracking() {
+        if (mIsTracking) return;
+        getViewTreeObserver().addOnPreDrawListener(this);
+        mIsTracking = true;
+    }
+
+    private void stopTracking() {
+        if (!mIsTracking) return;
+        getViewTreeObserver().removeOnPreDrawListener(this);
+        mIsTracking = false;
+    }
+
+    /**
+     * Moves the overlay over the anchor, following it as it scrolls and as it's zoomed when
+     * focused. The overlay is the unscaled size of the anchor and scaled to match, so following
+     * it doesn't need another layout pass.
+     */
+    private void updatePosition() {
+        View parent = (View) getParent();
+        mAnchor.getLocationInWindow(mAnchorLocation);
+        parent.getLocationInWindow(mParentLocation);
+        float scaleX = 1f;
+        float scaleY = 1f;
+        ViewParent view = mAnchor;
+        while (view instanceof View && view != parent) {
+            scaleX *= ((View) view).getScaleX();
+            scaleY *= ((View) view).getScaleY();
+            view = view.getParent();
+        }
+        setTranslationX(mAnchorLocation[0] - mParentLocation[0]);
+        setTranslationY(mAnchorLocation[1] - mParentLocation[1]);
+        setScaleX(scaleX);
+        setScaleY(scaleY);
+    }
+}
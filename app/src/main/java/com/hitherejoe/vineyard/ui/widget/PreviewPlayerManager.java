@@ -0,0 +1,306 @@
+package com.hitherejoe.vineyard.ui.widget;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Surface;
+
+import com.hitherejoe.vineyard.data.remote.VideoProxy;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Plays the muted, looping previews shown on focused cards using a small pool of MediaPlayers,
+ * so that moving focus across a row doesn't create (and tear down) a player, decoder and network
+ * stream for every card passed over. A preview only starts once its card has kept focus for a
+ * short while, a prepare that is still in progress when focus moves on is cancelled and players
+ * that are still prepared are reused when focus comes back to their video. All methods must be
+ * called on the main thread.
+ */
+@Singleton
+public class PreviewPlayerManager {
+
+    // Each player holds on to a hardware decoder, which TV devices only have a couple of
+    public static final int DEFAULT_MAX_PLAYERS = 2;
+    public static final long DEFAULT_FOCUS_DWELL_MILLIS = 500;
+
+    /**
+     * Somewhere that a preview can be shown, see PreviewOverlay.
+     */
+    public interface PreviewTarget {
+
+        /**
+         * Returns the surface to play the preview on, or null if it hasn't been created yet, in
+         * which case onSurfaceCreated() should be called once it has.
+         */
+        Surface getPreviewSurface();
+
+        /** Called once focus has stayed on the target and its preview is being prepared. */
+        void onPreviewLoading();
+
+        /** Called once the first frame of the preview is being shown. */
+        void onPreviewStarted();
+
+        /** Called when the preview stops, e.g. because it failed to play. */
+        void onPreviewStopped();
+    }
+
+    private final VideoProxy mVideoProxy;
+    private final Handler mHandler;
+    // Least recently used first
+    private final LinkedList<PreviewPlayer> mPlayers;
+    private final Runnable mStartPreviewRunnable;
+    private int mMaxPlayers;
+    private long mFocusDwellMillis;
+    private PreviewTarget mPendingTarget;
+    private String mPendingVideoUrl;
+    private PreviewPlayer mActivePlayer;
+    // A playback activity may start before the one it replaces has been destroyed
+    private int mPlaybackSessions;
+
+    @Inject
+    public PreviewPlayerManager(VideoProxy videoProxy) {
+        mVideoProxy = videoProxy;
+        mHandler = new Handler(Looper.getMainLooper());
+        mPlayers = new LinkedList<>();
+        mMaxPlayers = DEFAULT_MAX_PLAYERS;
+        mFocusDwellMillis = DEFAULT_FOCUS_DWELL_MILLIS;
+        mStartPreviewRunnable = new Runnable() {
+            @Override
+            public void run() {
+                startPendingPreview();
+            }
+        };
+    }
+
+    /**
+     * Sets the number of players, and so decoders, that can be held at once.
+     */
+    public void setMaxPlayers(int maxPlayers) {
+        mMaxPlayers = Math.max(1, maxPlayers);
+        while (mPlayers.size() > mMaxPlayers) {
+            releasePlayer(mPlayers.getFirst());
+        }
+    }
+
+    /**
+     * Sets how long a target needs to keep focus for before its preview is started.
+     */
+    public void setFocusDwellMillis(long focusDwellMillis) {
+        mFocusDwellMillis = focusDwellMillis;
+    }
+
+    /**
+     * Plays the given video on the given target once the focus dwell time has passed, stopping
+     * any other preview.
+     */
+    public void requestPreview(PreviewTarget target, String videoUrl) {
+        stopActivePreview();
+        mHandler.removeCallbacks(mStartPreviewRunnable);
+        if (mPlaybackSessions > 0) return;
+        mPendingTarget = target;
+        mPendingVideoUrl = videoUrl;
+        mHandler.postDelayed(mStartPreviewRunnable, mFocusDwellMillis);
+    }
+
+    /**
+     * Stops the preview on the given target, or stops it from starting if it's still waiting.
+     */
+    public void cancelPreview(PreviewTarget target) {
+        if (mPendingTarget == target) {
+            mHandler.removeCallbacks(mStartPreviewRunnable);
+            mPendingTarget = null;
+            mPendingVideoUrl = null;
+        }
+        if (mActivePlayer != null && mActivePlayer.target == target) stopActivePreview();
+    }
+
+    public void onSurfaceCreated(PreviewTarget target) {
+        PreviewPlayer player = mActivePlayer;
+        if (player != null && player.target == target && player.state == PreviewPlayer.PREPARED) {
+            attachAndStart(player);
+        }
+    }
+
+    /**
+     * Must be called before the target's surface is released, so that the player stops drawing
+     * to it.
+     */
+    public void onSurfaceDestroyed(PreviewTarget target) {
+        if (mActivePlayer != null && mActivePlayer.target == target) stopActivePreview();
+    }
+
+    /**
+     * Stops any preview and releases all of the players, e.g. to free up the decoders before
+     * playing a video in full.
+     */
+    public void release() {
+        mHandler.removeCallbacks(mStartPreviewRunnable);
+        mPendingTarget = null;
+        mPendingVideoUrl = null;
+        stopActivePreview();
+        while (!mPlayers.isEmpty()) {
+            releasePlayer(mPlayers.getFirst());
+        }
+    }
+
+    /**
+     * Stops any preview and releases all of the players while a video is played in full, so that
+     * previews don't compete with it for a decoder. No previews are played until each call has
+     * been matched by a call to endPlaybackSession().
+     */
+    public void beginPlaybackSession() {
+        mPlaybackSessions++;
+        release();
+    }
+
+    public void endPlaybackSession() {
+        if (mPlaybackSessions > 0) mPlaybackSessions--;
+    }
+
+    private void startPendingPreview() {
+        PreviewTarget target = mPendingTarget;
+        String videoUrl = mPendingVideoUrl;
+        mPendingTarget = null;
+        mPendingVideoUrl = null;
+        if (target == null || videoUrl == null) return;
+
+        PreviewPlayer player = findPlayer(videoUrl);
+        if (player == null) player = obtainPlayer();
+        // Most recently used last, so that it's the last to be reused for another video
+        mPlayers.remove(player);
+        mPlayers.addLast(player);
+        player.target = target;
+        mActivePlayer = player;
+        target.onPreviewLoading();
+
+        if (player.state == PreviewPlayer.PREPARED) {
+            attachAndStart(player);
+        } else if (player.state == PreviewPlayer.IDLE) {
+            player.prepare(videoUrl);
+        }
+        // Otherwise it's still preparing this video and will start once it has
+    }
+
+    private PreviewPlayer findPlayer(String videoUrl) {
+        for (PreviewPlayer player : mPlayers) {
+            if (videoUrl.equals(player.videoUrl)) return player;
+        }
+        return null;
+    }
+
+    private PreviewPlayer obtainPlayer() {
+        if (mPlayers.size() < mMaxPlayers) {
+            PreviewPlayer player = new PreviewPlayer();
+            mPlayers.addLast(player);
+            return player;
+        }
+        PreviewPlayer player = mPlayers.getFirst();
+        player.reset();
+        return player;
+    }
+
+    private void attachAndStart(PreviewPlayer player) {
+        Surface surface = player.target.getPreviewSurface();
+        // Started from onSurfaceCreated() instead once there is a surface
+        if (surface == null) return;
+        player.mediaPlayer.setSurface(surface);
+        player.mediaPlayer.start();
+        if (player.hasRenderedFrame) player.target.onPreviewStarted();
+    }
+
+    private void stopActivePreview() {
+        PreviewPlayer player = mActivePlayer;
+        if (player == null) return;
+        mActivePlayer = null;
+        if (player.state == PreviewPlayer.PREPARING) {
+            // Resetting is the only way to cancel a prepare, the player can then be reused
+            player.reset();
+        } else if (player.state == PreviewPlayer.PREPARED) {
+            // Kept prepared so that it can carry on where it left off if focus comes back
+            if (player.mediaPlayer.isPlaying()) player.mediaPlayer.pause();
+            player.mediaPlayer.setSurface(null);
+        }
+        PreviewTarget target = player.target;
+        player.target = null;
+        if (target != null) target.onPreviewStopped();
+    }
+
+    private void releasePlayer(PreviewPlayer player) {
+        if (player == mActivePlayer) stopActivePreview();
+        player.mediaPlayer.release();
+        mPlayers.remove(player);
+    }
+
+    private class PreviewPlayer implements MediaPlayer.OnPreparedListener,
+            MediaPlayer.OnInfoListener, MediaPlayer.OnErrorListener {
+
+        static final int IDLE = 0;
+        static final int PREPARING = 1;
+        static final int PREPARED = 2;
+
+        final MediaPlayer mediaPlayer;
+        int state;
+        String videoUrl;
+        PreviewTarget target;
+        boolean hasRenderedFrame;
+
+        PreviewPlayer() {
+            mediaPlayer = new MediaPlayer();
+            mediaPlayer.setOnPreparedListener(this);
+            mediaPlayer.setOnInfoListener(this);
+            mediaPlayer.setOnErrorListener(this);
+            state = IDLE;
+        }
+
+        void prepare(String url) {
+            videoUrl = url;
+            hasRenderedFrame = false;
+            try {
+                mediaPlayer.setDataSource(mVideoProxy.getVideoPath(url));
+                mediaPlayer.setLooping(true);
+                mediaPlayer.setVolume(0, 0);
+                mediaPlayer.prepareAsync();
+                state = PREPARING;
+            } catch (IOException | IllegalStateException e) {
+                Timber.e(e, "There was an error preparing the preview for " + url);
+                onError(mediaPlayer, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+            }
+        }
+
+        void reset() {
+            mediaPlayer.reset();
+            state = IDLE;
+            videoUrl = null;
+            hasRenderedFrame = false;
+        }
+
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            state = PREPARED;
+            if (this == mActivePlayer) attachAndStart(this);
+        }
+
+        @Override
+        public boolean onInfo(MediaPlayer mp, int what, int extra) {
+            if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
+                hasRenderedFrame = true;
+                if (this == mActivePlayer) target.onPreviewStarted();
+            }
+            return false;
+        }
+
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            if (this == mActivePlayer) stopActivePreview();
+            reset();
+            return true;
+        }
+    }
+}
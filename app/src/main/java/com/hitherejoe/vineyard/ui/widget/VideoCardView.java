@@ -24,14 +24,15 @@ public class VideoCardView extends BaseCardView {
     public static final int CARD_TYPE_FLAG_TITLE = 1;
     public static final int CARD_TYPE_FLAG_CONTENT = 2;
 
-    @Bind(R.id.layout_preview_card)
-    PreviewCardView mPreviewCard;
+    @Bind(R.id.main_image)
+    ImageView mImageView;
 
     @Bind(R.id.info_field)
     ViewGroup mInfoArea;
 
     private TextView mTitleView;
     private TextView mContentView;
+    private String mVideoUrl;
     private boolean mAttachedToWindow;
 
     public VideoCardView(Context context, int styleResId) {
@@ -53,13 +54,11 @@ public class VideoCardView extends BaseCardView {
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         mAttachedToWindow = true;
-        ImageView mImageView = mPreviewCard.getImageView();
         if (mImageView.getAlpha() == 0) fadeIn();
     }
 
     @Override
     protected void onDetachedFromWindow() {
-        ImageView mImageView = mPreviewCard.getImageView();
         mAttachedToWindow = false;
         mImageView.animate().cancel();
         mImageView.setAlpha(1f);
@@ -144,17 +143,17 @@ public class VideoCardView extends BaseCardView {
      * Returns the main image view.
      */
     public final ImageView getMainImageView() {
-        return mPreviewCard.getImageView();
+        return mImageView;
     }
 
     /**
      * Sets the layout dimensions of the ImageView.
      */
     public void setMainContainerDimensions(int width, int height) {
-        ViewGroup.LayoutParams lp = mPreviewCard.getLayoutParams();
+        ViewGroup.LayoutParams lp = mImageView.getLayoutParams();
         lp.width = width;
         lp.height = height;
-        mPreviewCard.setLayoutParams(lp);
+        mImageView.setLayoutParams(lp);
     }
 
     /**
@@ -167,17 +166,21 @@ public class VideoCardView extends BaseCardView {
     }
 
     public void setVideoUrl(String url) {
-        mPreviewCard.setVideoUrl(url);
+        mVideoUrl = url;
     }
 
+    /**
+     * Plays a preview of the video over the card's image, see PreviewOverlay.
+     */
     public void startVideo() {
-        if (NetworkUtil.isNetworkConnected(getContext())) {
-            mPreviewCard.setLoading();
-        }
+        if (mVideoUrl == null || !NetworkUtil.isNetworkConnected(getContext())) return;
+        PreviewOverlay previewOverlay = PreviewOverlay.get(this);
+        if (previewOverlay != null) previewOverlay.startPreview(mImageView, mVideoUrl);
     }
 
     public void stopVideo() {
-        mPreviewCard.setFinished();
+        PreviewOverlay previewOverlay = PreviewOverlay.find(this);
+        if (previewOverlay != null) previewOverlay.stopPreview(mImageView);
     }
 
     /**
@@ -201,7 +204,6 @@ public class VideoCardView extends BaseCardView {
     }
 
     private void fadeIn() {
-        ImageView mImageView = mPreviewCard.getImageView();
         mImageView.setAlpha(0f);
         if (mAttachedToWindow) {
             int duration =
@@ -0,0 +1,180 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.remote.CachePolicy;
+import com.hitherejoe.vineyard.data.remote.CachePolicyInterceptor;
+import com.hitherejoe.vineyard.data.remote.StaleWhileRevalidateInterceptor;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+import com.hitherejoe.vineyard.util.FakeInterceptorChain;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachePolicyTest {
+
+    private static final String STALE_WARNING = "110 HttpURLConnection \"Response is stale\"";
+
+    @Mock OkHttpClient mMockClient;
+    @Mock Call mMockCall;
+    private Map<String, CachePolicy> mPolicies;
+
+    @Before
+    public void setUp() {
+        mPolicies = CachePolicy.defaultPolicies();
+        when(mMockClient.newCall(any(Request.class))).thenReturn(mMockCall);
+    }
+
+    @Test
+    public void shouldFindPolicyByPathPrefix() throws Exception {
+        assertSame(mPolicies.get(CachePolicy.PATH_TIMELINES),
+                CachePolicy.forRequest(mPolicies, get("timelines/popular?page=1")));
+        assertSame(mPolicies.get(CachePolicy.PATH_SEARCH),
+                CachePolicy.forRequest(mPolicies, get("search/tags/skate")));
+        assertSame(mPolicies.get(CachePolicy.PATH_PROFILES),
+                CachePolicy.forRequest(mPolicies, get("users/profiles/1234")));
+        assertNull(CachePolicy.forRequest(mPolicies, get("users/me")));
+    }
+
+    @Test
+    public void shouldNotCacheRequestsOtherThanGet() throws Exception {
+        Request request = new Request.Builder()
+                .url(VineyardService.ENDPOINT + "timelines/popular")
+                .post(RequestBody.create(null, new byte[0]))
+                .build();
+        assertNull(CachePolicy.forRequest(mPolicies, request));
+    }
+
+    @Test
+    public void shouldReplaceCacheHeadersWithPolicy() throws Exception {
+        FakeInterceptorChain chain = new FakeInterceptorChain(get("timelines/popular"),
+                FakeInterceptorChain.response(200)
+                        .header("Cache-Control", "no-cache, no-store")
+                        .header("Pragma", "no-cache")
+                        .header("Expires", "0"));
+
+        Response response = new CachePolicyInterceptor(mPolicies).intercept(chain);
+        int maxAge = mPolicies.get(CachePolicy.PATH_TIMELINES).maxAgeSeconds;
+        assertEquals("public, max-age=" + maxAge, response.header("Cache-Control"));
+        assertNull(response.header("Pragma"));
+        assertNull(response.header("Expires"));
+        assertEquals(maxAge, response.cacheControl().maxAgeSeconds());
+    }
+
+    @Test
+    public void shouldNotCacheErrorResponses() throws Exception {
+        FakeInterceptorChain chain = new FakeInterceptorChain(get("timelines/popular"),
+                FakeInterceptorChain.response(500).header("Cache-Control", "no-store"));
+
+        Response response = new CachePolicyInterceptor(mPolicies).intercept(chain);
+        assertEquals("no-store", response.header("Cache-Control"));
+    }
+
+    @Test
+    public void shouldNotCacheEndpointsWithoutPolicy() throws Exception {
+        FakeInterceptorChain chain = new FakeInterceptorChain(get("users/me"),
+                FakeInterceptorChain.response(200).header("Cache-Control", "no-store"));
+
+        Response response = new CachePolicyInterceptor(mPolicies).intercept(chain);
+        assertEquals("no-store", response.header("Cache-Control"));
+    }
+
+    @Test
+    public void shouldAllowStaleResponsesForEndpointsWithPolicy() throws Exception {
+        FakeInterceptorChain chain = new FakeInterceptorChain(get("search/users/joe"),
+                FakeInterceptorChain.response(200));
+
+        new StaleWhileRevalidateInterceptor(mMockClient, mPolicies).intercept(chain);
+        CacheControl cacheControl = chain.getProceededRequests().get(0).cacheControl();
+        int staleSeconds = mPolicies.get(CachePolicy.PATH_SEARCH).staleWhileRevalidateSeconds;
+        assertEquals(staleSeconds, cacheControl.maxStaleSeconds());
+    }
+
+    @Test
+    public void shouldPassOtherRequestsStraightThrough() throws Exception {
+        Request request = get("users/me");
+        FakeInterceptorChain chain =
+                new FakeInterceptorChain(request, FakeInterceptorChain.response(200));
+
+        new StaleWhileRevalidateInterceptor(mMockClient, mPolicies).intercept(chain);
+        assertSame(request, chain.getProceededRequests().get(0));
+
+        Request revalidation = get("timelines/popular").newBuilder()
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .build();
+        chain = new FakeInterceptorChain(revalidation, FakeInterceptorChain.response(200));
+        new StaleWhileRevalidateInterceptor(mMockClient, mPolicies).intercept(chain);
+        assertSame(revalidation, chain.getProceededRequests().get(0));
+    }
+
+    @Test
+    public void shouldRevalidateStaleResponseInBackground() throws Exception {
+        StaleWhileRevalidateInterceptor interceptor =
+                new StaleWhileRevalidateInterceptor(mMockClient, mPolicies);
+        Request request = get("timelines/popular");
+        Response stale = interceptor.intercept(new FakeInterceptorChain(request,
+                FakeInterceptorChain.response(200).header("Warning", STALE_WARNING)));
+        assertEquals(STALE_WARNING, stale.header("Warning"));
+
+        ArgumentCaptor<Request> networkRequest = ArgumentCaptor.forClass(Request.class);
+        verify(mMockClient).newCall(networkRequest.capture());
+        assertEquals(request.urlString(), networkRequest.getValue().urlString());
+        assertTrue(networkRequest.getValue().cacheControl().noCache());
+        verify(mMockCall).enqueue(any(Callback.class));
+    }
+
+    @Test
+    public void shouldRevalidateEachUrlOnceAtATime() throws Exception {
+        StaleWhileRevalidateInterceptor interceptor =
+                new StaleWhileRevalidateInterceptor(mMockClient, mPolicies);
+        Request request = get("timelines/popular");
+        for (int i = 0; i < 3; i++) {
+            interceptor.intercept(new FakeInterceptorChain(request,
+                    FakeInterceptorChain.response(200).header("Warning", STALE_WARNING)));
+        }
+        verify(mMockClient, times(1)).newCall(any(Request.class));
+
+        // Once the revalidation has finished, the next stale response is revalidated again
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(mMockCall).enqueue(callback.capture());
+        callback.getValue().onResponse(FakeInterceptorChain.response(200).request(request).build());
+        interceptor.intercept(new FakeInterceptorChain(request,
+                FakeInterceptorChain.response(200).header("Warning", STALE_WARNING)));
+        verify(mMockClient, times(2)).newCall(any(Request.class));
+    }
+
+    @Test
+    public void shouldNotRevalidateFreshResponses() throws Exception {
+        StaleWhileRevalidateInterceptor interceptor =
+                new StaleWhileRevalidateInterceptor(mMockClient, mPolicies);
+        interceptor.intercept(new FakeInterceptorChain(get("timelines/popular"),
+                FakeInterceptorChain.response(200)));
+        verify(mMockClient, never()).newCall(any(Request.class));
+    }
+
+    private static Request get(String path) {
+        return new Request.Builder().url(VineyardService.ENDPOINT + path).build();
+    }
+}
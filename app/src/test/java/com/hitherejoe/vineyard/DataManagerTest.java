@@ -1,33 +1,58 @@
 package com.hitherejoe.vineyard;
 
-
+import com.google.gson.Gson;
 import com.hitherejoe.vineyard.data.DataManager;
+import com.hitherejoe.vineyard.data.SearchResultsMerger;
+import com.hitherejoe.vineyard.data.local.DatabaseHelper;
 import com.hitherejoe.vineyard.data.local.PreferencesHelper;
 import com.hitherejoe.vineyard.data.model.Authentication;
+import com.hitherejoe.vineyard.data.model.Feed;
+import com.hitherejoe.vineyard.data.model.Playlist;
 import com.hitherejoe.vineyard.data.model.Post;
 import com.hitherejoe.vineyard.data.model.Tag;
 import com.hitherejoe.vineyard.data.model.User;
+import com.hitherejoe.vineyard.data.remote.NetworkMetrics;
+import com.hitherejoe.vineyard.data.remote.PostResponseDecoder;
 import com.hitherejoe.vineyard.data.remote.VineyardService;
 import com.hitherejoe.vineyard.test.common.TestDataFactory;
 import com.hitherejoe.vineyard.util.MockModelsUtil;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.ResponseBody;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
 import rx.observers.TestSubscriber;
-
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,12 +60,16 @@ import static org.mockito.Mockito.when;
 public class DataManagerTest {
 
     @Mock PreferencesHelper mMockPreferencesHelper;
+    @Mock DatabaseHelper mMockDatabaseHelper;
     @Mock VineyardService mMockVineyardService;
     private DataManager mDataManager;
 
     @Before
     public void setUp() {
-        mDataManager = new DataManager(mMockPreferencesHelper, mMockVineyardService);
+        when(mMockDatabaseHelper.getTimelinePage(any(Feed.class), anyString(), anyString()))
+                .thenReturn(Observable.<VineyardService.PostResponse>empty());
+        mDataManager = new DataManager(mMockPreferencesHelper, mMockDatabaseHelper,
+                mMockVineyardService, new NetworkMetrics(), Schedulers.immediate());
     }
 
     @Test
@@ -104,17 +133,133 @@ public class DataManagerTest {
         String page = "1";
         String anchor = "anchor";
 
-        List<Post> mockPostLists = MockModelsUtil.createMockListOfPosts(20);
-        VineyardService.PostResponse popularResponse = new VineyardService.PostResponse();
-        popularResponse.data = new VineyardService.PostResponse.Data();
-        popularResponse.data.records = mockPostLists;
+        VineyardService.PostResponse popularResponse = createPostResponse(20);
         when(mMockVineyardService.getPopularPosts(eq(page), eq(anchor)))
-                .thenReturn(Observable.just(popularResponse));
+                .thenReturn(Observable.just(toResponseBody(popularResponse)));
 
         TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>();
         mDataManager.getPopularPosts(page, anchor).subscribe(result);
         result.assertNoErrors();
-        result.assertValue(popularResponse);
+        assertStreamedPage(popularResponse, result.getOnNextEvents());
+    }
+
+    @Test
+    public void shouldStreamPostsInPartialChunks() throws Exception {
+        String page = "1";
+        String anchor = "anchor";
+
+        VineyardService.PostResponse popularResponse = createPostResponse(20);
+        when(mMockVineyardService.getPopularPosts(eq(page), eq(anchor)))
+                .thenReturn(Observable.just(toResponseBody(popularResponse)));
+
+        TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>();
+        mDataManager.getPopularPosts(page, anchor).subscribe(result);
+        result.assertNoErrors();
+        List<VineyardService.PostResponse> chunks = result.getOnNextEvents();
+        assertTrue(chunks.size() > 1);
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            assertTrue(chunks.get(i).data.partial);
+        }
+        assertFalse(chunks.get(chunks.size() - 1).data.partial);
+    }
+
+    @Test
+    public void shouldOnlyDecodeRequestedChunks() throws Exception {
+        VineyardService.PostResponse popularResponse = createPostResponse(20);
+        PostResponseDecoder decoder = new PostResponseDecoder(new Gson());
+
+        TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>(0);
+        decoder.decode(toResponseBody(popularResponse)).subscribe(result);
+        assertTrue(result.getOnNextEvents().isEmpty());
+
+        result.requestMore(1);
+        result.assertValueCount(1);
+        assertTrue(result.getOnNextEvents().get(0).data.partial);
+
+        result.requestMore(Long.MAX_VALUE);
+        result.assertNoErrors();
+        result.assertCompleted();
+        assertStreamedPage(popularResponse, result.getOnNextEvents());
+    }
+
+    @Test
+    public void shouldShareRequestsForTheSamePage() throws Exception {
+        String page = "1";
+        String anchor = "anchor";
+
+        VineyardService.PostResponse popularResponse = createPostResponse(20);
+        final AtomicInteger requestCount = new AtomicInteger();
+        when(mMockVineyardService.getPopularPosts(eq(page), eq(anchor)))
+                .thenReturn(Observable.just(toResponseBody(popularResponse))
+                        .doOnSubscribe(new Action0() {
+                            @Override
+                            public void call() {
+                                requestCount.incrementAndGet();
+                            }
+                        }));
+
+        TestSubscriber<VineyardService.PostResponse> first = new TestSubscriber<>();
+        TestSubscriber<VineyardService.PostResponse> second = new TestSubscriber<>();
+        mDataManager.getPopularPosts(page, anchor).subscribe(first);
+        mDataManager.getPopularPosts(page, anchor).subscribe(second);
+        first.assertNoErrors();
+        second.assertNoErrors();
+        assertStreamedPage(popularResponse, first.getOnNextEvents());
+        assertStreamedPage(popularResponse, second.getOnNextEvents());
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void shouldPeekRecentlyLoadedPage() throws Exception {
+        String page = "1";
+        String anchor = "anchor";
+        assertNull(mDataManager.peekPosts(Feed.popular(), page, anchor));
+
+        VineyardService.PostResponse popularResponse = createPostResponse(20);
+        when(mMockVineyardService.getPopularPosts(eq(page), eq(anchor)))
+                .thenReturn(Observable.just(toResponseBody(popularResponse)));
+        mDataManager.getPopularPosts(page, anchor).subscribe(
+                new TestSubscriber<VineyardService.PostResponse>());
+
+        VineyardService.PostResponse cachedPage =
+                mDataManager.peekPosts(Feed.popular(), page, anchor);
+        assertNotNull(cachedPage);
+        assertEquals(popularResponse.data.records, cachedPage.data.records);
+        assertEquals(popularResponse.data.nextPage, cachedPage.data.nextPage);
+        assertNull(mDataManager.peekPosts(Feed.editorsPicks(), page, anchor));
+    }
+
+    @Test
+    public void shouldGetStoredPopularPostsBeforeRemotePosts() throws Exception {
+        String page = "1";
+        String anchor = "anchor";
+
+        VineyardService.PostResponse storedResponse = createPostResponse(5);
+        when(mMockDatabaseHelper.getTimelinePage(eq(Feed.popular()), eq(page), eq(anchor)))
+                .thenReturn(Observable.just(storedResponse));
+
+        VineyardService.PostResponse popularResponse = createPostResponse(20);
+        when(mMockVineyardService.getPopularPosts(eq(page), eq(anchor)))
+                .thenReturn(Observable.just(toResponseBody(popularResponse)));
+
+        TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>();
+        mDataManager.getPopularPosts(page, anchor).subscribe(result);
+        result.assertNoErrors();
+        List<VineyardService.PostResponse> events = result.getOnNextEvents();
+        assertEquals(storedResponse, events.get(0));
+        assertTrue(events.get(0).data.stored);
+        assertStreamedPage(popularResponse, events.subList(1, events.size()));
+        for (VineyardService.PostResponse chunk : events.subList(1, events.size())) {
+            assertFalse(chunk.data.stored);
+        }
+
+        ArgumentCaptor<VineyardService.PostResponse> storedPage =
+                ArgumentCaptor.forClass(VineyardService.PostResponse.class);
+        verify(mMockDatabaseHelper).setTimelinePage(
+                eq(Feed.popular()), eq(page), eq(anchor), storedPage.capture());
+        assertEquals(popularResponse.data.records, storedPage.getValue().data.records);
+        assertEquals(popularResponse.data.anchorStr, storedPage.getValue().data.anchorStr);
+        assertEquals(popularResponse.data.nextPage, storedPage.getValue().data.nextPage);
     }
 
     @Test
@@ -122,17 +267,14 @@ public class DataManagerTest {
         String page = "1";
         String anchor = "anchor";
 
-        List<Post> mockPostLists = MockModelsUtil.createMockListOfPosts(20);
-        VineyardService.PostResponse editorsPicksResponse = new VineyardService.PostResponse();
-        editorsPicksResponse.data = new VineyardService.PostResponse.Data();
-        editorsPicksResponse.data.records = mockPostLists;
+        VineyardService.PostResponse editorsPicksResponse = createPostResponse(20);
         when(mMockVineyardService.getEditorsPicksPosts(eq(page), eq(anchor)))
-                .thenReturn(Observable.just(editorsPicksResponse));
+                .thenReturn(Observable.just(toResponseBody(editorsPicksResponse)));
 
         TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>();
         mDataManager.getEditorsPicksPosts(page, anchor).subscribe(result);
         result.assertNoErrors();
-        result.assertValue(editorsPicksResponse);
+        assertStreamedPage(editorsPicksResponse, result.getOnNextEvents());
     }
 
     @Test
@@ -141,17 +283,30 @@ public class DataManagerTest {
         String page = "1";
         String anchor = "anchor";
 
-        List<Post> mockPostLists = MockModelsUtil.createMockListOfPosts(20);
-        VineyardService.PostResponse editorsPicksResponse = new VineyardService.PostResponse();
-        editorsPicksResponse.data = new VineyardService.PostResponse.Data();
-        editorsPicksResponse.data.records = mockPostLists;
+        VineyardService.PostResponse tagResponse = createPostResponse(20);
         when(mMockVineyardService.getPostsByTag(eq(tag), eq(page), eq(anchor)))
-                .thenReturn(Observable.just(editorsPicksResponse));
+                .thenReturn(Observable.just(toResponseBody(tagResponse)));
 
         TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>();
         mDataManager.getPostsByTag(tag, page, anchor).subscribe(result);
         result.assertNoErrors();
-        result.assertValue(editorsPicksResponse);
+        assertStreamedPage(tagResponse, result.getOnNextEvents());
+    }
+
+    @Test
+    public void shouldGetPostsForFeed() throws Exception {
+        String userId = "userId";
+        String page = "2";
+        String anchor = "anchor";
+
+        VineyardService.PostResponse userResponse = createPostResponse(20);
+        when(mMockVineyardService.getUserTimeline(eq(userId), eq(page), eq(anchor)))
+                .thenReturn(Observable.just(toResponseBody(userResponse)));
+
+        TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>();
+        mDataManager.getPosts(Feed.user(userId), page, anchor).subscribe(result);
+        result.assertNoErrors();
+        assertStreamedPage(userResponse, result.getOnNextEvents());
     }
 
     @Test
@@ -160,17 +315,14 @@ public class DataManagerTest {
         String page = "1";
         String anchor = "anchor";
 
-        List<Post> mockPostLists = MockModelsUtil.createMockListOfPosts(20);
-        VineyardService.PostResponse editorsPicksResponse = new VineyardService.PostResponse();
-        editorsPicksResponse.data = new VineyardService.PostResponse.Data();
-        editorsPicksResponse.data.records = mockPostLists;
+        VineyardService.PostResponse userResponse = createPostResponse(20);
         when(mMockVineyardService.getUserTimeline(eq(userId), eq(page), eq(anchor)))
-                .thenReturn(Observable.just(editorsPicksResponse));
+                .thenReturn(Observable.just(toResponseBody(userResponse)));
 
         TestSubscriber<VineyardService.PostResponse> result = new TestSubscriber<>();
         mDataManager.getPostsByUser(userId, page, anchor).subscribe(result);
         result.assertNoErrors();
-        result.assertValue(editorsPicksResponse);
+        assertStreamedPage(userResponse, result.getOnNextEvents());
     }
 
     @Test
@@ -228,29 +380,15 @@ public class DataManagerTest {
         keywordSearchResponse.list.addAll(mockPostTags);
         keywordSearchResponse.list.addAll(mockPostUsers);
 
+        // Most popular first, with tags ahead of equally popular users as they arrive first
         Collections.sort(keywordSearchResponse.list, new Comparator<Object>() {
             @Override
             public int compare(Object lhs, Object rhs) {
-                if (lhs instanceof Tag) {
-                    Tag tag = (Tag) lhs;
-                    if (rhs instanceof Tag) {
-                        Tag tagTwo = (Tag) rhs;
-                        return (int) (tag.postCount - tagTwo.postCount);
-                    } else if (rhs instanceof User) {
-                        User user = (User) rhs;
-                        return (int) (tag.postCount - user.followerCount);
-                    }
-                } else if (lhs instanceof User) {
-                    User user = (User) lhs;
-                    if (rhs instanceof Tag) {
-                        Tag tagTwo = (Tag) rhs;
-                        return (int) (user.followerCount - tagTwo.postCount);
-                    } else if (rhs instanceof User) {
-                        User userTwo = (User) rhs;
-                        return user.followerCount - userTwo.followerCount;
-                    }
-                }
-                return 0;
+                return Long.compare(popularityOf(rhs), popularityOf(lhs));
+            }
+
+            private long popularityOf(Object item) {
+                return item instanceof Tag ? ((Tag) item).postCount : ((User) item).followerCount;
             }
         });
 
@@ -271,7 +409,254 @@ public class DataManagerTest {
         TestSubscriber<VineyardService.KeywordSearchResponse> result = new TestSubscriber<>();
         mDataManager.search(userId, "0", tag, "0", userId).subscribe(result);
         result.assertNoErrors();
-        result.assertValue(keywordSearchResponse);
+        List<VineyardService.KeywordSearchResponse> responses = result.getOnNextEvents();
+        assertEquals(2, responses.size());
+        assertTrue(responses.get(0).partial);
+        assertFalse(responses.get(1).partial);
+        assertEquals(keywordSearchResponse, responses.get(1));
+    }
+
+    @Test
+    public void shouldEmitSearchResultsWithoutWaitingForSlowerSource() throws Exception {
+        Tag popularTag = new Tag();
+        popularTag.tagId = 1;
+        popularTag.tag = "popular";
+        popularTag.postCount = Long.MAX_VALUE;
+        Tag quietTag = new Tag();
+        quietTag.tagId = 2;
+        quietTag.tag = "quiet";
+        quietTag.postCount = 1;
+        User user = TestDataFactory.createMockUser();
+        user.followerCount = 10;
+
+        VineyardService.TagResponse tagsResponse = createTagResponse(quietTag, popularTag);
+        tagsResponse.data.anchorStr = "tagAnchor";
+        tagsResponse.data.nextPage = 2;
+        when(mMockVineyardService.searchByTag(eq("query"), anyString(), anyString()))
+                .thenReturn(Observable.just(tagsResponse));
+        PublishSubject<VineyardService.UserResponse> usersResponse = PublishSubject.create();
+        when(mMockVineyardService.searchByUser(eq("query"), anyString(), anyString()))
+                .thenReturn(usersResponse);
+
+        TestSubscriber<VineyardService.KeywordSearchResponse> result = new TestSubscriber<>();
+        mDataManager.search("query", "1", null, "1", null).subscribe(result);
+        result.assertNoErrors();
+        result.assertValueCount(1);
+        VineyardService.KeywordSearchResponse tagsOnly = result.getOnNextEvents().get(0);
+        assertTrue(tagsOnly.partial);
+        assertEquals(Arrays.<Object>asList(popularTag, quietTag), tagsOnly.list);
+        assertEquals("tagAnchor", tagsOnly.tagSearchAnchor);
+        assertEquals(2, tagsOnly.tagNextPage);
+
+        usersResponse.onNext(createUserResponse(user));
+        usersResponse.onCompleted();
+        result.assertCompleted();
+        VineyardService.KeywordSearchResponse merged = result.getOnNextEvents().get(1);
+        assertFalse(merged.partial);
+        assertEquals(Arrays.<Object>asList(popularTag, user, quietTag), merged.list);
+        // Only the users are new to whoever is showing the tags already
+        assertEquals(Collections.singletonList(user), merged.addedItems);
+        assertFalse(merged.approximate);
+        assertEquals(2, merged.tagNextPage);
+        assertEquals(0, merged.userNextPage);
+    }
+
+    @Test
+    public void shouldRequestTagsAndUsersAtTheSameTime() throws Exception {
+        mDataManager = new DataManager(mMockPreferencesHelper, mMockDatabaseHelper,
+                mMockVineyardService, new NetworkMetrics(), Schedulers.io());
+        final CountDownLatch tagsRequested = new CountDownLatch(1);
+        final CountDownLatch usersRequested = new CountDownLatch(1);
+        // Like the API's, each request blocks the thread it's made on until it completes. Each
+        // waits for the other to be made, which never happens if they're made one after another
+        when(mMockVineyardService.searchByTag(eq("query"), anyString(), anyString()))
+                .thenReturn(blockingResponse(tagsRequested, usersRequested,
+                        createTagResponse(TestDataFactory.createMockTag())));
+        when(mMockVineyardService.searchByUser(eq("query"), anyString(), anyString()))
+                .thenReturn(blockingResponse(usersRequested, tagsRequested,
+                        createUserResponse(TestDataFactory.createMockUser())));
+
+        TestSubscriber<VineyardService.KeywordSearchResponse> result = new TestSubscriber<>();
+        mDataManager.search("query", "1", null, "1", null).subscribe(result);
+        result.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        result.assertNoErrors();
+        result.assertCompleted();
+        List<VineyardService.KeywordSearchResponse> responses = result.getOnNextEvents();
+        VineyardService.KeywordSearchResponse last = responses.get(responses.size() - 1);
+        assertFalse(last.partial);
+        assertEquals(2, last.list.size());
+    }
+
+    @Test
+    public void shouldDropSearchResultsThatAreAlreadyRanked() throws Exception {
+        Tag tag = TestDataFactory.createMockTag();
+        User user = TestDataFactory.createMockUser();
+        Tag sameTag = TestDataFactory.createMockTag();
+        sameTag.tagId = tag.tagId;
+        User sameUser = TestDataFactory.createMockUser();
+        sameUser.userId = user.userId;
+        User otherUser = TestDataFactory.createMockUser();
+
+        List<Object> ranked = SearchResultsMerger.merge(
+                Collections.emptyList(), Arrays.<Object>asList(tag, user));
+        List<Object> merged = SearchResultsMerger.merge(
+                ranked, Arrays.<Object>asList(sameTag, otherUser, sameUser, otherUser));
+        assertEquals(3, merged.size());
+        assertTrue(merged.contains(tag));
+        assertTrue(merged.contains(user));
+        assertTrue(merged.contains(otherUser));
+    }
+
+    @Test
+    public void shouldFilterResultsOfShorterQueryWhileSearching() throws Exception {
+        Tag skate = new Tag();
+        skate.tagId = 1;
+        skate.tag = "skate";
+        Tag skateboarding = new Tag();
+        skateboarding.tagId = 2;
+        skateboarding.tag = "skateboarding";
+        User skier = TestDataFactory.createMockUser();
+        skier.username = "skier";
+
+        when(mMockVineyardService.searchByTag(eq("sk"), anyString(), anyString()))
+                .thenReturn(Observable.just(createTagResponse(skate, skateboarding)));
+        when(mMockVineyardService.searchByUser(eq("sk"), anyString(), anyString()))
+                .thenReturn(Observable.just(createUserResponse(skier)));
+        mDataManager.search("sk").subscribe(
+                new TestSubscriber<VineyardService.KeywordSearchResponse>());
+
+        when(mMockVineyardService.searchByTag(eq("skateb"), anyString(), anyString()))
+                .thenReturn(Observable.just(createTagResponse(skateboarding)));
+        when(mMockVineyardService.searchByUser(eq("skateb"), anyString(), anyString()))
+                .thenReturn(Observable.just(createUserResponse()));
+
+        TestSubscriber<VineyardService.KeywordSearchResponse> result = new TestSubscriber<>();
+        mDataManager.search("skateb").subscribe(result);
+        result.assertNoErrors();
+        List<VineyardService.KeywordSearchResponse> responses = result.getOnNextEvents();
+        VineyardService.KeywordSearchResponse last = responses.get(responses.size() - 1);
+        assertTrue(responses.get(0).partial);
+        assertTrue(responses.get(0).approximate);
+        assertEquals(Collections.<Object>singletonList(skateboarding), responses.get(0).list);
+        assertFalse(responses.get(1).approximate);
+        assertFalse(last.partial);
+        assertEquals(Collections.<Object>singletonList(skateboarding), last.list);
+    }
+
+    @Test
+    public void shouldReturnResultsOfRecentQueryFromMemory() throws Exception {
+        when(mMockVineyardService.searchByTag(eq("tag"), anyString(), anyString()))
+                .thenReturn(Observable.just(createTagResponse(
+                        TestDataFactory.createMockListOfTags(5, "tag").toArray(new Tag[5]))));
+        when(mMockVineyardService.searchByUser(eq("tag"), anyString(), anyString()))
+                .thenReturn(Observable.just(createUserResponse()));
+
+        TestSubscriber<VineyardService.KeywordSearchResponse> first = new TestSubscriber<>();
+        mDataManager.search("tag").subscribe(first);
+        TestSubscriber<VineyardService.KeywordSearchResponse> second = new TestSubscriber<>();
+        mDataManager.search("tag").subscribe(second);
+        second.assertNoErrors();
+        List<VineyardService.KeywordSearchResponse> firstResponses = first.getOnNextEvents();
+        second.assertValue(firstResponses.get(firstResponses.size() - 1));
+        verify(mMockVineyardService, times(1)).searchByTag(eq("tag"), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldGetPlaylistByHandle() throws Exception {
+        List<Post> posts = MockModelsUtil.createMockListOfPosts(5);
+        Playlist playlist =
+                mDataManager.createPlaylist(Feed.popular(), posts, "anchor", 2);
+
+        Playlist result = mDataManager.getPlaylist(playlist.getHandle(), Feed.popular(),
+                posts.get(3));
+        assertSame(playlist, result);
+        assertEquals(posts, result.getPosts());
+        assertEquals(3, result.indexOf(posts.get(3).postId));
+    }
+
+    @Test
+    public void shouldRebuildPlaylistWhenHandleIsUnknown() throws Exception {
+        Post post = MockModelsUtil.createMockPost();
+        Feed feed = Feed.tag("tag");
+
+        Playlist result = mDataManager.getPlaylist("unknown", feed, post);
+        assertEquals(Collections.singletonList(post), result.getPosts());
+        assertEquals(feed, result.getFeed());
+        assertNull(result.getAnchor());
+        assertEquals(1, result.getNextPage());
+        assertSame(result, mDataManager.getPlaylist("unknown", feed, post));
+    }
+
+    private static VineyardService.PostResponse createPostResponse(int numberOfPosts) {
+        VineyardService.PostResponse postResponse = new VineyardService.PostResponse();
+        postResponse.data = new VineyardService.PostResponse.Data();
+        postResponse.data.anchorStr = "nextAnchor";
+        postResponse.data.nextPage = 2;
+        postResponse.data.records = MockModelsUtil.createMockListOfPosts(numberOfPosts);
+        return postResponse;
+    }
+
+    private static ResponseBody toResponseBody(VineyardService.PostResponse postResponse) {
+        return ResponseBody.create(
+                MediaType.parse("application/json"), new Gson().toJson(postResponse));
+    }
+
+    /**
+     * Checks that the streamed chunks add up to the expected page, with the anchor and next page
+     * delivered on the final chunk.
+     */
+    private static void assertStreamedPage(VineyardService.PostResponse expected,
+                                           List<VineyardService.PostResponse> chunks) {
+        List<Post> records = new ArrayList<>();
+        for (VineyardService.PostResponse chunk : chunks) {
+            records.addAll(chunk.data.records);
+        }
+        assertEquals(expected.data.records, records);
+        VineyardService.PostResponse last = chunks.get(chunks.size() - 1);
+        assertFalse(last.data.partial);
+        assertEquals(expected.data.anchorStr, last.data.anchorStr);
+        assertEquals(expected.data.nextPage, last.data.nextPage);
+    }
+
+    /**
+     * Returns an observable that emits the given response once the other latch has been
+     * counted down, blocking the thread it's subscribed on until then, and that fails if that
+     * doesn't happen within a few seconds.
+     */
+    private static <T> Observable<T> blockingResponse(final CountDownLatch requested,
+                                                      final CountDownLatch otherRequested,
+                                                      final T response) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(Subscriber<? super T> subscriber) {
+                requested.countDown();
+                try {
+                    if (!otherRequested.await(5, TimeUnit.SECONDS)) {
+                        subscriber.onError(new AssertionError("Requests weren't concurrent"));
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    subscriber.onError(e);
+                    return;
+                }
+                subscriber.onNext(response);
+                subscriber.onCompleted();
+            }
+        });
+    }
+
+    private static VineyardService.TagResponse createTagResponse(Tag... tags) {
+        VineyardService.TagResponse tagResponse = new VineyardService.TagResponse();
+        tagResponse.data = new VineyardService.TagResponse.Data();
+        tagResponse.data.records = new ArrayList<>(Arrays.asList(tags));
+        return tagResponse;
+    }
+
+    private static VineyardService.UserResponse createUserResponse(User... users) {
+        VineyardService.UserResponse userResponse = new VineyardService.UserResponse();
+        userResponse.data = new VineyardService.UserResponse.Data();
+        userResponse.data.records = new ArrayList<>(Arrays.asList(users));
+        return userResponse;
     }
 
 }
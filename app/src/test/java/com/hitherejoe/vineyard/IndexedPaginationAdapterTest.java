@@ -0,0 +1,291 @@
+package com.hitherejoe.vineyard;
+
+import android.support.v17.leanback.widget.ArrayObjectAdapter;
+
+import com.hitherejoe.vineyard.data.model.Option;
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.model.Tag;
+import com.hitherejoe.vineyard.data.model.User;
+import com.hitherejoe.vineyard.ui.adapter.PostAdapter;
+import com.hitherejoe.vineyard.ui.adapter.TagAdapter;
+import com.hitherejoe.vineyard.util.DefaultConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = DefaultConfig.EMULATE_SDK)
+public class IndexedPaginationAdapterTest {
+
+    private PostAdapter mPostAdapter;
+    private TagAdapter mTagAdapter;
+
+    @Before
+    public void setUp() {
+        mPostAdapter = new PostAdapter(RuntimeEnvironment.application, "tag");
+        mTagAdapter = new TagAdapter(RuntimeEnvironment.application, "query");
+    }
+
+    @Test
+    public void shouldMergeRankedPagesIntoPlace() throws Exception {
+        Tag hundred = createTag(1, 100);
+        Tag fifty = createTag(2, 50);
+        Tag ten = createTag(3, 10);
+        mTagAdapter.addAllItems(Arrays.asList(ten, hundred, fifty));
+        assertEquals(Arrays.<Object>asList(hundred, fifty, ten), mTagAdapter.getAllItems());
+
+        // Equally popular items go after the ones already shown
+        Tag twoHundred = createTag(4, 200);
+        User seventyFive = createUser("5", 75);
+        User otherFifty = createUser("6", 50);
+        Tag five = createTag(7, 5);
+        mTagAdapter.addAllItems(Arrays.asList(five, otherFifty, twoHundred, seventyFive));
+
+        List<Object> expected = Arrays.<Object>asList(
+                twoHundred, hundred, seventyFive, fifty, otherFifty, ten, five);
+        assertEquals(expected, mTagAdapter.getAllItems());
+        assertAdapterShows(mTagAdapter, expected);
+    }
+
+    @Test
+    public void shouldAppendLessPopularPageAfterExistingItems() throws Exception {
+        Tag fifty = createTag(1, 50);
+        mTagAdapter.addAllItems(Collections.singletonList(fifty));
+        Tag ten = createTag(2, 10);
+        Tag twenty = createTag(3, 20);
+        mTagAdapter.addAllItems(Arrays.asList(ten, twenty));
+
+        List<Object> expected = Arrays.<Object>asList(fifty, twenty, ten);
+        assertEquals(expected, mTagAdapter.getAllItems());
+        assertAdapterShows(mTagAdapter, expected);
+    }
+
+    @Test
+    public void shouldDropItemsThatAreAlreadyShown() throws Exception {
+        Tag tag = createTag(1, 10);
+        User user = createUser("2", 20);
+        mTagAdapter.addAllItems(Arrays.asList(tag, user));
+
+        // The same tag and user from a later page, the tag twice over
+        Tag sameTag = createTag(1, 15);
+        User sameUser = createUser("2", 20);
+        Tag otherTag = createTag(3, 5);
+        mTagAdapter.addAllItems(Arrays.asList(sameTag, otherTag, sameUser, sameTag));
+
+        List<Object> expected = Arrays.<Object>asList(user, tag, otherTag);
+        assertEquals(expected, mTagAdapter.getAllItems());
+        assertAdapterShows(mTagAdapter, expected);
+        assertTrue(mTagAdapter.containsKey("tag/1"));
+        assertTrue(mTagAdapter.containsKey("user/2"));
+        assertTrue(mTagAdapter.containsKey("tag/3"));
+    }
+
+    @Test
+    public void shouldAppendPostPagesInFeedOrder() throws Exception {
+        Post first = createPost("1", 10);
+        Post second = createPost("2", 9);
+        mPostAdapter.addAllItems(Arrays.asList(second, first));
+
+        // Feeds aren't strictly ordered by date, a later page can have a newer post
+        Post newer = createPost("3", 11);
+        Post older = createPost("4", 8);
+        mPostAdapter.addAllItems(Arrays.asList(older, newer));
+
+        List<Object> expected = Arrays.<Object>asList(second, first, older, newer);
+        assertEquals(expected, mPostAdapter.getAllItems());
+        assertAdapterShows(mPostAdapter, expected);
+    }
+
+    @Test
+    public void shouldShowPageArrivingInPartsInFeedOrder() throws Exception {
+        List<Post> page = Arrays.asList(createPost("1", 5), createPost("2", 9),
+                createPost("3", 7), createPost("4", 10), createPost("5", 6), createPost("6", 8));
+
+        // Pages are decoded a few posts at a time, see PostResponseDecoder
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.removeLoadingIndicator();
+        mPostAdapter.addAllItems(page.subList(0, 4));
+        mPostAdapter.addAllItems(page.subList(4, 6));
+        mPostAdapter.finishLoadingPage();
+
+        assertEquals(page, mPostAdapter.getAllItems());
+        assertAdapterShows(mPostAdapter, Arrays.<Object>asList(page.toArray()));
+    }
+
+    @Test
+    public void shouldOnlyAppendNewItemsOfOverlappingPage() throws Exception {
+        Post first = createPost("1", 10);
+        Post second = createPost("2", 9);
+        Post third = createPost("3", 8);
+        mPostAdapter.addAllItems(Arrays.asList(first, second, third));
+
+        // The feed has moved on since the first page, so the next one starts with its last posts
+        Post fourth = createPost("4", 7);
+        mPostAdapter.addAllItems(Arrays.asList(createPost("2", 9), createPost("3", 8), fourth));
+
+        List<Object> expected = Arrays.<Object>asList(first, second, third, fourth);
+        assertEquals(expected, mPostAdapter.getAllItems());
+        assertAdapterShows(mPostAdapter, expected);
+        assertSame(second, mPostAdapter.get(1));
+    }
+
+    @Test
+    public void shouldForgetRemovedItems() throws Exception {
+        Post first = createPost("1", 10);
+        Post second = createPost("2", 9);
+        Post third = createPost("3", 8);
+        mPostAdapter.addAllItems(Arrays.asList(first, second, third));
+        mPostAdapter.showTryAgainCard();
+
+        // Removes the last post along with the card after it
+        mPostAdapter.removeItems(2, 2);
+        assertEquals(Arrays.asList(first, second), mPostAdapter.getAllItems());
+        assertEquals(2, mPostAdapter.size());
+        assertFalse(mPostAdapter.containsKey("3"));
+
+        // So it is shown again if a later page has it
+        mPostAdapter.addAllItems(Collections.singletonList(third));
+        assertEquals(Arrays.asList(first, second, third), mPostAdapter.getAllItems());
+    }
+
+    @Test
+    public void shouldRemoveItemsByWhatIsAtPosition() throws Exception {
+        Post first = createPost("1", 10);
+        Post second = createPost("2", 9);
+        mPostAdapter.addAllItems(Arrays.asList(first, second));
+        Option option = new Option("title", "message", R.drawable.ic_refresh_white);
+        mPostAdapter.add(0, option);
+
+        // Position 1 of the adapter is the first post, not the second
+        mPostAdapter.removeItems(1, 1);
+        assertEquals(Collections.singletonList(second), mPostAdapter.getAllItems());
+        assertFalse(mPostAdapter.containsKey("1"));
+        assertTrue(mPostAdapter.containsKey("2"));
+        assertAdapterShows(mPostAdapter, Arrays.<Object>asList(option, second));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotLetItemsBeModifiedThroughGetAllItems() throws Exception {
+        mPostAdapter.addAllItems(Collections.singletonList(createPost("1", 1)));
+        mPostAdapter.getAllItems().clear();
+    }
+
+    @Test
+    public void shouldReplaceStoredItemsWithApiPage() throws Exception {
+        Post first = createPost("1", 3);
+        Post second = createPost("2", 2);
+        Post removed = createPost("3", 1);
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.addStoredItems(Arrays.asList(first, second, removed));
+
+        Post updatedFirst = createPost("1", 3);
+        updatedFirst.description = "updated";
+        Post updatedSecond = createPost("2", 2);
+        mPostAdapter.removeLoadingIndicator();
+        mPostAdapter.addAllItems(Arrays.asList(updatedFirst, updatedSecond));
+        mPostAdapter.removeStoredItems();
+
+        assertEquals(Arrays.asList(updatedFirst, updatedSecond), mPostAdapter.getAllItems());
+        assertSame(updatedFirst, mPostAdapter.get(0));
+        assertSame(updatedSecond, mPostAdapter.get(1));
+        assertEquals(2, mPostAdapter.size());
+    }
+
+    @Test
+    public void shouldReplaceStoredItemsOfPageHeldBack() throws Exception {
+        Post shown = createPost("1", 5);
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.removeLoadingIndicator();
+        mPostAdapter.addAllItems(Collections.singletonList(shown));
+        mPostAdapter.finishLoadingPage();
+
+        // Later pages are held back until the user reaches them
+        Post stored = createPost("2", 4);
+        Post removed = createPost("3", 3);
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.addStoredItems(Arrays.asList(stored, removed));
+        Post updated = createPost("2", 4);
+        mPostAdapter.addAllItems(Collections.singletonList(updated));
+        mPostAdapter.removeStoredItems();
+        mPostAdapter.finishLoadingPage();
+        mPostAdapter.onItemSelected(0);
+
+        assertEquals(Arrays.asList(shown, updated), mPostAdapter.getAllItems());
+        assertSame(updated, mPostAdapter.get(1));
+    }
+
+    @Test
+    public void shouldKeepStoredItemsWhenApiPageFails() throws Exception {
+        Post stored = createPost("1", 1);
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.addStoredItems(Collections.singletonList(stored));
+        mPostAdapter.cancelLoadingPage();
+        mPostAdapter.removeStoredItems();
+
+        assertEquals(Collections.singletonList(stored), mPostAdapter.getAllItems());
+    }
+
+    @Test
+    public void shouldNotTreatItemsOfEarlierPagesAsStored() throws Exception {
+        Post shown = createPost("1", 2);
+        mPostAdapter.addAllItems(Collections.singletonList(shown));
+        mPostAdapter.addStoredItems(Collections.singletonList(createPost("1", 2)));
+        mPostAdapter.addAllItems(Collections.<Post>emptyList());
+        mPostAdapter.removeStoredItems();
+
+        assertEquals(Collections.singletonList(shown), mPostAdapter.getAllItems());
+        assertSame(shown, mPostAdapter.get(0));
+    }
+
+    private static void assertAdapterShows(ArrayObjectAdapter adapter, List<Object> items) {
+        assertEquals(items, adapter.unmodifiableList());
+    }
+
+    private static Tag createTag(long tagId, long postCount) {
+        Tag tag = new Tag();
+        tag.tagId = tagId;
+        tag.tag = "tag" + tagId;
+        tag.postCount = postCount;
+        return tag;
+    }
+
+    private static User createUser(String userId, int followerCount) {
+        User user = new User();
+        user.userId = userId;
+        user.username = "user" + userId;
+        user.followerCount = followerCount;
+        return user;
+    }
+
+    /**
+     * Returns a post created the given number of minutes after the epoch, so that newer posts
+     * are sorted first.
+     */
+    static Post createPost(String postId, int minutes) {
+        Post post = new Post();
+        post.postId = postId;
+        post.description = "Post " + postId;
+        post.videoUrl = "http://v.cdn.vine.co/" + postId + ".mp4";
+        post.thumbnailUrl = "http://v.cdn.vine.co/" + postId + ".jpg";
+        SimpleDateFormat dateFormat =
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSSSS", Locale.getDefault());
+        post.created = dateFormat.format(new Date(minutes * 60 * 1000L));
+        return post;
+    }
+}
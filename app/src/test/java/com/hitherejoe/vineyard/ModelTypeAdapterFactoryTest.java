@@ -0,0 +1,195 @@
+package com.hitherejoe.vineyard;
+
+import com.google.gson.Gson;
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.model.Tag;
+import com.hitherejoe.vineyard.data.model.User;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+import com.hitherejoe.vineyard.test.common.TestDataFactory;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the hand written type adapters decode and encode the API responses exactly as
+ * Gson's reflective adapters did before them.
+ */
+public class ModelTypeAdapterFactoryTest {
+
+    private final Gson mReflectiveGson = new Gson();
+    private final Gson mGson = VineyardService.Creator.newGson();
+
+    @Test
+    public void shouldDecodePostResponseLikeReflectiveGson() {
+        VineyardService.PostResponse response = new VineyardService.PostResponse();
+        response.code = "200";
+        response.data = new VineyardService.PostResponse.Data();
+        response.data.anchorStr = "1234";
+        response.data.nextPage = 2;
+        response.data.records = TestDataFactory.createMockListOfPosts(5);
+        String json = mReflectiveGson.toJson(response);
+
+        VineyardService.PostResponse decoded =
+                mGson.fromJson(json, VineyardService.PostResponse.class);
+        assertPostResponsesEqual(
+                mReflectiveGson.fromJson(json, VineyardService.PostResponse.class), decoded);
+        for (Post post : decoded.data.records) {
+            assertEquals(Post.parseCreated(post.created), post.createdMillis);
+            assertTrue(post.createdMillis > 0);
+        }
+    }
+
+    @Test
+    public void shouldEncodePostResponseLikeReflectiveGson() {
+        VineyardService.PostResponse response = new VineyardService.PostResponse();
+        response.code = "200";
+        response.data = new VineyardService.PostResponse.Data();
+        response.data.anchorStr = "1234";
+        response.data.nextPage = 2;
+        response.data.records = TestDataFactory.createMockListOfPosts(3);
+
+        String json = mGson.toJson(response);
+        assertPostResponsesEqual(response,
+                mReflectiveGson.fromJson(json, VineyardService.PostResponse.class));
+        assertPostResponsesEqual(response,
+                mGson.fromJson(json, VineyardService.PostResponse.class));
+    }
+
+    @Test
+    public void shouldSkipUnknownFields() {
+        String json = "{\"code\":\"200\",\"success\":true,\"error\":\"\","
+                + "\"data\":{\"count\":1,\"size\":20,\"anchorStr\":\"99\",\"previousPage\":null,"
+                + "\"records\":[{\"postId\":\"1\",\"loops\":{\"count\":5,\"velocity\":1.5},"
+                + "\"entities\":[{\"id\":1},[2,3]],\"explicitContent\":false,"
+                + "\"description\":\"skate\",\"tags\":[\"a\",\"b\"]}],\"nextPage\":3}}";
+
+        VineyardService.PostResponse decoded =
+                mGson.fromJson(json, VineyardService.PostResponse.class);
+        assertPostResponsesEqual(
+                mReflectiveGson.fromJson(json, VineyardService.PostResponse.class), decoded);
+        assertEquals("skate", decoded.data.records.get(0).description);
+        assertEquals(3, decoded.data.nextPage);
+    }
+
+    @Test
+    public void shouldDecodeNullAndMissingFieldsLikeReflectiveGson() {
+        String json = "{\"code\":null,\"data\":{\"anchorStr\":null,\"nextPage\":null,"
+                + "\"records\":[{\"postId\":\"1\",\"created\":null,\"description\":null},"
+                + "{\"postId\":\"2\"}]}}";
+
+        VineyardService.PostResponse decoded =
+                mGson.fromJson(json, VineyardService.PostResponse.class);
+        assertPostResponsesEqual(
+                mReflectiveGson.fromJson(json, VineyardService.PostResponse.class), decoded);
+        assertNull(decoded.code);
+        assertEquals(0, decoded.data.nextPage);
+        assertEquals(0, decoded.data.records.get(0).createdMillis);
+
+        VineyardService.PostResponse noData =
+                mGson.fromJson("{\"code\":\"200\",\"data\":null}", VineyardService.PostResponse.class);
+        assertNull(noData.data);
+        VineyardService.PostResponse noRecords =
+                mGson.fromJson("{\"data\":{\"nextPage\":1}}", VineyardService.PostResponse.class);
+        assertNull(noRecords.data.records);
+    }
+
+    @Test
+    public void shouldDropNullRecords() {
+        String json = "{\"data\":{\"records\":[null,{\"postId\":\"1\"},null]}}";
+
+        List<Post> records = mGson.fromJson(json, VineyardService.PostResponse.class).data.records;
+        assertEquals(1, records.size());
+        assertEquals("1", records.get(0).postId);
+    }
+
+    @Test
+    public void shouldDecodeUserResponseLikeReflectiveGson() {
+        VineyardService.UserResponse response = new VineyardService.UserResponse();
+        response.code = "200";
+        response.data = new VineyardService.UserResponse.Data();
+        response.data.anchorStr = "abc";
+        response.data.nextPage = 4;
+        response.data.records = TestDataFactory.createMockListOfUsers(3);
+        String json = mReflectiveGson.toJson(response);
+
+        VineyardService.UserResponse expected =
+                mReflectiveGson.fromJson(json, VineyardService.UserResponse.class);
+        for (User user : expected.data.records) {
+            // Never used by the app, so the type adapter doesn't read them
+            user.phoneNumber = null;
+            user.email = null;
+            user.twitterId = 0;
+        }
+        VineyardService.UserResponse decoded =
+                mGson.fromJson(json, VineyardService.UserResponse.class);
+        assertEquals(expected.code, decoded.code);
+        assertEquals(expected.data.anchorStr, decoded.data.anchorStr);
+        assertEquals(expected.data.nextPage, decoded.data.nextPage);
+        assertEquals(expected.data.records, decoded.data.records);
+    }
+
+    @Test
+    public void shouldDecodeNullUserFieldsLikeReflectiveGson() {
+        String json = "{\"data\":{\"records\":[{\"userId\":\"1\",\"username\":null,"
+                + "\"followerCount\":null,\"verified\":1,\"location\":null}]}}";
+
+        User expected = mReflectiveGson.fromJson(json, VineyardService.UserResponse.class)
+                .data.records.get(0);
+        User decoded = mGson.fromJson(json, VineyardService.UserResponse.class)
+                .data.records.get(0);
+        assertEquals(expected, decoded);
+        assertEquals(1, decoded.verified);
+        assertEquals(0, decoded.followerCount);
+    }
+
+    @Test
+    public void shouldDecodeTagResponseLikeReflectiveGson() {
+        VineyardService.TagResponse response = new VineyardService.TagResponse();
+        response.code = "200";
+        response.data = new VineyardService.TagResponse.Data();
+        response.data.anchorStr = "abc";
+        response.data.nextPage = 2;
+        response.data.records = TestDataFactory.createMockListOfTags(4);
+        String json = mReflectiveGson.toJson(response);
+
+        VineyardService.TagResponse expected =
+                mReflectiveGson.fromJson(json, VineyardService.TagResponse.class);
+        VineyardService.TagResponse decoded =
+                mGson.fromJson(json, VineyardService.TagResponse.class);
+        assertEquals(expected.code, decoded.code);
+        assertEquals(expected.data.anchorStr, decoded.data.anchorStr);
+        assertEquals(expected.data.nextPage, decoded.data.nextPage);
+        assertEquals(expected.data.records, decoded.data.records);
+
+        VineyardService.TagResponse reencoded =
+                mReflectiveGson.fromJson(mGson.toJson(decoded), VineyardService.TagResponse.class);
+        assertEquals(expected.data.records, reencoded.data.records);
+    }
+
+    @Test
+    public void shouldDecodeTagWithUnknownAndMissingFields() {
+        String json = "{\"data\":{\"records\":[{\"tag\":\"skate\",\"tagId\":9007199254740993,"
+                + "\"trending\":{\"rank\":1}},{\"tag\":null}]}}";
+
+        List<Tag> tags = mGson.fromJson(json, VineyardService.TagResponse.class).data.records;
+        List<Tag> expected =
+                mReflectiveGson.fromJson(json, VineyardService.TagResponse.class).data.records;
+        assertEquals(expected, tags);
+        assertEquals(9007199254740993L, tags.get(0).tagId);
+        assertEquals(0, tags.get(0).postCount);
+        assertNull(tags.get(1).tag);
+    }
+
+    private static void assertPostResponsesEqual(VineyardService.PostResponse expected,
+                                                 VineyardService.PostResponse actual) {
+        assertEquals(expected.code, actual.code);
+        assertEquals(expected.data.anchorStr, actual.data.anchorStr);
+        assertEquals(expected.data.nextPage, actual.data.nextPage);
+        assertEquals(expected.data.records, actual.data.records);
+    }
+}
@@ -0,0 +1,165 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.remote.MetricsInterceptor;
+import com.hitherejoe.vineyard.data.remote.NetworkMetrics;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+import com.hitherejoe.vineyard.util.FakeInterceptorChain;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NetworkMetricsTest {
+
+    private static final String ENDPOINT = "timelines/popular";
+
+    private NetworkMetrics mNetworkMetrics;
+
+    @Before
+    public void setUp() {
+        mNetworkMetrics = new NetworkMetrics();
+    }
+
+    @Test
+    public void shouldGroupParameterisedPathsByEndpoint() {
+        assertEquals("timelines/tags/{id}", NetworkMetrics.getEndpointName("/timelines/tags/skate"));
+        assertEquals("timelines/users/{id}", NetworkMetrics.getEndpointName("timelines/users/123"));
+        assertEquals("search/tags/{id}", NetworkMetrics.getEndpointName("/search/tags/cats"));
+        assertEquals("search/users/{id}", NetworkMetrics.getEndpointName("/search/users/joe"));
+        assertEquals("users/profiles/{id}", NetworkMetrics.getEndpointName("/users/profiles/1"));
+        assertEquals("timelines/popular", NetworkMetrics.getEndpointName("/timelines/popular"));
+        assertEquals("users/me", NetworkMetrics.getEndpointName("users/me"));
+    }
+
+    @Test
+    public void shouldReportNoPercentilesWithoutResponses() {
+        mNetworkMetrics.recordError(ENDPOINT);
+
+        NetworkMetrics.EndpointStats stats = getStats(ENDPOINT);
+        assertEquals(1, stats.requestCount);
+        assertEquals(1, stats.errorCount);
+        assertEquals(0, stats.latencyP50);
+        assertEquals(0, stats.latencyP99);
+    }
+
+    @Test
+    public void shouldReportPercentilesAsBucketUpperBounds() {
+        // 90 fast requests, 8 slow ones and 2 very slow ones
+        for (int i = 0; i < 90; i++) recordLatency(42);
+        for (int i = 0; i < 8; i++) recordLatency(600);
+        for (int i = 0; i < 2; i++) recordLatency(4000);
+
+        NetworkMetrics.EndpointStats stats = getStats(ENDPOINT);
+        assertEquals(100, stats.requestCount);
+        assertEquals(50, stats.latencyP50);
+        assertEquals(750, stats.latencyP95);
+        assertEquals(4000, stats.latencyP99);
+    }
+
+    @Test
+    public void shouldNotReportPercentileAboveSlowestResponse() {
+        recordLatency(60);
+        recordLatency(61);
+
+        NetworkMetrics.EndpointStats stats = getStats(ENDPOINT);
+        // Both fall into the 50-75ms bucket, but nothing took longer than 61ms
+        assertEquals(61, stats.latencyP50);
+        assertEquals(61, stats.latencyP99);
+    }
+
+    @Test
+    public void shouldReportSlowestResponseBeyondLastBucket() {
+        recordLatency(10);
+        recordLatency(45000);
+
+        assertEquals(45000, getStats(ENDPOINT).latencyP99);
+    }
+
+    @Test
+    public void shouldIncludeBoundaryValuesInLowerBucket() {
+        for (int i = 0; i < 3; i++) recordLatency(100);
+        recordLatency(101);
+
+        NetworkMetrics.EndpointStats stats = getStats(ENDPOINT);
+        assertEquals(100, stats.latencyP50);
+        assertEquals(101, stats.latencyP99);
+    }
+
+    @Test
+    public void shouldCountCacheHitsBytesAndErrors() {
+        mNetworkMetrics.recordResponse(ENDPOINT, 5, 10, 100, true, true);
+        mNetworkMetrics.recordResponse(ENDPOINT, 5, 10, 250, false, true);
+        mNetworkMetrics.recordResponse(ENDPOINT, 5, 10, 50, false, false);
+
+        NetworkMetrics.EndpointStats stats = getStats(ENDPOINT);
+        assertEquals(3, stats.requestCount);
+        assertEquals(1, stats.cacheHits);
+        assertEquals(2, stats.cacheMisses);
+        assertEquals(1, stats.errorCount);
+        assertEquals(400, stats.responseBytes);
+    }
+
+    @Test
+    public void shouldForgetStatsOnReset() {
+        recordLatency(10);
+        mNetworkMetrics.reset();
+
+        assertTrue(mNetworkMetrics.getStats().isEmpty());
+    }
+
+    @Test
+    public void shouldRecordResponseOnceBodyIsConsumed() throws Exception {
+        FakeInterceptorChain chain = new FakeInterceptorChain(get("timelines/tags/skate?page=2"),
+                FakeInterceptorChain.response(200));
+
+        Response response = new MetricsInterceptor(mNetworkMetrics).intercept(chain);
+        assertTrue(mNetworkMetrics.getStats().isEmpty());
+
+        assertEquals("{}", response.body().string());
+        NetworkMetrics.EndpointStats stats = getStats("timelines/tags/{id}");
+        assertEquals(1, stats.requestCount);
+        assertEquals(2, stats.responseBytes);
+        // The fake response has no network response, so it looks like it came from the cache
+        assertEquals(1, stats.cacheHits);
+        assertEquals(0, stats.errorCount);
+    }
+
+    @Test
+    public void shouldRecordFailedRequests() throws Exception {
+        FakeInterceptorChain chain = new FakeInterceptorChain(get("search/users/joe"),
+                FakeInterceptorChain.response(200)).failWith(new IOException());
+
+        try {
+            new MetricsInterceptor(mNetworkMetrics).intercept(chain);
+            fail("The error should be passed on");
+        } catch (IOException e) {
+            NetworkMetrics.EndpointStats stats = getStats("search/users/{id}");
+            assertEquals(1, stats.requestCount);
+            assertEquals(1, stats.errorCount);
+        }
+    }
+
+    private void recordLatency(long latencyMillis) {
+        mNetworkMetrics.recordResponse(ENDPOINT, latencyMillis, latencyMillis, 0, false, true);
+    }
+
+    private NetworkMetrics.EndpointStats getStats(String endpoint) {
+        List<NetworkMetrics.EndpointStats> allStats = mNetworkMetrics.getStats();
+        for (NetworkMetrics.EndpointStats stats : allStats) {
+            if (stats.endpoint.equals(endpoint)) return stats;
+        }
+        throw new AssertionError("No stats recorded for " + endpoint);
+    }
+
+    private static Request get(String path) {
+        return new Request.Builder().url(VineyardService.ENDPOINT + path).build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.ui.adapter.PostAdapter;
+import com.hitherejoe.vineyard.util.DefaultConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = DefaultConfig.EMULATE_SDK)
+public class PaginationAdapterTest {
+
+    private PostAdapter mPostAdapter;
+
+    @Before
+    public void setUp() {
+        mPostAdapter = new PostAdapter(RuntimeEnvironment.application, "tag");
+    }
+
+    @Test
+    public void shouldKeepLoadingPageUntilApiPageCompletes() throws Exception {
+        List<Post> page = createPage(0, 10);
+        mPostAdapter.startLoadingPage();
+        assertFalse(mPostAdapter.shouldLoadNextPage());
+
+        // The stored copy of the page arrives first
+        mPostAdapter.removeLoadingIndicator();
+        mPostAdapter.addStoredItems(page);
+        assertFalse(mPostAdapter.shouldLoadNextPage());
+
+        // Then the page from the API, which only completes after its last chunk
+        mPostAdapter.addAllItems(page.subList(0, 5));
+        mPostAdapter.addAllItems(page.subList(5, 10));
+        mPostAdapter.removeStoredItems();
+        assertFalse(mPostAdapter.shouldLoadNextPage());
+
+        mPostAdapter.finishLoadingPage();
+        assertTrue(mPostAdapter.shouldLoadNextPage());
+    }
+
+    @Test
+    public void shouldNotLoadNextPageOnceThereAreNoMore() throws Exception {
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.removeLoadingIndicator();
+        mPostAdapter.addAllItems(createPage(0, 10));
+        mPostAdapter.setNextPage(0);
+        mPostAdapter.finishLoadingPage();
+
+        assertFalse(mPostAdapter.shouldLoadNextPage());
+    }
+
+    @Test
+    public void shouldReportFailureOfPageBeingShown() throws Exception {
+        mPostAdapter.startLoadingPage();
+
+        assertFalse(mPostAdapter.cancelLoadingPage());
+        mPostAdapter.removeLoadingIndicator();
+        assertTrue(mPostAdapter.shouldLoadNextPage());
+    }
+
+    @Test
+    public void shouldNotReportFailureOfPageLoadedInBackground() throws Exception {
+        showFirstPage(10);
+
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.addAllItems(createPage(10, 5));
+        assertTrue(mPostAdapter.cancelLoadingPage());
+
+        // The partly loaded page is dropped and requested again once the user reaches it
+        mPostAdapter.onItemSelected(9);
+        assertEquals(10, mPostAdapter.size());
+        assertTrue(mPostAdapter.shouldLoadNextPage());
+    }
+
+    @Test
+    public void shouldHoldBackNextPageUntilUserNearsEnd() throws Exception {
+        showFirstPage(10);
+
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.addAllItems(createPage(10, 10));
+        mPostAdapter.finishLoadingPage();
+        assertEquals(10, mPostAdapter.size());
+        assertFalse(mPostAdapter.shouldLoadNextPage());
+
+        mPostAdapter.onItemSelected(10 - 2 - PostAdapter.DEFAULT_PREFETCH_DISTANCE);
+        assertEquals(10, mPostAdapter.size());
+
+        mPostAdapter.onItemSelected(10 - 1 - PostAdapter.DEFAULT_PREFETCH_DISTANCE);
+        assertEquals(20, mPostAdapter.size());
+        assertTrue(mPostAdapter.shouldLoadNextPage());
+    }
+
+    @Test
+    public void shouldShowRestOfPageAsItArrivesOnceUserReachesIt() throws Exception {
+        showFirstPage(10);
+
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.addAllItems(createPage(10, 5));
+        mPostAdapter.onItemSelected(9);
+        mPostAdapter.removeLoadingIndicator();
+        assertEquals(15, mPostAdapter.size());
+
+        mPostAdapter.addAllItems(createPage(15, 5));
+        assertEquals(20, mPostAdapter.size());
+        assertFalse(mPostAdapter.shouldLoadNextPage());
+        mPostAdapter.finishLoadingPage();
+        assertTrue(mPostAdapter.shouldLoadNextPage());
+    }
+
+    private void showFirstPage(int count) {
+        mPostAdapter.startLoadingPage();
+        mPostAdapter.removeLoadingIndicator();
+        mPostAdapter.addAllItems(createPage(0, count));
+        mPostAdapter.finishLoadingPage();
+    }
+
+    /**
+     * Returns the given number of posts, each older than the last, starting at the given index
+     * so that the posts of later pages are older than those of earlier ones.
+     */
+    private static List<Post> createPage(int start, int count) {
+        List<Post> posts = new ArrayList<>(count);
+        for (int i = start; i < start + count; i++) {
+            posts.add(IndexedPaginationAdapterTest.createPost(String.valueOf(i), 1000 - i));
+        }
+        return posts;
+    }
+}
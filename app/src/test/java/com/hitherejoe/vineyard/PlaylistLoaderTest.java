@@ -0,0 +1,245 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.DataManager;
+import com.hitherejoe.vineyard.data.PlaylistLoader;
+import com.hitherejoe.vineyard.data.model.Feed;
+import com.hitherejoe.vineyard.data.model.Playlist;
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.remote.VineyardService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PlaylistLoaderTest {
+
+    private static final Feed FEED = Feed.tag("skate");
+
+    @Mock DataManager mMockDataManager;
+    @Mock PlaylistLoader.Listener mMockListener;
+    private Playlist mPlaylist;
+    private PlaylistLoader mPlaylistLoader;
+
+    @Before
+    public void setUp() {
+        mPlaylist = new Playlist("handle", FEED, createPosts(0, 10), "anchor", 2);
+        mPlaylistLoader = new PlaylistLoader(mMockDataManager, mPlaylist, mMockListener,
+                Schedulers.immediate(), Schedulers.immediate());
+    }
+
+    @Test
+    public void shouldLoadNextPageOnceNearTheEnd() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+
+        mPlaylistLoader.loadNextPageIfNeeded(10 - 1 - PlaylistLoader.PREFETCH_DISTANCE);
+        verify(mMockDataManager, never()).getPosts(any(Feed.class), anyString(), anyString());
+
+        mPlaylistLoader.loadNextPageIfNeeded(10 - PlaylistLoader.PREFETCH_DISTANCE);
+        verify(mMockDataManager).getPosts(FEED, "2", "anchor");
+
+        page.onNext(createResponse(createPosts(10, 5), "anchor", 3));
+        page.onCompleted();
+        assertEquals(15, mPlaylist.size());
+        verify(mMockListener).onPostsAdded(10);
+        verify(mMockListener, never()).onNextPostLoaded(anyInt());
+    }
+
+    @Test
+    public void shouldRequestOnePageAtATime() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+
+        mPlaylistLoader.loadNextPageIfNeeded(9);
+        mPlaylistLoader.loadNextPageIfNeeded(9);
+        assertEquals(PlaylistLoader.WAITING, mPlaylistLoader.skipToNext(9));
+        verify(mMockDataManager, times(1)).getPosts(any(Feed.class), anyString(), anyString());
+
+        page.onNext(createResponse(createPosts(10, 5), "anchor", 3));
+        page.onCompleted();
+        stubNextPage();
+        mPlaylistLoader.loadNextPageIfNeeded(14);
+        verify(mMockDataManager).getPosts(FEED, "3", "anchor");
+    }
+
+    @Test
+    public void shouldSkipToLoadedPostWithoutWaiting() {
+        assertEquals(5, mPlaylistLoader.skipToNext(4));
+        assertFalse(mPlaylistLoader.isWaiting());
+        verify(mMockDataManager, never()).getPosts(any(Feed.class), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldPlayFirstNewPostOnceWaitingIsOver() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+
+        assertEquals(PlaylistLoader.WAITING, mPlaylistLoader.skipToNext(9));
+        assertTrue(mPlaylistLoader.isWaiting());
+
+        page.onNext(createResponse(createPosts(10, 5), "anchor", 3));
+        assertFalse(mPlaylistLoader.isWaiting());
+        verify(mMockListener).onPostsAdded(10);
+        verify(mMockListener).onNextPostLoaded(10);
+
+        page.onCompleted();
+        verify(mMockListener, times(1)).onNextPostLoaded(anyInt());
+    }
+
+    @Test
+    public void shouldTryFollowingPageWhenPageHoldsNothingNew() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+        mPlaylistLoader.skipToNext(9);
+
+        PublishSubject<VineyardService.PostResponse> nextPage = stubNextPage();
+        page.onNext(createResponse(createPosts(5, 5), "anchor", 3));
+        page.onCompleted();
+        verify(mMockDataManager).getPosts(FEED, "3", "anchor");
+        assertTrue(mPlaylistLoader.isWaiting());
+
+        nextPage.onNext(createResponse(createPosts(10, 5), "anchor", 4));
+        verify(mMockListener).onNextPostLoaded(10);
+    }
+
+    @Test
+    public void shouldStopWaitingWhenCursorDoesNotMoveOn() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+        mPlaylistLoader.skipToNext(9);
+
+        // The same page comes back again, which would otherwise be requested forever
+        page.onNext(createResponse(createPosts(0, 10), "anchor", 2));
+        page.onCompleted();
+
+        verify(mMockDataManager, times(1)).getPosts(any(Feed.class), anyString(), anyString());
+        verify(mMockListener).onNextPostLoaded(0);
+        assertFalse(mPlaylistLoader.isWaiting());
+        assertFalse(mPlaylistLoader.hasMorePages());
+        assertEquals(0, mPlaylistLoader.skipToNext(9));
+    }
+
+    @Test
+    public void shouldGiveUpAfterSeveralEmptyPagesInARow() {
+        stubEmptyPages();
+
+        assertEquals(PlaylistLoader.WAITING, mPlaylistLoader.skipToNext(9));
+
+        verify(mMockDataManager, times(PlaylistLoader.MAX_EMPTY_PAGES))
+                .getPosts(any(Feed.class), anyString(), anyString());
+        verify(mMockListener).onNextPostLoaded(0);
+        verify(mMockListener, never()).onPostsAdded(anyInt());
+        assertFalse(mPlaylistLoader.hasMorePages());
+    }
+
+    @Test
+    public void shouldKeepLoadingAfterEmptyPageFollowedByNewPosts() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+        mPlaylistLoader.loadNextPageIfNeeded(9);
+        page.onNext(createResponse(new ArrayList<Post>(), "anchor", 3));
+        page.onCompleted();
+
+        page = stubNextPage();
+        mPlaylistLoader.loadNextPageIfNeeded(9);
+        page.onNext(createResponse(createPosts(10, 5), "anchor", 4));
+        page.onCompleted();
+
+        // The empty page only counts towards giving up while no new posts arrive
+        assertTrue(mPlaylistLoader.hasMorePages());
+    }
+
+    @Test
+    public void shouldWrapAroundWhenPageFails() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+        mPlaylistLoader.skipToNext(9);
+
+        page.onError(new RuntimeException());
+        verify(mMockListener).onNextPostLoaded(0);
+        assertFalse(mPlaylistLoader.isWaiting());
+    }
+
+    @Test
+    public void shouldWrapAroundOnceFeedHasNoMorePages() {
+        mPlaylist.setCursor(null, 0);
+
+        assertEquals(0, mPlaylistLoader.skipToNext(9));
+        mPlaylistLoader.loadNextPageIfNeeded(9);
+        verify(mMockDataManager, never()).getPosts(any(Feed.class), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldNotLoadPagesForPlaylistWithoutFeed() {
+        mPlaylist = new Playlist("handle", null, createPosts(0, 1), null, 2);
+        mPlaylistLoader = new PlaylistLoader(mMockDataManager, mPlaylist, mMockListener,
+                Schedulers.immediate(), Schedulers.immediate());
+
+        assertEquals(0, mPlaylistLoader.skipToNext(0));
+        verify(mMockDataManager, never()).getPosts(any(Feed.class), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldIgnorePageArrivingAfterCancel() {
+        PublishSubject<VineyardService.PostResponse> page = stubNextPage();
+        mPlaylistLoader.skipToNext(9);
+
+        mPlaylistLoader.cancel();
+        assertFalse(mPlaylistLoader.isWaiting());
+        assertFalse(page.hasObservers());
+        page.onNext(createResponse(createPosts(10, 5), "anchor", 3));
+        assertEquals(10, mPlaylist.size());
+        verify(mMockListener, never()).onNextPostLoaded(anyInt());
+    }
+
+    private PublishSubject<VineyardService.PostResponse> stubNextPage() {
+        PublishSubject<VineyardService.PostResponse> page = PublishSubject.create();
+        when(mMockDataManager.getPosts(any(Feed.class), anyString(), anyString()))
+                .thenReturn(page);
+        return page;
+    }
+
+    /**
+     * Answers every request with an empty page that moves the cursor on by one.
+     */
+    private void stubEmptyPages() {
+        for (int i = 2; i < 2 + PlaylistLoader.MAX_EMPTY_PAGES; i++) {
+            when(mMockDataManager.getPosts(eq(FEED), eq(String.valueOf(i)), anyString()))
+                    .thenReturn(Observable.just(
+                            createResponse(new ArrayList<Post>(), "anchor", i + 1)));
+        }
+    }
+
+    private static VineyardService.PostResponse createResponse(List<Post> posts, String anchor,
+                                                              int nextPage) {
+        VineyardService.PostResponse response = new VineyardService.PostResponse();
+        response.data = new VineyardService.PostResponse.Data();
+        response.data.records = posts;
+        response.data.anchorStr = anchor;
+        response.data.nextPage = nextPage;
+        return response;
+    }
+
+    private static List<Post> createPosts(int start, int count) {
+        List<Post> posts = new ArrayList<>(count);
+        for (int i = start; i < start + count; i++) {
+            posts.add(IndexedPaginationAdapterTest.createPost(String.valueOf(i), 1000 - i));
+        }
+        return posts;
+    }
+}
@@ -0,0 +1,190 @@
+package com.hitherejoe.vineyard;
+
+import android.view.Surface;
+
+import com.hitherejoe.vineyard.data.remote.VideoProxy;
+import com.hitherejoe.vineyard.ui.widget.PreviewPlayerManager;
+import com.hitherejoe.vineyard.util.DefaultConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowMediaPlayer;
+import org.robolectric.shadows.util.DataSource;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = DefaultConfig.EMULATE_SDK)
+public class PreviewPlayerManagerTest {
+
+    private static final long DWELL_MILLIS = PreviewPlayerManager.DEFAULT_FOCUS_DWELL_MILLIS;
+    private static final int PREPARE_MILLIS = 100;
+    private static final String VIDEO_1 = "http://v.cdn.vine.co/1.mp4";
+    private static final String VIDEO_2 = "http://v.cdn.vine.co/2.mp4";
+    private static final String VIDEO_3 = "http://v.cdn.vine.co/3.mp4";
+
+    private VideoProxy mMockVideoProxy;
+    private PreviewPlayerManager mPreviewPlayerManager;
+    private PreviewPlayerManager.PreviewTarget mTarget1;
+    private PreviewPlayerManager.PreviewTarget mTarget2;
+    private PreviewPlayerManager.PreviewTarget mTarget3;
+
+    @Before
+    public void setUp() {
+        for (String videoUrl : new String[] { VIDEO_1, VIDEO_2, VIDEO_3 }) {
+            ShadowMediaPlayer.addMediaInfo(DataSource.toDataSource(videoUrl),
+                    new ShadowMediaPlayer.MediaInfo(6000, PREPARE_MILLIS));
+        }
+        mMockVideoProxy = mock(VideoProxy.class);
+        when(mMockVideoProxy.getVideoPath(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return (String) invocation.getArguments()[0];
+            }
+        });
+        mPreviewPlayerManager = new PreviewPlayerManager(mMockVideoProxy);
+        mTarget1 = createTarget();
+        mTarget2 = createTarget();
+        mTarget3 = createTarget();
+    }
+
+    @After
+    public void tearDown() {
+        mPreviewPlayerManager.release();
+        ShadowMediaPlayer.resetStaticState();
+    }
+
+    @Test
+    public void shouldOnlyStartPreviewOnceFocusHasDwelt() {
+        mPreviewPlayerManager.requestPreview(mTarget1, VIDEO_1);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS - 1);
+        verify(mTarget1, never()).onPreviewLoading();
+        verify(mMockVideoProxy, never()).getVideoPath(anyString());
+
+        ShadowLooper.idleMainLooper(1);
+        verify(mTarget1).onPreviewLoading();
+        verify(mMockVideoProxy).getVideoPath(VIDEO_1);
+
+        ShadowLooper.idleMainLooper(PREPARE_MILLIS);
+        verify(mTarget1).getPreviewSurface();
+    }
+
+    @Test
+    public void shouldNotLoadPreviewsForTargetsPassedOver() {
+        mPreviewPlayerManager.requestPreview(mTarget1, VIDEO_1);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS / 2);
+        mPreviewPlayerManager.requestPreview(mTarget2, VIDEO_2);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS);
+
+        verify(mTarget1, never()).onPreviewLoading();
+        verify(mMockVideoProxy, never()).getVideoPath(VIDEO_1);
+        verify(mTarget2).onPreviewLoading();
+    }
+
+    @Test
+    public void shouldNotStartCancelledPreview() {
+        mPreviewPlayerManager.requestPreview(mTarget1, VIDEO_1);
+        mPreviewPlayerManager.cancelPreview(mTarget1);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS);
+
+        verify(mTarget1, never()).onPreviewLoading();
+        verify(mMockVideoProxy, never()).getVideoPath(anyString());
+    }
+
+    @Test
+    public void shouldReusePreparedPlayerWhenFocusComesBack() {
+        showPreview(mTarget1, VIDEO_1);
+        showPreview(mTarget2, VIDEO_2);
+        verify(mTarget1).onPreviewStopped();
+
+        mPreviewPlayerManager.requestPreview(mTarget1, VIDEO_1);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS);
+
+        // Still prepared, so it starts again straight away without preparing the video again
+        verify(mMockVideoProxy, times(1)).getVideoPath(VIDEO_1);
+        verify(mTarget1, times(2)).getPreviewSurface();
+    }
+
+    @Test
+    public void shouldPrepareAgainWhenFocusMovesOnDuringPrepare() {
+        mPreviewPlayerManager.requestPreview(mTarget1, VIDEO_1);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS);
+        mPreviewPlayerManager.requestPreview(mTarget2, VIDEO_2);
+        verify(mTarget1).onPreviewStopped();
+
+        // The cancelled prepare never starts the preview
+        ShadowLooper.idleMainLooper(PREPARE_MILLIS);
+        verify(mTarget1, never()).getPreviewSurface();
+
+        showPreview(mTarget1, VIDEO_1);
+        verify(mMockVideoProxy, times(2)).getVideoPath(VIDEO_1);
+    }
+
+    @Test
+    public void shouldHoldNoMorePlayersThanTheMaximum() {
+        showPreview(mTarget1, VIDEO_1);
+        showPreview(mTarget2, VIDEO_2);
+        showPreview(mTarget3, VIDEO_3);
+
+        // The least recently used player was reset for the third video
+        showPreview(mTarget2, VIDEO_2);
+        verify(mMockVideoProxy, times(1)).getVideoPath(VIDEO_2);
+        showPreview(mTarget1, VIDEO_1);
+        verify(mMockVideoProxy, times(2)).getVideoPath(VIDEO_1);
+    }
+
+    @Test
+    public void shouldNotPlayPreviewsDuringPlaybackSession() {
+        mPreviewPlayerManager.requestPreview(mTarget1, VIDEO_1);
+        mPreviewPlayerManager.beginPlaybackSession();
+        mPreviewPlayerManager.requestPreview(mTarget2, VIDEO_2);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS);
+        verify(mMockVideoProxy, never()).getVideoPath(anyString());
+
+        mPreviewPlayerManager.endPlaybackSession();
+        showPreview(mTarget2, VIDEO_2);
+        verify(mTarget2).onPreviewLoading();
+    }
+
+    @Test
+    public void shouldLetGoOfTargetsOnRelease() {
+        showPreview(mTarget1, VIDEO_1);
+        mPreviewPlayerManager.requestPreview(mTarget2, VIDEO_2);
+
+        mPreviewPlayerManager.release();
+        verify(mTarget1).onPreviewStopped();
+        ShadowLooper.idleMainLooper(DWELL_MILLIS);
+        verify(mTarget2, never()).onPreviewLoading();
+
+        // Nothing is started on a surface that the released targets create later on
+        mPreviewPlayerManager.onSurfaceCreated(mTarget1);
+        verify(mTarget1, times(1)).getPreviewSurface();
+    }
+
+    /**
+     * Requests a preview and waits for it to be prepared and started.
+     */
+    private void showPreview(PreviewPlayerManager.PreviewTarget target, String videoUrl) {
+        mPreviewPlayerManager.requestPreview(target, videoUrl);
+        ShadowLooper.idleMainLooper(DWELL_MILLIS);
+        ShadowLooper.idleMainLooper(PREPARE_MILLIS);
+    }
+
+    private static PreviewPlayerManager.PreviewTarget createTarget() {
+        PreviewPlayerManager.PreviewTarget target = mock(PreviewPlayerManager.PreviewTarget.class);
+        when(target.getPreviewSurface()).thenReturn(mock(Surface.class));
+        return target;
+    }
+}
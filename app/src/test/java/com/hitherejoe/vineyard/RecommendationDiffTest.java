@@ -0,0 +1,91 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.model.Post;
+import com.hitherejoe.vineyard.data.recommendations.RecommendationDiff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecommendationDiffTest {
+
+    private static final List<Post> POSTS = Arrays.asList(
+            IndexedPaginationAdapterTest.createPost("1", 3),
+            IndexedPaginationAdapterTest.createPost("2", 2),
+            IndexedPaginationAdapterTest.createPost("3", 1));
+
+    @Test
+    public void shouldPublishEverythingWhenNothingHasBeenPublished() {
+        RecommendationDiff diff = new RecommendationDiff(POSTS, new String[3], null);
+
+        assertEquals(Arrays.asList(0, 1, 2), diff.getChangedPositions());
+        assertTrue(diff.getRemovedPositions().isEmpty());
+    }
+
+    @Test
+    public void shouldSkipUnchangedRecommendations() {
+        RecommendationDiff diff = new RecommendationDiff(POSTS, publish(POSTS), null);
+
+        assertTrue(diff.getChangedPositions().isEmpty());
+        assertTrue(diff.getRemovedPositions().isEmpty());
+    }
+
+    @Test
+    public void shouldPublishChangedRecommendations() {
+        String[] published = publish(POSTS);
+        Post post = IndexedPaginationAdapterTest.createPost("2", 2);
+        post.description = "A new description";
+        List<Post> posts = Arrays.asList(POSTS.get(0), post, POSTS.get(2));
+
+        RecommendationDiff diff = new RecommendationDiff(posts, published, null);
+
+        assertEquals(Collections.singletonList(1), diff.getChangedPositions());
+    }
+
+    @Test
+    public void shouldPublishUnchangedRecommendationsThatAreNoLongerShown() {
+        RecommendationDiff diff = new RecommendationDiff(POSTS, publish(POSTS),
+                new HashSet<>(Arrays.asList(0, 2)));
+
+        assertEquals(Collections.singletonList(1), diff.getChangedPositions());
+        assertTrue(diff.getRemovedPositions().isEmpty());
+    }
+
+    @Test
+    public void shouldCancelRecommendationsLeftWithoutAPost() {
+        String[] published = publish(POSTS);
+        List<Post> posts = new ArrayList<>(POSTS.subList(0, 1));
+
+        RecommendationDiff diff = new RecommendationDiff(posts, published, null);
+
+        assertTrue(diff.getChangedPositions().isEmpty());
+        assertEquals(Arrays.asList(1, 2), diff.getRemovedPositions());
+    }
+
+    @Test
+    public void shouldNotCancelRecommendationsThatWereNeverPublished() {
+        String[] published = new String[3];
+        published[0] = RecommendationDiff.getSignature(POSTS.get(0));
+
+        RecommendationDiff diff =
+                new RecommendationDiff(POSTS.subList(0, 1), published, null);
+
+        assertTrue(diff.getChangedPositions().isEmpty());
+        assertTrue(diff.getRemovedPositions().isEmpty());
+    }
+
+    private static String[] publish(List<Post> posts) {
+        String[] published = new String[posts.size()];
+        for (int i = 0; i < posts.size(); i++) {
+            published[i] = RecommendationDiff.getSignature(posts.get(i));
+        }
+        return published;
+    }
+}
@@ -0,0 +1,124 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.RequestCoalescer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+
+    private static final String KEY = RequestCoalescer.key("timelines", "popular", "1", null);
+
+    private RequestCoalescer mRequestCoalescer;
+    private PublishSubject<String> mResponses;
+    private AtomicInteger mRequestCount;
+    private Observable<String> mRequest;
+
+    @Before
+    public void setUp() {
+        mRequestCoalescer = new RequestCoalescer();
+        mResponses = PublishSubject.create();
+        mRequestCount = new AtomicInteger();
+        mRequest = mResponses.doOnSubscribe(new Action0() {
+            @Override
+            public void call() {
+                mRequestCount.incrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    public void shouldShareRequestInFlight() {
+        TestSubscriber<String> first = new TestSubscriber<>();
+        TestSubscriber<String> second = new TestSubscriber<>();
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(first);
+        mResponses.onNext("a");
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(second);
+        mResponses.onNext("b");
+        mResponses.onCompleted();
+
+        assertEquals(1, mRequestCount.get());
+        first.assertReceivedOnNext(Arrays.asList("a", "b"));
+        second.assertReceivedOnNext(Arrays.asList("a", "b"));
+        second.assertCompleted();
+    }
+
+    @Test
+    public void shouldReplayCompletedRequestToSubscriberArrivingAtCompletion() {
+        final TestSubscriber<String> late = new TestSubscriber<>();
+        TestSubscriber<String> first = new TestSubscriber<String>() {
+            @Override
+            public void onCompleted() {
+                super.onCompleted();
+                // Arrives while the request is completing, before anyone has unsubscribed
+                mRequestCoalescer.coalesce(KEY, mRequest).subscribe(late);
+            }
+        };
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(first);
+        mResponses.onNext("a");
+        mResponses.onCompleted();
+
+        TestSubscriber<String> later = new TestSubscriber<>();
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(later);
+
+        assertEquals(1, mRequestCount.get());
+        late.assertReceivedOnNext(Arrays.asList("a"));
+        late.assertCompleted();
+        later.assertReceivedOnNext(Arrays.asList("a"));
+        later.assertCompleted();
+    }
+
+    @Test
+    public void shouldCancelRequestOnceEveryoneHasUnsubscribed() {
+        Subscription first = mRequestCoalescer.coalesce(KEY, mRequest).subscribe();
+        Subscription second = mRequestCoalescer.coalesce(KEY, mRequest).subscribe();
+        first.unsubscribe();
+        assertTrue(mResponses.hasObservers());
+
+        second.unsubscribe();
+        assertFalse(mResponses.hasObservers());
+
+        // The next subscriber makes the request again
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(new TestSubscriber<String>());
+        assertEquals(2, mRequestCount.get());
+    }
+
+    @Test
+    public void shouldMakeRequestAgainAfterError() {
+        TestSubscriber<String> first = new TestSubscriber<>();
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(first);
+        mResponses.onError(new RuntimeException());
+        first.assertError(RuntimeException.class);
+
+        mResponses = PublishSubject.create();
+        TestSubscriber<String> second = new TestSubscriber<>();
+        mRequestCoalescer.coalesce(KEY, mResponses).subscribe(second);
+        mResponses.onNext("a");
+
+        second.assertNoErrors();
+        second.assertReceivedOnNext(Arrays.asList("a"));
+    }
+
+    @Test
+    public void shouldMakeRequestAgainOnceReplayWindowHasPassed() {
+        mRequestCoalescer = new RequestCoalescer(-1);
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(new TestSubscriber<String>());
+        mResponses.onCompleted();
+
+        mRequestCoalescer.coalesce(KEY, mRequest).subscribe(new TestSubscriber<String>());
+        assertEquals(2, mRequestCount.get());
+    }
+}
@@ -0,0 +1,192 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.local.VideoCache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VideoCacheTest {
+
+    private static final int VIDEO_SIZE = 100;
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private VideoCache mVideoCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = mTemporaryFolder.newFolder("videos");
+        mVideoCache = new VideoCache(mDirectory, 3 * VIDEO_SIZE);
+    }
+
+    @Test
+    public void shouldOnlyCacheCommittedVideos() throws Exception {
+        File tempFile = mVideoCache.startWriting(videoUrl(1));
+        write(tempFile, VIDEO_SIZE);
+        assertFalse(mVideoCache.isCached(videoUrl(1)));
+        assertNull(mVideoCache.get(videoUrl(1)));
+
+        mVideoCache.commit(videoUrl(1), tempFile);
+        assertTrue(mVideoCache.isCached(videoUrl(1)));
+        assertEquals(VIDEO_SIZE, mVideoCache.get(videoUrl(1)).length());
+        assertEquals(VIDEO_SIZE, mVideoCache.getSizeBytes());
+    }
+
+    @Test
+    public void shouldNotWriteVideoTwiceAtOnce() throws Exception {
+        File tempFile = mVideoCache.startWriting(videoUrl(1));
+        assertNull(mVideoCache.startWriting(videoUrl(1)));
+
+        mVideoCache.commit(videoUrl(1), tempFile);
+        assertNull(mVideoCache.startWriting(videoUrl(1)));
+    }
+
+    @Test
+    public void shouldDeleteAbortedDownload() throws Exception {
+        File tempFile = mVideoCache.startWriting(videoUrl(1));
+        write(tempFile, VIDEO_SIZE);
+
+        mVideoCache.abort(videoUrl(1), tempFile);
+        assertFalse(tempFile.exists());
+        assertFalse(mVideoCache.isCached(videoUrl(1)));
+        assertEquals(0, mVideoCache.getSizeBytes());
+        assertEquals(0, mDirectory.listFiles().length);
+        // Somebody else can download it instead
+        assertNotNull(mVideoCache.startWriting(videoUrl(1)));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedVideosOverSizeLimit() throws Exception {
+        cache(1);
+        cache(2);
+        cache(3);
+        assertEquals(3 * VIDEO_SIZE, mVideoCache.getSizeBytes());
+
+        // Playing the first video makes the second the least recently used
+        assertNotNull(mVideoCache.get(videoUrl(1)));
+        cache(4);
+
+        assertTrue(mVideoCache.isCached(videoUrl(1)));
+        assertFalse(mVideoCache.isCached(videoUrl(2)));
+        assertTrue(mVideoCache.isCached(videoUrl(3)));
+        assertTrue(mVideoCache.isCached(videoUrl(4)));
+        assertEquals(3 * VIDEO_SIZE, mVideoCache.getSizeBytes());
+        assertEquals(3, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void shouldEvictAsManyVideosAsNeededForLargeVideo() throws Exception {
+        cache(1);
+        cache(2);
+        cache(3);
+
+        File tempFile = mVideoCache.startWriting(videoUrl(4));
+        write(tempFile, 2 * VIDEO_SIZE);
+        mVideoCache.commit(videoUrl(4), tempFile);
+
+        assertFalse(mVideoCache.isCached(videoUrl(1)));
+        assertFalse(mVideoCache.isCached(videoUrl(2)));
+        assertTrue(mVideoCache.isCached(videoUrl(3)));
+        assertEquals(3 * VIDEO_SIZE, mVideoCache.getSizeBytes());
+    }
+
+    @Test
+    public void shouldForgetVideoWhoseFileHasGone() throws Exception {
+        cache(1);
+        assertTrue(mVideoCache.get(videoUrl(1)).delete());
+
+        assertNull(mVideoCache.get(videoUrl(1)));
+        assertEquals(0, mVideoCache.getSizeBytes());
+    }
+
+    @Test
+    public void shouldCheckFilesInBackground() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        mVideoCache = new VideoCache(mDirectory, 3 * VIDEO_SIZE, scheduler);
+        scheduler.triggerActions();
+        cache(1);
+        File file = mVideoCache.get(videoUrl(1));
+        scheduler.triggerActions();
+        file.setLastModified(1000);
+
+        // Looking the video up doesn't touch the disk until the scheduler runs
+        assertNotNull(mVideoCache.get(videoUrl(1)));
+        assertEquals(1000, file.lastModified());
+        scheduler.triggerActions();
+        assertTrue(file.lastModified() > 1000);
+
+        assertTrue(file.delete());
+        assertNotNull(mVideoCache.get(videoUrl(1)));
+        scheduler.triggerActions();
+        assertNull(mVideoCache.get(videoUrl(1)));
+        assertEquals(0, mVideoCache.getSizeBytes());
+    }
+
+    @Test
+    public void shouldRestoreCacheFromDiskInOrderOfUse() throws Exception {
+        cache(1);
+        cache(2);
+        cache(3);
+        mVideoCache.get(videoUrl(1)).setLastModified(3000);
+        mVideoCache.get(videoUrl(2)).setLastModified(1000);
+        mVideoCache.get(videoUrl(3)).setLastModified(2000);
+        // Left over from a download that never finished
+        File tempFile = mVideoCache.startWriting(videoUrl(5));
+
+        VideoCache videoCache = new VideoCache(mDirectory, 3 * VIDEO_SIZE);
+        assertEquals(3 * VIDEO_SIZE, videoCache.getSizeBytes());
+        assertFalse(tempFile.exists());
+
+        File newFile = videoCache.startWriting(videoUrl(4));
+        write(newFile, VIDEO_SIZE);
+        videoCache.commit(videoUrl(4), newFile);
+        assertFalse(videoCache.isCached(videoUrl(2)));
+        assertTrue(videoCache.isCached(videoUrl(1)));
+        assertTrue(videoCache.isCached(videoUrl(3)));
+    }
+
+    @Test
+    public void shouldTrimCacheRestoredFromDiskToSizeLimit() throws Exception {
+        cache(1);
+        cache(2);
+        cache(3);
+
+        VideoCache videoCache = new VideoCache(mDirectory, 2 * VIDEO_SIZE);
+        assertEquals(2 * VIDEO_SIZE, videoCache.getSizeBytes());
+        assertEquals(2, mDirectory.listFiles().length);
+    }
+
+    private void cache(int id) throws IOException {
+        File tempFile = mVideoCache.startWriting(videoUrl(id));
+        write(tempFile, VIDEO_SIZE);
+        mVideoCache.commit(videoUrl(id), tempFile);
+    }
+
+    private static void write(File file, int size) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(new byte[size]);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static String videoUrl(int id) {
+        return "http://v.cdn.vine.co/r/videos/" + id + ".mp4";
+    }
+}
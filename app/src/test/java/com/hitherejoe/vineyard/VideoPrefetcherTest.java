@@ -0,0 +1,189 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.local.VideoCache;
+import com.hitherejoe.vineyard.data.local.VideoPrefetcher;
+import com.hitherejoe.vineyard.data.model.Playlist;
+import com.hitherejoe.vineyard.data.model.Post;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VideoPrefetcherTest {
+
+    private static final int VIDEO_SIZE = 24 * 1024;
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Mock OkHttpClient mMockClient;
+    private File mDirectory;
+    private VideoCache mVideoCache;
+    private TestScheduler mScheduler;
+    private VideoPrefetcher mVideoPrefetcher;
+    private Playlist mPlaylist;
+    private List<String> mRequestedUrls;
+    private Set<String> mFailingUrls;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = mTemporaryFolder.newFolder("videos");
+        mVideoCache = new VideoCache(mDirectory, VideoCache.DEFAULT_MAX_SIZE_BYTES);
+        mScheduler = new TestScheduler();
+        mVideoPrefetcher = new VideoPrefetcher(mVideoCache, mMockClient, mScheduler);
+        mVideoPrefetcher.setMaxBytesPerSecond(0);
+        List<Post> posts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            posts.add(IndexedPaginationAdapterTest.createPost(String.valueOf(i), 1000 - i));
+        }
+        mPlaylist = new Playlist("handle", null, posts, null, 0);
+        mRequestedUrls = new ArrayList<>();
+        mFailingUrls = new HashSet<>();
+
+        when(mMockClient.newCall(any(Request.class))).thenAnswer(new Answer<Call>() {
+            @Override
+            public Call answer(InvocationOnMock invocation) throws Throwable {
+                Request request = (Request) invocation.getArguments()[0];
+                mRequestedUrls.add(request.urlString());
+                Call call = mock(Call.class);
+                int code = mFailingUrls.contains(request.urlString()) ? 404 : 200;
+                when(call.execute()).thenReturn(new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(code)
+                        .message(code == 200 ? "OK" : "Not Found")
+                        .body(ResponseBody.create(MediaType.parse("video/mp4"),
+                                new byte[code == 200 ? VIDEO_SIZE : 0]))
+                        .build());
+                return call;
+            }
+        });
+    }
+
+    @Test
+    public void shouldPrefetchNearestVideosFirst() {
+        mVideoPrefetcher.setPrefetchDepth(2);
+        mVideoPrefetcher.prefetch(mPlaylist, 5);
+        mScheduler.triggerActions();
+
+        assertEquals(Arrays.asList(videoUrl(6), videoUrl(4), videoUrl(7), videoUrl(3)),
+                mRequestedUrls);
+        for (int position : new int[] { 3, 4, 6, 7 }) {
+            assertTrue(mVideoCache.isCached(videoUrl(position)));
+        }
+        assertFalse(mVideoCache.isCached(videoUrl(5)));
+        assertEquals(4L * VIDEO_SIZE, mVideoCache.getSizeBytes());
+    }
+
+    @Test
+    public void shouldOnlyPrefetchVideosInThePlaylist() {
+        mVideoPrefetcher.prefetch(mPlaylist, 9);
+        mScheduler.triggerActions();
+
+        assertEquals(Arrays.asList(videoUrl(8)), mRequestedUrls);
+    }
+
+    @Test
+    public void shouldSkipVideosThatAreAlreadyCached() throws Exception {
+        File tempFile = mVideoCache.startWriting(videoUrl(6));
+        mVideoCache.commit(videoUrl(6), tempFile);
+
+        mVideoPrefetcher.prefetch(mPlaylist, 5);
+        mScheduler.triggerActions();
+
+        assertEquals(Arrays.asList(videoUrl(4)), mRequestedUrls);
+    }
+
+    @Test
+    public void shouldCarryOnPastVideoThatFailsToDownload() {
+        mFailingUrls.add(videoUrl(6));
+
+        mVideoPrefetcher.prefetch(mPlaylist, 5);
+        mScheduler.triggerActions();
+
+        assertEquals(Arrays.asList(videoUrl(6), videoUrl(4)), mRequestedUrls);
+        assertFalse(mVideoCache.isCached(videoUrl(6)));
+        assertTrue(mVideoCache.isCached(videoUrl(4)));
+        assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void shouldStayUnderMaxBytesPerSecond() {
+        mVideoPrefetcher.setMaxBytesPerSecond(VIDEO_SIZE / 3);
+        mVideoPrefetcher.prefetch(mPlaylist, 9);
+        mScheduler.triggerActions();
+        assertFalse(mVideoCache.isCached(videoUrl(8)));
+
+        mScheduler.advanceTimeBy(2999, TimeUnit.MILLISECONDS);
+        assertFalse(mVideoCache.isCached(videoUrl(8)));
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertTrue(mVideoCache.isCached(videoUrl(8)));
+    }
+
+    @Test
+    public void shouldDiscardPartialDownloadWhenCancelled() throws Exception {
+        mVideoPrefetcher.setMaxBytesPerSecond(VIDEO_SIZE / 3);
+        mVideoPrefetcher.prefetch(mPlaylist, 9);
+        mScheduler.triggerActions();
+        assertEquals(1, mDirectory.listFiles().length);
+
+        mVideoPrefetcher.cancel();
+        mScheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        assertFalse(mVideoCache.isCached(videoUrl(8)));
+        assertEquals(0, mDirectory.listFiles().length);
+        // The video can be downloaded again by somebody else
+        assertNotNull(mVideoCache.startWriting(videoUrl(8)));
+    }
+
+    @Test
+    public void shouldCancelPreviousPrefetchWhenPositionChanges() {
+        mVideoPrefetcher.setMaxBytesPerSecond(VIDEO_SIZE / 3);
+        mVideoPrefetcher.prefetch(mPlaylist, 9);
+        mScheduler.triggerActions();
+
+        mVideoPrefetcher.setMaxBytesPerSecond(0);
+        mVideoPrefetcher.prefetch(mPlaylist, 2);
+        mScheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        assertFalse(mVideoCache.isCached(videoUrl(8)));
+        assertTrue(mVideoCache.isCached(videoUrl(3)));
+        assertTrue(mVideoCache.isCached(videoUrl(1)));
+    }
+
+    private String videoUrl(int position) {
+        return mPlaylist.get(position).videoUrl;
+    }
+}
@@ -0,0 +1,224 @@
+package com.hitherejoe.vineyard;
+
+import com.hitherejoe.vineyard.data.local.VideoCache;
+import com.hitherejoe.vineyard.data.remote.VideoProxy;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Makes requests to the proxy over the loopback interface, with the CDN replaced by a mocked
+ * client that serves VIDEO, or the requested range of it.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class VideoProxyTest {
+
+    private static final String VIDEO_URL = "http://v.cdn.vine.co/r/videos/1.mp4?versionId=a";
+    private static final byte[] VIDEO = createVideo(1000);
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Mock OkHttpClient mMockClient;
+    private VideoCache mVideoCache;
+    private VideoProxy mVideoProxy;
+    private List<Request> mRequests;
+
+    @Before
+    public void setUp() throws Exception {
+        mVideoCache = new VideoCache(mTemporaryFolder.newFolder("videos"),
+                VideoCache.DEFAULT_MAX_SIZE_BYTES);
+        mVideoProxy = new VideoProxy(mVideoCache, mMockClient);
+        // Added to by the proxy's threads
+        mRequests = new CopyOnWriteArrayList<>();
+
+        when(mMockClient.newCall(any(Request.class))).thenAnswer(new Answer<Call>() {
+            @Override
+            public Call answer(InvocationOnMock invocation) throws Throwable {
+                Request request = (Request) invocation.getArguments()[0];
+                mRequests.add(request);
+                Call call = mock(Call.class);
+                when(call.execute()).thenReturn(respond(request));
+                return call;
+            }
+        });
+    }
+
+    @Test
+    public void shouldOnlyProxyVideosOnTheCdn() {
+        assertTrue(VideoProxy.isVideoUrl(VIDEO_URL));
+        assertTrue(VideoProxy.isVideoUrl("https://mtc.cdn.vine.co/r/videos/1.mp4"));
+        assertFalse(VideoProxy.isVideoUrl("http://example.com/r/videos/1.mp4"));
+        assertFalse(VideoProxy.isVideoUrl("http://v.cdn.vine.co.example.com/1.mp4"));
+        assertFalse(VideoProxy.isVideoUrl("file:///data/data/com.hitherejoe.vineyard/x.mp4"));
+        assertFalse(VideoProxy.isVideoUrl(null));
+
+        String otherUrl = "http://example.com/1.mp4";
+        assertEquals(otherUrl, mVideoProxy.getVideoPath(otherUrl));
+    }
+
+    @Test
+    public void shouldPlayCachedVideoFromFile() throws Exception {
+        cacheVideo();
+
+        assertEquals(mVideoCache.get(VIDEO_URL).getPath(), mVideoProxy.getVideoPath(VIDEO_URL));
+    }
+
+    @Test
+    public void shouldStreamAndCacheWholeVideo() throws Exception {
+        HttpURLConnection connection = open(mVideoProxy.getVideoPath(VIDEO_URL), null);
+
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(VIDEO, read(connection));
+        assertNull(mRequests.get(0).header("Range"));
+        assertTrue(mVideoCache.isCached(VIDEO_URL));
+    }
+
+    @Test
+    public void shouldPassRangeOfUncachedVideoStraightThrough() throws Exception {
+        HttpURLConnection connection =
+                open(mVideoProxy.getVideoPath(VIDEO_URL), "bytes=100-199");
+
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 100-199/" + VIDEO.length, connection.getHeaderField("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(VIDEO, 100, 200), read(connection));
+        assertEquals("bytes=100-199", mRequests.get(0).header("Range"));
+        // Only complete videos are cached
+        assertFalse(mVideoCache.isCached(VIDEO_URL));
+    }
+
+    @Test
+    public void shouldServeRangesOfCachedVideo() throws Exception {
+        String path = mVideoProxy.getVideoPath(VIDEO_URL);
+        cacheVideo();
+
+        HttpURLConnection connection = open(path, "bytes=900-");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 900-999/" + VIDEO.length, connection.getHeaderField("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(VIDEO, 900, 1000), read(connection));
+
+        connection = open(path, "bytes=0-");
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(VIDEO, read(connection));
+
+        assertEquals(416, open(path, "bytes=1000-").getResponseCode());
+        assertTrue(mRequests.isEmpty());
+    }
+
+    @Test
+    public void shouldRejectRequestsWithoutToken() throws Exception {
+        String path = mVideoProxy.getVideoPath(VIDEO_URL);
+        String withoutToken = path.substring(0, path.indexOf('/', "http://".length()))
+                + "/?url=" + URLEncoder.encode(VIDEO_URL, "UTF-8");
+
+        assertEquals(403, open(withoutToken, null).getResponseCode());
+        assertTrue(mRequests.isEmpty());
+    }
+
+    @Test
+    public void shouldRejectRequestsForOtherHosts() throws Exception {
+        String path = mVideoProxy.getVideoPath(VIDEO_URL);
+        String otherHost = path.substring(0, path.indexOf("?url=") + "?url=".length())
+                + URLEncoder.encode("http://192.168.0.1/admin", "UTF-8");
+
+        assertEquals(403, open(otherHost, null).getResponseCode());
+        assertTrue(mRequests.isEmpty());
+    }
+
+    private void cacheVideo() throws IOException {
+        File tempFile = mVideoCache.startWriting(VIDEO_URL);
+        FileOutputStream output = new FileOutputStream(tempFile);
+        try {
+            output.write(VIDEO);
+        } finally {
+            output.close();
+        }
+        mVideoCache.commit(VIDEO_URL, tempFile);
+    }
+
+    /**
+     * Answers the given request like the CDN would, honouring a "bytes=start-end" range.
+     */
+    private static Response respond(Request request) {
+        Response.Builder response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1);
+        MediaType mediaType = MediaType.parse("video/mp4");
+        String range = request.header("Range");
+        if (range == null) {
+            return response.code(200).message("OK")
+                    .body(ResponseBody.create(mediaType, VIDEO))
+                    .build();
+        }
+        String[] bounds = range.substring("bytes=".length()).split("-", -1);
+        int start = Integer.parseInt(bounds[0]);
+        int end = bounds[1].isEmpty() ? VIDEO.length - 1 : Integer.parseInt(bounds[1]);
+        return response.code(206).message("Partial Content")
+                .header("Content-Range", "bytes " + start + "-" + end + "/" + VIDEO.length)
+                .body(ResponseBody.create(mediaType, Arrays.copyOfRange(VIDEO, start, end + 1)))
+                .build();
+    }
+
+    private static HttpURLConnection open(String path, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(path).openConnection();
+        if (range != null) connection.setRequestProperty("Range", range);
+        return connection;
+    }
+
+    private static byte[] read(HttpURLConnection connection) throws IOException {
+        InputStream input = connection.getInputStream();
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static byte[] createVideo(int size) {
+        byte[] video = new byte[size];
+        for (int i = 0; i < size; i++) {
+            video[i] = (byte) i;
+        }
+        return video;
+    }
+}
@@ -0,0 +1,71 @@
+package com.hitherejoe.vineyard.util;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interceptor chain that answers every request with a copy of the given response, recording the
+ * requests that were passed on so that tests can check what an interceptor sent.
+ */
+public class FakeInterceptorChain implements Interceptor.Chain {
+
+    private final Request mRequest;
+    private final Response.Builder mResponse;
+    private final List<Request> mProceededRequests;
+    private IOException mError;
+
+    public FakeInterceptorChain(Request request, Response.Builder response) {
+        mRequest = request;
+        mResponse = response;
+        mProceededRequests = new ArrayList<>();
+    }
+
+    /**
+     * Returns a response to the given request with the given code and an empty JSON body.
+     */
+    public static Response.Builder response(int code) {
+        return new Response.Builder()
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Error")
+                .body(ResponseBody.create(MediaType.parse("application/json"), "{}"));
+    }
+
+    /**
+     * Makes proceed() throw the given error, as if the network request had failed.
+     */
+    public FakeInterceptorChain failWith(IOException error) {
+        mError = error;
+        return this;
+    }
+
+    public List<Request> getProceededRequests() {
+        return mProceededRequests;
+    }
+
+    @Override
+    public Request request() {
+        return mRequest;
+    }
+
+    @Override
+    public Response proceed(Request request) throws IOException {
+        mProceededRequests.add(request);
+        if (mError != null) throw mError;
+        return mResponse.request(request).build();
+    }
+
+    @Override
+    public Connection connection() {
+        return null;
+    }
+}